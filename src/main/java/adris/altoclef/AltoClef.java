@@ -36,6 +36,7 @@ import adris.altoclef.multiversion.versionedfields.Blocks;
 import adris.altoclef.player2api.AICommandBridge;
 import adris.altoclef.tasksystem.Task;
 import adris.altoclef.tasksystem.TaskRunner;
+import adris.altoclef.trackers.BlockHistogramTracker;
 import adris.altoclef.trackers.CraftingRecipeTracker;
 import adris.altoclef.trackers.EntityStuckTracker;
 import adris.altoclef.trackers.EntityTracker;
@@ -52,7 +53,9 @@ import adris.altoclef.ui.MessagePriority;
 import adris.altoclef.ui.MessageSender;
 import adris.altoclef.ui.PlayerModeToggleButton;
 import adris.altoclef.ui.STTfeedback;
+import adris.altoclef.util.baritone.PathCostEstimator;
 import adris.altoclef.util.helpers.InputHelper;
+import adris.altoclef.util.time.TickProfiler;
 import baritone.Baritone;
 import baritone.altoclef.AltoClefSettings;
 import baritone.api.BaritoneAPI;
@@ -94,12 +97,21 @@ public class AltoClef implements ModInitializer {
     private BlockScanner blockScanner;
     private SimpleChunkTracker chunkTracker;
     private MiscBlockTracker miscBlockTracker;
+    private BlockHistogramTracker blockHistogramTracker;
     private CraftingRecipeTracker craftingRecipeTracker;
     private EntityStuckTracker entityStuckTracker;
     private UserBlockRangeTracker userBlockRangeTracker;
+    private PathCostEstimator pathCostEstimator;
     // Renderers
     private CommandStatusOverlay commandStatusOverlay;
     private AltoClefTickChart altoClefTickChart;
+    // Tick profiling
+    private final TickProfiler.Section aiBridgeSection = TickProfiler.section("aiBridge");
+    private final TickProfiler.Section containerSubTrackerSection = TickProfiler.section("containerSubTracker");
+    private final TickProfiler.Section blockTrackersSection = TickProfiler.section("miscBlockTracker+histogram");
+    private final TickProfiler.Section blockScannerSection = TickProfiler.section("blockScanner");
+    private final TickProfiler.Section taskRunnerSection = TickProfiler.section("taskRunner");
+    private final TickProfiler.Section messageSenderSection = TickProfiler.section("messageSender");
     // Settings
     private adris.altoclef.Settings settings;
     // Misc managers/input
@@ -205,9 +217,11 @@ public class AltoClef implements ModInitializer {
         blockScanner = new BlockScanner(this);
         chunkTracker = new SimpleChunkTracker(this);
         miscBlockTracker = new MiscBlockTracker(this);
+        blockHistogramTracker = new BlockHistogramTracker(this);
         craftingRecipeTracker = new CraftingRecipeTracker(trackerManager);
         entityStuckTracker = new EntityStuckTracker(trackerManager);
         userBlockRangeTracker = new UserBlockRangeTracker(trackerManager);
+        pathCostEstimator = new PathCostEstimator(this);
 
         // Renderers
         commandStatusOverlay = new CommandStatusOverlay();
@@ -260,16 +274,15 @@ public class AltoClef implements ModInitializer {
             } else if (this.aiBridge.getEnabled()) {
                 evt.cancel();
                 Debug.logUserMessage(line);
-                this.aiBridge.addMessageToQueue(
-                        "User: " + line);
+                this.aiBridge.addUserChat(line);
             }
         });
 
         // Tick with the client
         EventBus.subscribe(ClientTickEvent.class, evt -> {
-            long nanos = System.nanoTime();
+            TickProfiler.beginTick();
             onClientTick();
-            altoClefTickChart.pushTickNanos(System.nanoTime() - nanos);
+            TickProfiler.endTick();
         });
 
         // Render
@@ -313,19 +326,34 @@ public class AltoClef implements ModInitializer {
             lastHeartbeatTime = now;
         }
 
+        long start = System.nanoTime();
         if (aiBridge.getEnabled() && inGame && AltoClef.inGame()) {
             aiBridge.onTick();
         }
+        aiBridgeSection.record(start);
 
         // TODO: should this go here?
         storageTracker.setDirty();
+        start = System.nanoTime();
         containerSubTracker.onServerTick();
+        containerSubTrackerSection.record(start);
+        start = System.nanoTime();
         miscBlockTracker.tick();
+        blockHistogramTracker.tick();
+        blockTrackersSection.record(start);
         trackerManager.tick();
+        start = System.nanoTime();
         blockScanner.tick();
+        blockScannerSection.record(start);
+        start = System.nanoTime();
         taskRunner.tick();
+        // Right after, so clicks planned this tick go out this tick
+        slotHandler.tick();
+        taskRunnerSection.record(start);
 
+        start = System.nanoTime();
         messageSender.tick();
+        messageSenderSection.record(start);
 
         inputControls.onTickPost();
         if (!inGame && AltoClef.inGame()) {
@@ -529,6 +557,13 @@ public class AltoClef implements ModInitializer {
         return blockScanner;
     }
 
+    /**
+     * Estimates real path costs to candidate targets in the background
+     */
+    public PathCostEstimator getPathCostEstimator() {
+        return pathCostEstimator;
+    }
+
     /**
      * Tracks of whether a chunk is loaded/visible or not
      */
@@ -543,6 +578,13 @@ public class AltoClef implements ModInitializer {
         return miscBlockTracker;
     }
 
+    /**
+     * Tracks block counts per chunk section around the player
+     */
+    public BlockHistogramTracker getBlockHistogramTracker() {
+        return blockHistogramTracker;
+    }
+
     /**
      * Baritone access (could just be static honestly)
      */
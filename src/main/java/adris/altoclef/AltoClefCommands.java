@@ -34,7 +34,8 @@ public class AltoClefCommands {
                 new GiveCommand(),
                 new ScanCommand(),
                 new AttackPlayerOrMobCommand(),
-                new SetAIBridgeEnabledCommand()
+                new SetAIBridgeEnabledCommand(),
+                new ProfileCommand()
         );
     }
 }
@@ -97,6 +97,14 @@ public class Settings implements IFailableConfigFile {
      */
     private float containerItemMoveDelay = 0.2f;
 
+    /**
+     * How many planned clicks get sent together, once every containerItemMoveDelay.
+     * <p>
+     * Moving a whole crafting recipe or stack at once takes far fewer ticks this way.
+     * Lower this (down to 1) if a server's anti-cheat doesn't like it.
+     */
+    private int containerClicksPerBatch = 4;
+
     /**
      * If true, use Minecraft's crafting recipe book to place items into
      * the crafting table (should be much faster as it's almost instant)
@@ -497,6 +505,10 @@ public class Settings implements IFailableConfigFile {
         return containerItemMoveDelay;
     }
 
+    public int getContainerClicksPerBatch() {
+        return Math.max(1, containerClicksPerBatch);
+    }
+
     public boolean shouldUseCraftingBookToCraft() {
         return useCraftingBookToCraft;
     }
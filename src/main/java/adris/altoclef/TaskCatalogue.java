@@ -39,6 +39,7 @@ public class TaskCatalogue {
     private static final HashMap<String, CataloguedResource> nameToResourceTask = new HashMap<>();
     private static final HashMap<Item, CataloguedResource> itemToResourceTask = new HashMap<>();
     private static final HashSet<Item> resourcesObtainable = new HashSet<>();
+    private static RecipeGraph recipeGraph = null;
 
     static {
         /// DEFINE RESOURCE TASKS HERE
@@ -195,7 +196,7 @@ public class TaskCatalogue {
             //mine("netherite_upgrade_smithing_template", MiningRequirement.HAND, Blocks.CHEST, Items.NETHERITE_UPGRADE_SMITHING_TEMPLATE).forceDimension(Dimension.NETHER);
             simple("netherite_upgrade_smithing_template", Items.NETHERITE_UPGRADE_SMITHING_TEMPLATE, GetSmithingTemplateTask::new);
             alias("netherite_upgrade", "netherite_upgrade_smithing_template");
-            simple("planks", ItemHelper.PLANKS, CollectPlanksTask::new).dontMineIfPresent();
+            simple("planks", ItemHelper.PLANKS, CollectPlanksTask::new).dontMineIfPresent().madeFrom(4, "log");
             // Per-tree Planks. At the moment, nether planks need to be specified that their logs are in the nether.
             for (CataloguedResource woodCatalogue : woodTasks("planks", wood -> wood.planks, (wood, count) -> {
                 CollectPlanksTask result = new CollectPlanksTask(wood.planks, count);
@@ -214,20 +215,20 @@ public class TaskCatalogue {
                 woodCatalogue.dontMineIfPresent();
             }
             // shapedRecipe2x2("stick", Items.STICK, 4, p, o, p, o);
-            simple("stick", Items.STICK, CollectSticksTask::new);
+            simple("stick", Items.STICK, CollectSticksTask::new).madeFrom(4, p, p);
             smelt("stone", Items.STONE, "cobblestone").dontMineIfPresent();
             smelt("deepslate", Items.DEEPSLATE, "cobbled_deepslate").dontMineIfPresent();
             smelt("smooth_stone", Items.SMOOTH_STONE, "stone");
             smelt("smooth_quartz", Items.SMOOTH_QUARTZ, "quartz_block");
             smelt("smooth_basalt", Items.SMOOTH_BASALT, "basalt");
             smelt("glass", Items.GLASS, "sand").dontMineIfPresent();
-            simple("iron_ingot", Items.IRON_INGOT, CollectIronIngotTask::new).forceDimension(Dimension.OVERWORLD);
+            simple("iron_ingot", Items.IRON_INGOT, CollectIronIngotTask::new).forceDimension(Dimension.OVERWORLD).madeFrom(1, "raw_iron");
             smelt("copper_ingot", Items.COPPER_INGOT, "raw_copper", Items.COPPER_ORE);
             smelt("charcoal", Items.CHARCOAL, "log");
             smelt("brick", Items.BRICK, "clay_ball");
             smelt("nether_brick", Items.NETHER_BRICK, "netherrack");
             smelt("green_dye", Items.GREEN_DYE, "cactus");
-            simple("gold_ingot", Items.GOLD_INGOT, CollectGoldIngotTask::new).anyDimension(); // accounts for nether too
+            simple("gold_ingot", Items.GOLD_INGOT, CollectGoldIngotTask::new).anyDimension().madeFrom(1, "raw_gold"); // accounts for nether too
             shapedRecipe3x3Block("iron_block", Items.IRON_BLOCK, "iron_ingot");
             shapedRecipe3x3Block("gold_block", Items.GOLD_BLOCK, "gold_ingot");
             shapedRecipe3x3Block("copper_block", Items.COPPER_BLOCK, "copper_ingot");
@@ -732,6 +733,38 @@ public class TaskCatalogue {
         return nameToResourceTask.keySet();
     }
 
+    /**
+     * How one batch of `name` is made, or null if it's gathered directly (mined, looted, farmed...)
+     * or we just don't know the steps.
+     */
+    public static CataloguedRecipe getRecipe(String name) {
+        CataloguedResource resource = nameToResourceTask.get(name);
+        return resource != null ? resource.getRecipe() : null;
+    }
+
+    /**
+     * The catalogue name whose matches are exactly `matches`, or null if there's none.
+     */
+    private static String getNameOf(Item[] matches) {
+        Set<Item> wanted = new HashSet<>(Arrays.asList(matches));
+        for (Map.Entry<String, Item[]> entry : nameToItemMatches.entrySet()) {
+            if (entry.getValue().length == wanted.size() && wanted.equals(new HashSet<>(Arrays.asList(entry.getValue())))) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * What everything in here is made of, see {@link RecipeGraph}.
+     */
+    public static synchronized RecipeGraph getRecipeGraph() {
+        if (recipeGraph == null) {
+            recipeGraph = new RecipeGraph();
+        }
+        return recipeGraph;
+    }
+
     private static CataloguedResource simple(String name, Item[] matches, Function<Integer, ResourceTask> getTask) {
         return put(name, matches, getTask);
     }
@@ -777,12 +810,12 @@ public class TaskCatalogue {
 
     private static CataloguedResource shapedRecipe2x2(String name, Item match, int outputCount, String s0, String s1, String s2, String s3) {
         CraftingRecipe recipe = CraftingRecipe.newShapedRecipe(name, new ItemTarget[]{t(s0), t(s1), t(s2), t(s3)}, outputCount);
-        return put(name, new Item[]{match}, count -> new CraftInInventoryTask(new RecipeTarget(match, count, recipe)));
+        return put(name, new Item[]{match}, count -> new CraftInInventoryTask(new RecipeTarget(match, count, recipe))).madeFrom(recipe);
     }
 
     private static CataloguedResource shapedRecipe3x3(String name, Item match, int outputCount, String s0, String s1, String s2, String s3, String s4, String s5, String s6, String s7, String s8) {
         CraftingRecipe recipe = CraftingRecipe.newShapedRecipe(name, new ItemTarget[]{t(s0), t(s1), t(s2), t(s3), t(s4), t(s5), t(s6), t(s7), t(s8)}, outputCount);
-        return put(name, new Item[]{match}, count -> new CraftInTableTask(new RecipeTarget(match, count, recipe)));
+        return put(name, new Item[]{match}, count -> new CraftInTableTask(new RecipeTarget(match, count, recipe))).madeFrom(recipe);
     }
 
     private static CataloguedResource shapedRecipe2x2Block(String name, Item match, String material) {
@@ -810,7 +843,7 @@ public class TaskCatalogue {
     }
 
     private static CataloguedResource smelt(String name, Item[] matches, String materials, Item... optionalMaterials) {
-        return put(name, matches, count -> new SmeltInFurnaceTask(new SmeltTarget(new ItemTarget(matches, count), new ItemTarget(materials, count), optionalMaterials)));
+        return put(name, matches, count -> new SmeltInFurnaceTask(new SmeltTarget(new ItemTarget(matches, count), new ItemTarget(materials, count), optionalMaterials))).madeFrom(1, materials);
     }
 
     private static CataloguedResource smelt(String name, Item match, String materials, Item... optionalMaterials) {
@@ -818,7 +851,7 @@ public class TaskCatalogue {
     }
 
     private static CataloguedResource smith(String name, Item[] matches, String materials, String tool) {
-        return put(name, matches, count -> new UpgradeInSmithingTableTask(new ItemTarget(tool, count), new ItemTarget(materials, count), new ItemTarget(matches, count)));//new SmeltInFurnaceTask(new SmeltTarget(new ItemTarget(matches, count), new ItemTarget(materials, count))));
+        return put(name, matches, count -> new UpgradeInSmithingTableTask(new ItemTarget(tool, count), new ItemTarget(materials, count), new ItemTarget(matches, count))).madeFrom(1, materials, tool);//new SmeltInFurnaceTask(new SmeltTarget(new ItemTarget(matches, count), new ItemTarget(materials, count))));
     }
 
     private static CataloguedResource smith(String name, Item match, String materials, String tool) {
@@ -919,9 +952,21 @@ public class TaskCatalogue {
         return new ItemTarget(cataloguedName);
     }
 
+    /**
+     * One batch of a catalogued resource: `outputCount` of it, made from one of each of `inputs`
+     * (catalogue names, repeated if a batch needs several).
+     *
+     * @param craftingRecipe The recipe if it's crafted, null if it's smelted, smithed...
+     */
+    public record CataloguedRecipe(int outputCount, String[] inputs, CraftingRecipe craftingRecipe) {
+    }
+
     private static class CataloguedResource {
         private final Item[] _targets;
         private final Function<Integer, ResourceTask> _getResource;
+        private CataloguedRecipe _recipe = null;
+        // Resolved into `_recipe` once the whole catalogue is in, see getRecipe
+        private CraftingRecipe _craftingRecipe = null;
 
         private boolean _mineIfPresent;
         private boolean _forceDimension = false;
@@ -953,6 +998,38 @@ public class TaskCatalogue {
             return this;
         }
 
+        public CataloguedResource madeFrom(int outputCount, String... inputs) {
+            _recipe = new CataloguedRecipe(outputCount, inputs, null);
+            _craftingRecipe = null;
+            return this;
+        }
+
+        public CataloguedResource madeFrom(CraftingRecipe recipe) {
+            // Slots can name items that get catalogued further down, so wait until someone asks.
+            _recipe = null;
+            _craftingRecipe = recipe;
+            return this;
+        }
+
+        private CataloguedRecipe getRecipe() {
+            if (_recipe == null && _craftingRecipe != null) {
+                List<String> inputs = new ArrayList<>();
+                for (ItemTarget slot : _craftingRecipe.getSlots()) {
+                    if (slot == null) continue;
+                    if (slot.isCatalogueItem()) {
+                        inputs.add(slot.getCatalogueName());
+                        continue;
+                    }
+                    if (slot.isEmpty()) continue;
+                    String name = getNameOf(slot.getMatches());
+                    // Not catalogued, keep it as an input nobody can make so the recipe shows up as unreachable
+                    inputs.add(name != null ? name : "?" + Arrays.toString(slot.getMatches()));
+                }
+                _recipe = new CataloguedRecipe(_craftingRecipe.outputCount(), inputs.toArray(String[]::new), _craftingRecipe);
+            }
+            return _recipe;
+        }
+
         public ResourceTask getResource(int count) {
             ResourceTask result = _getResource.apply(count);
             if (_mineIfPresent) {
@@ -0,0 +1,87 @@
+package adris.altoclef.ai;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads an OpenAI-style /v1/chat/completions response with "stream": true.
+ * <p>
+ * Each "data:" event carries a choices[0].delta.content piece, which is forwarded to an
+ * {@link IncrementalJsonFieldParser} as soon as it arrives. Servers that ignore the stream
+ * flag and answer with a single JSON body are handled too, the parser is then fed once.
+ * A "usage" object, if the server sends one, is reported via {@link LlmStreamListener#onUsage}.
+ */
+public final class ChatCompletionStream {
+
+    private ChatCompletionStream() {
+    }
+
+    /**
+     * Consumes the whole response.
+     *
+     * @param is       response body
+     * @param listener receives the generated fields while they stream in
+     * @return the complete generated content
+     */
+    public static String read(InputStream is, LlmStreamListener listener) throws IOException {
+        IncrementalJsonFieldParser parser = new IncrementalJsonFieldParser(listener);
+        StringBuilder content = new StringBuilder();
+        StringBuilder plainBody = new StringBuilder();
+        boolean sawEvents = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.startsWith("data:")) {
+                    sawEvents = true;
+                    String payload = line.substring(5).trim();
+                    if (payload.equals("[DONE]")) break;
+                    if (payload.isEmpty()) continue;
+                    JsonObject event = JsonParser.parseString(payload).getAsJsonObject();
+                    reportUsage(event, listener);
+                    String delta = extractContent(event, "delta");
+                    if (delta != null && !delta.isEmpty()) {
+                        content.append(delta);
+                        parser.feed(delta);
+                    }
+                } else if (!sawEvents && !line.startsWith(":") && !line.startsWith("event:")) {
+                    plainBody.append(line);
+                }
+            }
+        }
+        if (!sawEvents && !plainBody.isEmpty()) {
+            JsonObject body = JsonParser.parseString(plainBody.toString()).getAsJsonObject();
+            reportUsage(body, listener);
+            String full = extractContent(body, "message");
+            if (full == null) {
+                throw new IOException("Invalid response format: " + plainBody);
+            }
+            content.append(full);
+            parser.feed(full);
+        }
+        return content.toString();
+    }
+
+    private static void reportUsage(JsonObject root, LlmStreamListener listener) {
+        if (listener == null || !root.has("usage") || !root.get("usage").isJsonObject()) return;
+        JsonObject usage = root.getAsJsonObject("usage");
+        int prompt = usage.has("prompt_tokens") ? usage.get("prompt_tokens").getAsInt() : 0;
+        int completion = usage.has("completion_tokens") ? usage.get("completion_tokens").getAsInt() : 0;
+        listener.onUsage(prompt, completion);
+    }
+
+    private static String extractContent(JsonObject root, String container) {
+        JsonArray choices = root.has("choices") ? root.getAsJsonArray("choices") : null;
+        if (choices == null || choices.size() == 0) return null;
+        JsonObject choice = choices.get(0).getAsJsonObject();
+        if (!choice.has(container) || !choice.get(container).isJsonObject()) return null;
+        JsonElement text = choice.getAsJsonObject(container).get("content");
+        return (text == null || text.isJsonNull()) ? null : text.getAsString();
+    }
+}
@@ -0,0 +1,186 @@
+package adris.altoclef.ai;
+
+import adris.altoclef.player2api.ChatclefConfigPersistantState;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared HTTP layer for every LLM and Player2 call.
+ * <p>
+ * One {@link HttpClient} keeps connections alive between requests, calls are asynchronous and
+ * retried with exponential backoff when the connection can't be made or the server answers 429/5xx,
+ * and JSON bodies are decoded straight from the response stream. Timeouts and retries come from
+ * {@link ChatclefConfigPersistantState}.
+ */
+public final class HttpTransport {
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final ExecutorService IO_POOL = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "chatclef-http-" + THREAD_ID.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            // the local Player2 app speaks plain HTTP/1.1, skip the h2c upgrade dance
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(ChatclefConfigPersistantState.getHttpConnectTimeoutMs()))
+            .executor(IO_POOL)
+            .build();
+
+    private HttpTransport() {
+    }
+
+    /**
+     * Executor for work that waits on a response body, so callers never block their own thread on it.
+     */
+    public static ExecutorService executor() {
+        return IO_POOL;
+    }
+
+    public static HttpRequest.Builder request(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(ChatclefConfigPersistantState.getHttpRequestTimeoutMs()));
+    }
+
+    public static HttpRequest.BodyPublisher jsonBody(JsonObject body) {
+        return HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sends the request, retrying failed attempts. The returned response always has a 2xx status,
+     * anything else completes exceptionally with an {@link HttpStatusException}.
+     */
+    public static CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request) {
+        return attempt(request, 0);
+    }
+
+    /**
+     * Sends the request and decodes the response body as a JSON object.
+     */
+    public static CompletableFuture<JsonObject> sendJsonAsync(HttpRequest request) {
+        return sendAsync(request).thenApplyAsync(response -> {
+            try {
+                return readJson(response.body());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, IO_POOL);
+    }
+
+    /**
+     * Blocking variant of {@link #sendAsync} for code that already runs off the client thread.
+     */
+    public static HttpResponse<InputStream> send(HttpRequest request) throws IOException, InterruptedException {
+        return await(sendAsync(request));
+    }
+
+    /**
+     * Blocking variant of {@link #sendJsonAsync} for code that already runs off the client thread.
+     */
+    public static JsonObject sendJson(HttpRequest request) throws IOException, InterruptedException {
+        return await(sendJsonAsync(request));
+    }
+
+    public static JsonObject readJson(InputStream body) throws IOException {
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            JsonElement element = JsonParser.parseReader(reader);
+            if (!element.isJsonObject()) {
+                throw new IOException("Expected a JSON object, got: " + element);
+            }
+            return element.getAsJsonObject();
+        }
+    }
+
+    private static CompletableFuture<HttpResponse<InputStream>> attempt(HttpRequest request, int attemptIndex) {
+        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .handle((response, error) -> {
+                    boolean retryable;
+                    Throwable failure;
+                    if (error != null) {
+                        failure = unwrap(error);
+                        // Completions aren't idempotent. Once the request may have reached the
+                        // server (timeouts, resets mid-response) sending it again could run it twice.
+                        retryable = failure instanceof ConnectException || failure instanceof HttpConnectTimeoutException;
+                    } else if (response.statusCode() / 100 == 2) {
+                        return CompletableFuture.completedFuture(response);
+                    } else {
+                        int code = response.statusCode();
+                        failure = new HttpStatusException(code, readQuietly(response.body()));
+                        retryable = code == 429 || code >= 500;
+                    }
+                    if (!retryable || attemptIndex >= ChatclefConfigPersistantState.getHttpMaxRetries()) {
+                        return CompletableFuture.<HttpResponse<InputStream>>failedFuture(failure);
+                    }
+                    long delay = (long) ChatclefConfigPersistantState.getHttpRetryBackoffMs() << attemptIndex;
+                    System.err.printf("[HttpTransport]: %s failed (%s), retrying in %dms%n",
+                            request.uri(), failure.getMessage(), delay);
+                    return CompletableFuture.supplyAsync(() -> null,
+                                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, IO_POOL))
+                            .thenCompose(ignored -> attempt(request, attemptIndex + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            throw new IOException(cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    private static String readQuietly(InputStream body) {
+        try (body) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * A non-2xx answer, with whatever body the server sent along.
+     */
+    public static class HttpStatusException extends IOException {
+        private final int statusCode;
+
+        public HttpStatusException(int statusCode, String body) {
+            super("HTTP " + statusCode + ": " + body);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package adris.altoclef.ai;
+
+/**
+ * Push parser for the flat JSON object the LLM answers with.
+ * <p>
+ * Text is fed in arbitrary pieces as it streams in. Top-level string fields are reported to a
+ * {@link LlmStreamListener} while they are being decoded, and completed the moment their closing
+ * quote arrives, so a caller can act on "command" before "reason" has even been generated.
+ * Anything before the first '{' (markdown fences etc.) is ignored, as is anything after the
+ * object closes. Nested and non-string values are skipped.
+ */
+public class IncrementalJsonFieldParser {
+
+    private enum State {
+        SEEK_OBJECT,
+        EXPECT_KEY,
+        IN_KEY,
+        EXPECT_COLON,
+        EXPECT_VALUE,
+        IN_STRING_VALUE,
+        IN_NESTED_VALUE,
+        IN_SCALAR_VALUE,
+        EXPECT_COMMA,
+        DONE
+    }
+
+    private final LlmStreamListener listener;
+
+    private State state = State.SEEK_OBJECT;
+    private final StringBuilder key = new StringBuilder();
+    private final StringBuilder value = new StringBuilder();
+    private String currentField = null;
+    // How much of `value` has already been handed out via onFieldDelta
+    private int valueEmitted = 0;
+
+    // String escape decoding
+    private boolean escaped = false;
+    private int unicodeDigitsLeft = 0;
+    private int unicodeValue = 0;
+
+    // Skipping nested objects/arrays
+    private int nestedDepth = 0;
+    private boolean nestedInString = false;
+
+    public IncrementalJsonFieldParser(LlmStreamListener listener) {
+        this.listener = listener == null ? LlmStreamListener.NONE : listener;
+    }
+
+    /**
+     * Feeds the next piece of generated text.
+     */
+    public void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            if (state == State.DONE) {
+                return;
+            }
+            accept(chunk.charAt(i));
+        }
+        flushValueDelta();
+    }
+
+    /**
+     * Whether the top-level object has been closed.
+     */
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case SEEK_OBJECT -> {
+                if (c == '{') state = State.EXPECT_KEY;
+            }
+            case EXPECT_KEY -> {
+                if (c == '"') {
+                    key.setLength(0);
+                    state = State.IN_KEY;
+                } else if (c == '}') {
+                    state = State.DONE;
+                }
+            }
+            case IN_KEY -> {
+                if (decodeStringChar(c, key)) {
+                    state = State.EXPECT_COLON;
+                }
+            }
+            case EXPECT_COLON -> {
+                if (c == ':') state = State.EXPECT_VALUE;
+            }
+            case EXPECT_VALUE -> {
+                if (Character.isWhitespace(c)) return;
+                if (c == '"') {
+                    currentField = key.toString();
+                    value.setLength(0);
+                    valueEmitted = 0;
+                    state = State.IN_STRING_VALUE;
+                } else if (c == '{' || c == '[') {
+                    nestedDepth = 1;
+                    nestedInString = false;
+                    state = State.IN_NESTED_VALUE;
+                } else {
+                    state = State.IN_SCALAR_VALUE;
+                }
+            }
+            case IN_STRING_VALUE -> {
+                if (decodeStringChar(c, value)) {
+                    flushValueDelta();
+                    String field = currentField;
+                    currentField = null;
+                    state = State.EXPECT_COMMA;
+                    listener.onFieldComplete(field, value.toString());
+                }
+            }
+            case IN_NESTED_VALUE -> {
+                if (nestedInString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        nestedInString = false;
+                    }
+                } else if (c == '"') {
+                    nestedInString = true;
+                } else if (c == '{' || c == '[') {
+                    nestedDepth++;
+                } else if (c == '}' || c == ']') {
+                    if (--nestedDepth == 0) state = State.EXPECT_COMMA;
+                }
+            }
+            case IN_SCALAR_VALUE -> {
+                if (c == ',') {
+                    state = State.EXPECT_KEY;
+                } else if (c == '}') {
+                    state = State.DONE;
+                }
+            }
+            case EXPECT_COMMA -> {
+                if (c == ',') {
+                    state = State.EXPECT_KEY;
+                } else if (c == '}') {
+                    state = State.DONE;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Decodes one character of a JSON string body into `out`.
+     *
+     * @return true if `c` was the closing quote
+     */
+    private boolean decodeStringChar(char c, StringBuilder out) {
+        if (unicodeDigitsLeft > 0) {
+            int digit = Character.digit(c, 16);
+            unicodeValue = (unicodeValue << 4) | Math.max(digit, 0);
+            if (--unicodeDigitsLeft == 0) {
+                out.append((char) unicodeValue);
+            }
+            return false;
+        }
+        if (escaped) {
+            escaped = false;
+            switch (c) {
+                case 'n' -> out.append('\n');
+                case 't' -> out.append('\t');
+                case 'r' -> out.append('\r');
+                case 'b' -> out.append('\b');
+                case 'f' -> out.append('\f');
+                case 'u' -> {
+                    unicodeDigitsLeft = 4;
+                    unicodeValue = 0;
+                }
+                default -> out.append(c);
+            }
+            return false;
+        }
+        if (c == '\\') {
+            escaped = true;
+            return false;
+        }
+        if (c == '"') {
+            return true;
+        }
+        out.append(c);
+        return false;
+    }
+
+    private void flushValueDelta() {
+        if (currentField == null) return;
+        if (value.length() > valueEmitted) {
+            listener.onFieldDelta(currentField, value.substring(valueEmitted));
+            valueEmitted = value.length();
+        }
+    }
+}
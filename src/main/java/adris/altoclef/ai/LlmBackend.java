@@ -1,10 +1,45 @@
 package adris.altoclef.ai;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import adris.altoclef.player2api.ConversationHistory;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import adris.altoclef.player2api.PromptMessages;
 
 public interface LlmBackend {
     /** Muss ein Json mit mind. "message" liefern; "command" & "reason" optional. */
-    JsonObject complete(ConversationHistory historyWithStatus) throws Exception;
+    JsonObject complete(PromptMessages historyWithStatus) throws Exception;
+
+    /**
+     * Wie {@link #complete}, meldet die String-Felder aber schon während der Generierung an den Listener.
+     * Backends ohne Streaming melden alle Felder auf einmal, nachdem die Antwort vollständig ist.
+     */
+    default JsonObject completeStreaming(PromptMessages historyWithStatus, LlmStreamListener listener) throws Exception {
+        JsonObject result = complete(historyWithStatus);
+        for (Map.Entry<String, JsonElement> entry : result.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isString()) {
+                listener.onFieldDelta(entry.getKey(), value.getAsString());
+                listener.onFieldComplete(entry.getKey(), value.getAsString());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Nicht-blockierende Variante von {@link #completeStreaming}: das Warten auf die Antwort läuft auf dem
+     * {@link HttpTransport}-Pool, der aufrufende Thread (z.B. llmThread) ist sofort wieder frei.
+     */
+    default CompletableFuture<JsonObject> completeStreamingAsync(PromptMessages historyWithStatus, LlmStreamListener listener) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return completeStreaming(historyWithStatus, listener);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, HttpTransport.executor());
+    }
+
     default String name() { return getClass().getSimpleName(); }
 }
@@ -0,0 +1,18 @@
+package adris.altoclef.ai;
+
+/**
+ * Receives the top-level string fields of a streamed {message, command, reason} reply
+ * while the model is still generating it.
+ */
+public interface LlmStreamListener {
+    LlmStreamListener NONE = new LlmStreamListener() {};
+
+    /** Called with every decoded piece of a string field, in order. */
+    default void onFieldDelta(String field, String delta) {}
+
+    /** Called once the closing quote of a string field has arrived. */
+    default void onFieldComplete(String field, String value) {}
+
+    /** Called if the server reports token usage for the request. */
+    default void onUsage(int promptTokens, int completionTokens) {}
+}
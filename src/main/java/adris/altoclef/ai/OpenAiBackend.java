@@ -1,10 +1,9 @@
 package adris.altoclef.ai;
 
 import com.google.gson.*;
-import java.io.*;
-import java.net.*;
-import java.nio.charset.StandardCharsets;
-import adris.altoclef.player2api.ConversationHistory;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import adris.altoclef.player2api.PromptMessages;
 
 public final class OpenAiBackend implements LlmBackend {
   private final String apiKey;
@@ -19,8 +18,27 @@ public final class OpenAiBackend implements LlmBackend {
   }
 
   @Override
-  public JsonObject complete(ConversationHistory historyWithStatus) throws Exception {
+  public JsonObject complete(PromptMessages historyWithStatus) throws Exception {
+    JsonObject root = HttpTransport.sendJson(post(historyWithStatus, buildBody(false)));
+    String content = root.getAsJsonArray("choices").get(0).getAsJsonObject()
+                         .getAsJsonObject("message").get("content").getAsString();
+
+    // content ist dank response_format valides JSON im gewünschten Schema
+    return withDefaults(JsonParser.parseString(content).getAsJsonObject());
+  }
+
+  @Override
+  public JsonObject completeStreaming(PromptMessages historyWithStatus, LlmStreamListener listener) throws Exception {
+    InputStream body = HttpTransport.send(post(historyWithStatus, buildBody(true))).body();
+
+    // SSE: jedes "data:"-Event liefert ein Stück content, Felder werden beim Schließen sofort gemeldet
+    String content = ChatCompletionStream.read(body, listener);
+    return withDefaults(JsonParser.parseString(content).getAsJsonObject());
+  }
+
+  private JsonObject buildBody(boolean stream) {
     // ---- JSON-Schema für strukturierten Output {message, command, reason}
+    // Reihenfolge ist Absicht: "command" wird vor "reason" generiert und kann beim Streamen früh ausgeführt werden
     JsonObject props = new JsonObject();
     props.add("message", prop("string", "Chat output (<250 chars)"));
     props.add("command", prop("string", "ChatClef command or empty string"));
@@ -34,44 +52,34 @@ public final class OpenAiBackend implements LlmBackend {
     jsonSchema.addProperty("name", "ChatClefCommand");
     jsonSchema.add("schema", schema);
 
-    // ---- Messages aus ConversationHistory übernehmen (Systemprompt ist dort enthalten)
-    JsonArray messages = new JsonArray();
-    for (JsonObject msg : historyWithStatus.getListJSON()) messages.add(msg);
-
     JsonObject responseFormat = new JsonObject();
     responseFormat.addProperty("type", "json_schema");
     responseFormat.add("json_schema", jsonSchema);
 
     JsonObject body = new JsonObject();
     body.addProperty("model", model);
-    body.add("messages", messages);
     body.add("response_format", responseFormat);
     body.addProperty("temperature", 0.2);
-
-    // ---- HTTP POST
-    URL url = new URI(baseUrl + "/v1/chat/completions").toURL();
-    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-    conn.setRequestMethod("POST");
-    conn.setConnectTimeout(15000);
-    conn.setReadTimeout(60000);
-    conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-    conn.setRequestProperty("Authorization", "Bearer " + apiKey);
-    conn.setDoOutput(true);
-    try (OutputStream os = conn.getOutputStream()) {
-      os.write(body.toString().getBytes(StandardCharsets.UTF_8));
+    if (stream) {
+      body.addProperty("stream", true);
+      // letztes Event enthält dann "usage" mit den Token-Zahlen
+      JsonObject streamOptions = new JsonObject();
+      streamOptions.addProperty("include_usage", true);
+      body.add("stream_options", streamOptions);
     }
+    return body;
+  }
 
-    int code = conn.getResponseCode();
-    InputStream is = code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream();
-    String resp = readAll(is);
-    if (code / 100 != 2) throw new IOException("OpenAI HTTP " + code + ": " + resp);
-
-    JsonObject root = JsonParser.parseString(resp).getAsJsonObject();
-    String content = root.getAsJsonArray("choices").get(0).getAsJsonObject()
-                         .getAsJsonObject("message").get("content").getAsString();
+  // "messages" wird erst beim Senden aus den fertig serialisierten Nachrichten angehängt (Systemprompt ist dort enthalten)
+  private HttpRequest post(PromptMessages messages, JsonObject body) {
+    return HttpTransport.request(baseUrl + "/v1/chat/completions")
+        .header("Content-Type", "application/json; charset=utf-8")
+        .header("Authorization", "Bearer " + apiKey)
+        .POST(messages.toBodyPublisher(body))
+        .build();
+  }
 
-    // content ist dank response_format valides JSON im gewünschten Schema
-    JsonObject parsed = JsonParser.parseString(content).getAsJsonObject();
+  private static JsonObject withDefaults(JsonObject parsed) {
     if (!parsed.has("message")) parsed.addProperty("message", "");
     if (!parsed.has("command")) parsed.addProperty("command", "");
     if (!parsed.has("reason"))  parsed.addProperty("reason",  "");
@@ -89,12 +97,4 @@ public final class OpenAiBackend implements LlmBackend {
     for (String v : vals) a.add(v);
     return a;
   }
-  private static String readAll(InputStream is) throws IOException {
-    if (is == null) return "";
-    try (BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-      StringBuilder sb = new StringBuilder();
-      for (String line; (line = br.readLine()) != null; ) sb.append(line);
-      return sb.toString();
-    }
-  }
 }
@@ -0,0 +1,50 @@
+package adris.altoclef.ai;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running prompt/response token totals as reported by the LLM server.
+ */
+public class TokenUsageStats {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private volatile int lastPromptTokens = 0;
+    private volatile int lastCompletionTokens = 0;
+
+    public void record(int prompt, int completion) {
+        requests.incrementAndGet();
+        promptTokens.addAndGet(prompt);
+        completionTokens.addAndGet(completion);
+        lastPromptTokens = prompt;
+        lastCompletionTokens = completion;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getPromptTokens() {
+        return promptTokens.get();
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens.get();
+    }
+
+    public int getLastPromptTokens() {
+        return lastPromptTokens;
+    }
+
+    public int getLastCompletionTokens() {
+        return lastCompletionTokens;
+    }
+
+    @Override
+    public String toString() {
+        long n = Math.max(1, getRequests());
+        return String.format("last prompt=%d completion=%d | total prompt=%d completion=%d over %d requests (avg prompt %d)",
+                lastPromptTokens, lastCompletionTokens, getPromptTokens(), getCompletionTokens(), getRequests(),
+                getPromptTokens() / n);
+    }
+}
@@ -0,0 +1,324 @@
+package adris.altoclef.commands;
+
+import adris.altoclef.util.helpers.BaritoneHelper;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.block.Block;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Block positions bucketed per block type and chunk column, stored as packed longs.
+ * <p>
+ * Nearest / k-nearest queries walk the columns outwards from the query point in rings and stop as
+ * soon as no further ring can hold anything closer, so they don't depend on how many positions are
+ * known in total. Distances are Baritone's heuristic to the block center, like everywhere else in
+ * {@link BlockScanner}.
+ * <p>
+ * Common blocks only keep a sample per chunk section. Once every sampled position of a section is
+ * gone, the chunk is handed to `onSampleExhausted` so it can be scanned again.
+ * <p>
+ * One thread writes (the scan worker), any thread may query. Column arrays are never modified once
+ * published, writes replace them.
+ */
+final class BlockPositionIndex {
+
+    // Below this many columns for a block, checking every column is cheaper than walking rings.
+    private static final int DIRECT_SCAN_COLUMNS = 64;
+
+    private final Map<Block, Columns> byBlock = new ConcurrentHashMap<>();
+    // Chunk -> blocks it has positions for, so a chunk can be dropped again. Writer only.
+    private final HashMap<Long, Set<Block>> chunkBlocks = new HashMap<>();
+    // Chunk -> block -> section Ys where only a sample of that block is kept. Writer only.
+    private final HashMap<Long, Map<Block, Set<Integer>>> sampledSections = new HashMap<>();
+    private final LongConsumer onSampleExhausted;
+
+    BlockPositionIndex(LongConsumer onSampleExhausted) {
+        this.onSampleExhausted = onSampleExhausted;
+    }
+
+    private static final class Columns {
+        final Map<Long, long[]> positions = new ConcurrentHashMap<>();
+        // Column bounds, only ever grow. Used to know when the ring walk can stop.
+        volatile int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minZ = Integer.MAX_VALUE, maxZ = Integer.MIN_VALUE;
+
+        void put(long chunk, long[] values) {
+            int x = ChunkPos.getPackedX(chunk);
+            int z = ChunkPos.getPackedZ(chunk);
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (z < minZ) minZ = z;
+            if (z > maxZ) maxZ = z;
+            positions.put(chunk, values);
+        }
+    }
+
+    // ---- Writes (one thread only)
+
+    /**
+     * Replaces everything known about a chunk.
+     *
+     * @param sampled Per block, the section Ys where `found` only holds a sample of it
+     */
+    void putChunk(long chunk, Map<Block, long[]> found, Map<Block, Set<Integer>> sampled) {
+        dropChunk(chunk);
+        for (Map.Entry<Block, long[]> entry : found.entrySet()) {
+            byBlock.computeIfAbsent(entry.getKey(), b -> new Columns()).put(chunk, entry.getValue());
+        }
+        chunkBlocks.put(chunk, new HashSet<>(found.keySet()));
+        if (!sampled.isEmpty()) {
+            sampledSections.put(chunk, sampled);
+        }
+    }
+
+    void dropChunk(long chunk) {
+        sampledSections.remove(chunk);
+        Set<Block> blocks = chunkBlocks.remove(chunk);
+        if (blocks == null) return;
+        for (Block block : blocks) {
+            Columns columns = byBlock.get(block);
+            if (columns != null) {
+                columns.positions.remove(chunk);
+            }
+        }
+    }
+
+    /**
+     * Applies a single block change. `block` null means the position no longer holds anything we keep.
+     */
+    void set(long pos, Block block) {
+        long chunk = chunkOf(pos);
+        Set<Block> blocks = chunkBlocks.computeIfAbsent(chunk, k -> new HashSet<>());
+        for (Block old : blocks) {
+            remove(old, pos);
+        }
+        if (block != null) {
+            Columns columns = byBlock.computeIfAbsent(block, b -> new Columns());
+            long[] current = columns.positions.getOrDefault(chunk, new long[0]);
+            long[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = pos;
+            columns.put(chunk, added);
+            blocks.add(block);
+        }
+    }
+
+    /**
+     * Forgets one position of one block, used to drop entries found to be stale by a query.
+     */
+    void remove(Block block, long pos) {
+        Columns columns = byBlock.get(block);
+        if (columns == null) return;
+        long chunk = chunkOf(pos);
+        long[] current = columns.positions.get(chunk);
+        if (current == null) return;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != pos) continue;
+            long[] removed = new long[current.length - 1];
+            System.arraycopy(current, 0, removed, 0, i);
+            System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+            columns.positions.put(chunk, removed);
+            checkSample(block, chunk, pos, removed);
+            return;
+        }
+    }
+
+    void clear() {
+        byBlock.clear();
+        chunkBlocks.clear();
+        sampledSections.clear();
+    }
+
+    // If `pos` was the last sampled position of its section, the rest of the section is unknown.
+    private void checkSample(Block block, long chunk, long pos, long[] remaining) {
+        Map<Block, Set<Integer>> sampled = sampledSections.get(chunk);
+        if (sampled == null) return;
+        Set<Integer> sections = sampled.get(block);
+        int sectionY = ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(pos));
+        if (sections == null || !sections.contains(sectionY)) return;
+        for (long other : remaining) {
+            if (ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(other)) == sectionY) return;
+        }
+        sections.remove(sectionY);
+        onSampleExhausted.accept(chunk);
+    }
+
+    // ---- Queries (any thread)
+
+    void forEach(Block block, LongConsumer action) {
+        Columns columns = byBlock.get(block);
+        if (columns == null) return;
+        for (long[] positions : columns.positions.values()) {
+            for (long pos : positions) {
+                action.accept(pos);
+            }
+        }
+    }
+
+    boolean anyMatch(Block block, LongPredicate test) {
+        Columns columns = byBlock.get(block);
+        if (columns == null) return false;
+        for (long[] positions : columns.positions.values()) {
+            for (long pos : positions) {
+                if (test.test(pos)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The `k` nearest positions of `block` that pass `accept`, nearest first. Only positions closer
+     * than `maxDistance` are considered. `accept` is only asked about positions that could make it
+     * into the result.
+     */
+    long[] nearest(Block block, Vec3d from, int k, double maxDistance, LongPredicate accept) {
+        Columns columns = byBlock.get(block);
+        if (columns == null || k <= 0) return new long[0];
+
+        // Max-heap on distance, holds the best k so far
+        PriorityQueue<Hit> best = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(b.distance, a.distance));
+        double[] cutoff = {maxDistance};
+        ColumnVisitor visitor = (chunk, positions) -> {
+            if (columnLowerBound(from, chunk) >= cutoff[0]) return;
+            for (long pos : positions) {
+                double distance = distance(from, pos);
+                if (distance >= cutoff[0] || !accept.test(pos)) continue;
+                best.add(new Hit(pos, distance));
+                if (best.size() > k) best.poll();
+                if (best.size() == k) cutoff[0] = best.peek().distance;
+            }
+        };
+
+        int originX = ChunkSectionPos.getSectionCoord((int) Math.floor(from.x));
+        int originZ = ChunkSectionPos.getSectionCoord((int) Math.floor(from.z));
+        if (columns.positions.size() <= DIRECT_SCAN_COLUMNS) {
+            for (Map.Entry<Long, long[]> entry : columns.positions.entrySet()) {
+                visitor.visit(entry.getKey(), entry.getValue());
+            }
+        } else {
+            int maxRing = Math.max(Math.max(originX - columns.minX, columns.maxX - originX),
+                    Math.max(originZ - columns.minZ, columns.maxZ - originZ));
+            for (int ring = 0; ring <= maxRing; ring++) {
+                // Every column in this ring is at least (ring - 1) chunks away along x or z
+                if (ring > 1 && ringLowerBound(ring) >= cutoff[0]) break;
+                visitRing(columns, originX, originZ, ring, visitor);
+            }
+        }
+
+        long[] result = new long[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll().pos;
+        }
+        return result;
+    }
+
+    /**
+     * Every position of `block` within `range` (straight line, to the block center) that passes `accept`.
+     */
+    long[] withinRange(Block block, Vec3d from, double range, LongPredicate accept) {
+        Columns columns = byBlock.get(block);
+        if (columns == null) return new long[0];
+
+        double rangeSq = range * range;
+        LongArrayList result = new LongArrayList();
+        ColumnVisitor visitor = (chunk, positions) -> {
+            for (long pos : positions) {
+                double dx = BlockPos.unpackLongX(pos) + 0.5 - from.x;
+                double dy = BlockPos.unpackLongY(pos) + 0.5 - from.y;
+                double dz = BlockPos.unpackLongZ(pos) + 0.5 - from.z;
+                if (dx * dx + dy * dy + dz * dz <= rangeSq && accept.test(pos)) {
+                    result.add(pos);
+                }
+            }
+        };
+
+        int minX = ChunkSectionPos.getSectionCoord((int) Math.floor(from.x - range));
+        int maxX = ChunkSectionPos.getSectionCoord((int) Math.floor(from.x + range));
+        int minZ = ChunkSectionPos.getSectionCoord((int) Math.floor(from.z - range));
+        int maxZ = ChunkSectionPos.getSectionCoord((int) Math.floor(from.z + range));
+        if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > columns.positions.size()) {
+            for (Map.Entry<Long, long[]> entry : columns.positions.entrySet()) {
+                int x = ChunkPos.getPackedX(entry.getKey());
+                int z = ChunkPos.getPackedZ(entry.getKey());
+                if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) {
+                    visitor.visit(entry.getKey(), entry.getValue());
+                }
+            }
+        } else {
+            for (int x = minX; x <= maxX; x++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    long chunk = ChunkPos.toLong(x, z);
+                    long[] positions = columns.positions.get(chunk);
+                    if (positions != null) visitor.visit(chunk, positions);
+                }
+            }
+        }
+        return result.toLongArray();
+    }
+
+    private interface ColumnVisitor {
+        void visit(long chunk, long[] positions);
+    }
+
+    private record Hit(long pos, double distance) {
+    }
+
+    private static void visitRing(Columns columns, int originX, int originZ, int ring, ColumnVisitor visitor) {
+        if (ring == 0) {
+            visitColumn(columns, originX, originZ, visitor);
+            return;
+        }
+        for (int i = -ring; i <= ring; i++) {
+            visitColumn(columns, originX + i, originZ - ring, visitor);
+            visitColumn(columns, originX + i, originZ + ring, visitor);
+        }
+        for (int i = -ring + 1; i <= ring - 1; i++) {
+            visitColumn(columns, originX - ring, originZ + i, visitor);
+            visitColumn(columns, originX + ring, originZ + i, visitor);
+        }
+    }
+
+    private static void visitColumn(Columns columns, int x, int z, ColumnVisitor visitor) {
+        long chunk = ChunkPos.toLong(x, z);
+        long[] positions = columns.positions.get(chunk);
+        if (positions != null) {
+            visitor.visit(chunk, positions);
+        }
+    }
+
+    private static double distance(Vec3d from, long pos) {
+        return BaritoneHelper.calculateGenericHeuristic(from.x, from.y, from.z,
+                BlockPos.unpackLongX(pos) + 0.5, BlockPos.unpackLongY(pos) + 0.5, BlockPos.unpackLongZ(pos) + 0.5);
+    }
+
+    /**
+     * The heuristic to the closest point of a chunk column. Baritone's heuristic only grows with
+     * the x/z distance, so no block in the column can score below this.
+     */
+    private static double columnLowerBound(Vec3d from, long chunk) {
+        int startX = ChunkSectionPos.getBlockCoord(ChunkPos.getPackedX(chunk));
+        int startZ = ChunkSectionPos.getBlockCoord(ChunkPos.getPackedZ(chunk));
+        double x = Math.max(startX + 0.5, Math.min(from.x, startX + 15.5));
+        double z = Math.max(startZ + 0.5, Math.min(from.z, startZ + 15.5));
+        return BaritoneHelper.calculateGenericHeuristic(from.x, from.y, from.z, x, from.y, z);
+    }
+
+    private static double ringLowerBound(int ring) {
+        return BaritoneHelper.calculateGenericHeuristic(0, 0, 0, (ring - 1) * 16, 0, 0);
+    }
+
+    private static long chunkOf(long pos) {
+        return ChunkPos.toLong(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(pos)),
+                ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(pos)));
+    }
+}
@@ -3,70 +3,119 @@ package adris.altoclef.commands;
 import adris.altoclef.AltoClef;
 import adris.altoclef.Debug;
 import adris.altoclef.eventbus.EventBus;
-import adris.altoclef.eventbus.events.BlockPlaceEvent;
+import adris.altoclef.eventbus.events.BlockChangedEvent;
+import adris.altoclef.eventbus.events.ChunkLoadEvent;
+import adris.altoclef.eventbus.events.ChunkUnloadEvent;
 import adris.altoclef.multiversion.blockpos.BlockPosVer;
 import adris.altoclef.trackers.blacklisting.WorldLocateBlacklist;
 import adris.altoclef.util.Dimension;
 import adris.altoclef.util.helpers.BaritoneHelper;
 import adris.altoclef.util.helpers.WorldHelper;
-import adris.altoclef.util.time.TimerGame;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
 import net.minecraft.world.chunk.WorldChunk;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 
+/**
+ * Knows where blocks are in the loaded world.
+ * <p>
+ * Chunks are scanned once, when they load, on a single long-lived worker thread. After that the
+ * results are only patched: unloaded chunks are dropped and placed/broken blocks are applied as
+ * single updates, so nothing runs while the world doesn't change. On top of that the blocks right
+ * around the player are kept in a {@link NearBlockCache} that follows the player.
+ * <p>
+ * Away from the player only blocks someone asked about are collected. The first query for a block
+ * has every loaded chunk scanned again, until then only the blocks around the player know about it.
+ * <p>
+ * Positions are kept in a {@link BlockPositionIndex}, so nearest / k-nearest / within range queries
+ * only look at the chunks around the query point. Entries found to be stale while answering a query
+ * are dropped from the index.
+ */
 public class BlockScanner {
 
     private static final boolean LOG = false;
-    private static final int RESCAN_TICK_DELAY = 4 * 20;
-    private static final int CACHED_POSITIONS_PER_BLOCK = 40;
+    // Every position of a block is kept, unless it fills more than a sixteenth of a chunk section (stone, dirt,
+    // water). Those keep a sample spread over the section, which is scanned again once all of it is gone.
+    private static final int SAMPLE_ABOVE = 16 * 16 * 16 / 16;
+    private static final int POSITIONS_PER_SECTION = 16;
 
+    private static final ExecutorService scanWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "altoclef-block-scanner");
+        t.setDaemon(true);
+        return t;
+    });
 
     private final AltoClef mod;
-    private final TimerGame rescanTimer = new TimerGame(1);
 
-    private final HashMap<Block, HashSet<BlockPos>> trackedBlocks = new HashMap<>();
-    private final HashMap<Block, HashSet<BlockPos>> scannedBlocks = new HashMap<>();
-    private final HashMap<ChunkPos, Long> scannedChunks = new HashMap<>();
+    // Only the scan worker writes
+    private final BlockPositionIndex index = new BlockPositionIndex(this::rescanChunk);
+    // Blocks right around the player. Client thread only.
+    private final NearBlockCache nearBlocks = new NearBlockCache();
     private final WorldLocateBlacklist blacklist = new WorldLocateBlacklist();
-    // used while scanning
-    private HashMap<Block, HashSet<BlockPos>> cachedScannedBlocks = new HashMap<>();
+    // Blocks someone asked about, the only ones the scan collects. Never shrinks.
+    private final Set<Block> trackedBlocks = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean rescanTracked = new AtomicBoolean(false);
     private Dimension scanDimension = Dimension.OVERWORLD;
     private World scanWorld = null;
 
-    private boolean scanning = false;
-    private boolean forceStop = false;
-
 
     public BlockScanner(AltoClef mod) {
         this.mod = mod;
 
-        EventBus.subscribe(BlockPlaceEvent.class, evt -> addBlock(evt.blockState.getBlock(), evt.blockPos));
+        EventBus.subscribe(BlockChangedEvent.class, this::onBlocksChanged);
+        EventBus.subscribe(ChunkLoadEvent.class, evt -> {
+            nearBlocks.reloadChunk(mod.getWorld(), evt.chunk.getPos());
+            queueChunkScan(evt.chunk);
+        });
+        EventBus.subscribe(ChunkUnloadEvent.class, evt -> {
+            long chunk = evt.chunkPos.toLong();
+            scanWorker.execute(() -> index.dropChunk(chunk));
+        });
     }
 
 
+    private void onBlocksChanged(BlockChangedEvent evt) {
+        long[] positions = Arrays.copyOf(evt.positions, evt.size);
+        Block[] blocks = new Block[evt.size];
+        for (int i = 0; i < evt.size; ++i) {
+            BlockState state = evt.getNewState(i);
+            // null means air, which we don't keep
+            Block block = state.isAir() ? null : state.getBlock();
+            nearBlocks.set(positions[i], block);
+            blocks[i] = block != null && trackedBlocks.contains(block) ? block : null;
+        }
+        scanWorker.execute(() -> {
+            for (int i = 0; i < positions.length; ++i) {
+                index.set(positions[i], blocks[i]);
+            }
+        });
+    }
+
     public void addBlock(Block block, BlockPos pos) {
         if (!isBlockAtPosition(pos, block)) {
             Debug.logInternal("INVALID SET: " + block + " " + pos);
             return;
         }
 
-        if (trackedBlocks.containsKey(block)) {
-            trackedBlocks.get(block).add(pos);
-        } else {
-            HashSet<BlockPos> set = new HashSet<>();
-            set.add(pos);
-
-            trackedBlocks.put(block, set);
-        }
+        long packed = pos.asLong();
+        scanWorker.execute(() -> index.set(packed, block));
     }
 
 
@@ -88,9 +137,17 @@ public class BlockScanner {
         List<BlockPos> locations = new LinkedList<>();
 
         for (Block block : blocks) {
-            if (!trackedBlocks.containsKey(block)) continue;
+            track(block);
+            LongSet near = nearBlocks.get(block);
+            for (LongIterator it = near.iterator(); it.hasNext(); ) {
+                locations.add(BlockPos.fromLong(it.nextLong()));
+            }
 
-            locations.addAll(trackedBlocks.get(block));
+            index.forEach(block, packed -> {
+                if (!near.contains(packed)) {
+                    locations.add(BlockPos.fromLong(packed));
+                }
+            });
         }
 
         return locations;
@@ -103,6 +160,37 @@ public class BlockScanner {
         return locations;
     }
 
+    /**
+     * All known, reachable locations of the given blocks within a straight line distance of `pos`.
+     *
+     * @param pos    The center of this radius
+     * @param range  Radius to look in
+     * @param blocks What blocks to check for
+     */
+    public List<BlockPos> getKnownLocationsWithinRange(Vec3d pos, double range, Block... blocks) {
+        List<BlockPos> locations = new ArrayList<>();
+
+        for (Block block : blocks) {
+            track(block);
+            LongSet near = nearBlocks.get(block);
+            for (LongIterator it = near.iterator(); it.hasNext(); ) {
+                BlockPos p = BlockPos.fromLong(it.nextLong());
+                if (p.isWithinDistance(pos, range) && isValid(block, p, p2 -> true)) {
+                    locations.add(p);
+                }
+            }
+
+            for (long packed : index.withinRange(block, pos, range, candidate -> !near.contains(candidate))) {
+                BlockPos p = BlockPos.fromLong(packed);
+                if (isValid(block, p, p2 -> true)) {
+                    locations.add(p);
+                }
+            }
+        }
+
+        return locations;
+    }
+
     /**
      * Scans a radius for the closest block of a given type .
      *
@@ -111,11 +199,8 @@ public class BlockScanner {
      * @param blocks What blocks to check for
      */
     public Optional<BlockPos> getNearestWithinRange(Vec3d pos, double range, Block... blocks) {
-        Optional<BlockPos> nearest = getNearestBlock(pos, blocks);
-
-        if (nearest.isEmpty() || nearest.get().isWithinDistance(pos, range)) return nearest;
-
-        return Optional.empty();
+        return getKnownLocationsWithinRange(pos, range, blocks).stream()
+                .min(Comparator.comparingDouble(p -> BaritoneHelper.calculateGenericHeuristic(pos, WorldHelper.toVec3d(p))));
     }
 
     public Optional<BlockPos> getNearestWithinRange(BlockPos pos, double range, Block... blocks) {
@@ -130,12 +215,14 @@ public class BlockScanner {
 
     public boolean anyFound(Predicate<BlockPos> isValidTest, Block... blocks) {
         for (Block block : blocks) {
-            if (!trackedBlocks.containsKey(block)) continue;
-
-            for (BlockPos pos : trackedBlocks.get(block)) {
-                if (isValidTest.test(pos) && mod.getWorld().getBlockState(pos).getBlock().equals(block) && !this.isUnreachable(pos))
+            track(block);
+            for (LongIterator it = nearBlocks.get(block).iterator(); it.hasNext(); ) {
+                if (isValid(block, BlockPos.fromLong(it.nextLong()), isValidTest))
                     return true;
             }
+
+            if (index.anyMatch(block, packed -> isValid(block, BlockPos.fromLong(packed), isValidTest)))
+                return true;
         }
 
         return false;
@@ -178,27 +265,77 @@ public class BlockScanner {
     }
 
     public Optional<BlockPos> getNearestBlock(Block block, Predicate<BlockPos> isValidTest, Vec3d fromPos) {
-        BlockPos pos = null;
-        double nearest = Double.POSITIVE_INFINITY;
+        List<BlockPos> nearest = getNearestBlocks(block, 1, isValidTest, fromPos);
+        return nearest.isEmpty() ? Optional.empty() : Optional.of(nearest.get(0));
+    }
 
-        if (!trackedBlocks.containsKey(block)) {
-            return Optional.empty();
+    /**
+     * The `count` closest known locations of the given blocks, closest first.
+     */
+    public List<BlockPos> getNearestBlocks(Vec3d pos, int count, Predicate<BlockPos> isValidTest, Block... blocks) {
+        List<BlockPos> result = new ArrayList<>();
+        for (Block block : blocks) {
+            result.addAll(getNearestBlocks(block, count, isValidTest, pos));
+        }
+        if (blocks.length > 1) {
+            result.sort(Comparator.comparingDouble(p -> BaritoneHelper.calculateGenericHeuristic(pos, WorldHelper.toVec3d(p))));
+            if (result.size() > count) {
+                result = new ArrayList<>(result.subList(0, count));
+            }
         }
+        return result;
+    }
 
-        for (BlockPos p : trackedBlocks.get(block)) {
+    private List<BlockPos> getNearestBlocks(Block block, int count, Predicate<BlockPos> isValidTest, Vec3d fromPos) {
+        track(block);
+        // Best of the blocks around the player first, they bound what the index has to beat
+        PriorityQueue<BlockPos> best = new PriorityQueue<>(Comparator.comparingDouble(
+                (BlockPos p) -> BaritoneHelper.calculateGenericHeuristic(fromPos, WorldHelper.toVec3d(p))).reversed());
+        LongSet near = nearBlocks.get(block);
+        for (LongIterator it = near.iterator(); it.hasNext(); ) {
+            BlockPos p = BlockPos.fromLong(it.nextLong());
             //ensure the block is there (can change upon rescan)
-            if (!mod.getWorld().getBlockState(p).getBlock().equals(block)) continue;
-            if (!isValidTest.test(p) || isUnreachable(p)) continue;
+            if (!isValid(block, p, isValidTest)) continue;
+            best.add(p);
+            if (best.size() > count) best.poll();
+        }
 
-            double dist = BaritoneHelper.calculateGenericHeuristic(fromPos, WorldHelper.toVec3d(p));
+        double cutoff = best.size() < count ? Double.POSITIVE_INFINITY
+                : BaritoneHelper.calculateGenericHeuristic(fromPos, WorldHelper.toVec3d(best.peek()));
+        long[] indexed = index.nearest(block, fromPos, count, cutoff,
+                packed -> !near.contains(packed) && isValid(block, BlockPos.fromLong(packed), isValidTest));
+        for (long packed : indexed) {
+            best.add(BlockPos.fromLong(packed));
+            if (best.size() > count) best.poll();
+        }
 
-            if (dist < nearest) {
-                nearest = dist;
-                pos = p;
-            }
+        BlockPos[] sorted = new BlockPos[best.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = best.poll();
         }
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
 
-        return pos != null ? Optional.of(pos) : Optional.empty();
+    // From now on the scan collects `block`, chunks scanned before get scanned again next tick
+    private void track(Block block) {
+        if (trackedBlocks.add(block)) {
+            rescanTracked.set(true);
+        }
+    }
+
+    /**
+     * Whether a known location still holds `block` and is worth going to. Locations that turn out
+     * to hold something else now are dropped from the index.
+     */
+    private boolean isValid(Block block, BlockPos pos, Predicate<BlockPos> isValidTest) {
+        if (!mod.getWorld().getBlockState(pos).getBlock().equals(block)) {
+            if (mod.getChunkTracker().isChunkLoaded(pos)) {
+                long packed = pos.asLong();
+                scanWorker.execute(() -> index.remove(block, packed));
+            }
+            return false;
+        }
+        return isValidTest.test(pos) && !isUnreachable(pos);
     }
 
     public boolean anyFoundWithinDistance(double distance, Block... blocks) {
@@ -206,8 +343,7 @@ public class BlockScanner {
     }
 
     public boolean anyFoundWithinDistance(Vec3d pos, double distance, Block... blocks) {
-        Optional<BlockPos> blockPos = getNearestBlock(blocks);
-        return blockPos.map(value -> value.isWithinDistance(pos, distance)).orElse(false);
+        return getNearestWithinRange(pos, distance, blocks).isPresent();
     }
 
     public double distanceToClosest(Block... blocks) {
@@ -215,7 +351,7 @@ public class BlockScanner {
     }
 
     public double distanceToClosest(Vec3d pos, Block... blocks) {
-        Optional<BlockPos> blockPos = getNearestBlock(blocks);
+        Optional<BlockPos> blockPos = getNearestBlock(pos, blocks);
         return blockPos.map(value ->  Math.sqrt(BlockPosVer.getSquaredDistance(value, pos))).orElse(Double.POSITIVE_INFINITY);
     }
 
@@ -252,19 +388,13 @@ public class BlockScanner {
     }
 
     public void reset() {
-        trackedBlocks.clear();
-        scannedBlocks.clear();
-        scannedChunks.clear();
-        rescanTimer.forceElapse();
+        nearBlocks.clear();
         blacklist.clear();
-        forceStop = true;
+        scanWorker.execute(index::clear);
     }
 
     public void tick() {
         if (mod.getWorld() == null || mod.getPlayer() == null) return;
-        //be maximally aware of the closest blocks around you
-        scanCloseBlocks();
-        if (!rescanTimer.elapsed() || scanning) return;
 
         if (scanDimension != WorldHelper.getCurrentDimension() || mod.getWorld() != scanWorld) {
             if (LOG) {
@@ -273,199 +403,134 @@ public class BlockScanner {
             reset();
             scanWorld = mod.getWorld();
             scanDimension = WorldHelper.getCurrentDimension();
-            return;
+            // Chunks that loaded before we noticed the switch were cleared with the rest
+            rescanTracked.set(true);
         }
-
-        cachedScannedBlocks = new HashMap<>(scannedBlocks.size());
-        for (Map.Entry<Block, HashSet<BlockPos>> entry : scannedBlocks.entrySet()) {
-            cachedScannedBlocks.put(entry.getKey(), (HashSet<BlockPos>) entry.getValue().clone());
+        // All blocks asked about for the first time since last tick get picked up in one go
+        if (rescanTracked.getAndSet(false)) {
+            for (ChunkPos pos : mod.getChunkTracker().getLoadedChunks()) {
+                queueChunkScan(mod.getWorld().getChunk(pos.x, pos.z));
+            }
         }
 
-        if (LOG) {
-            mod.log("Updating BlockScanner.. size: " + trackedBlocks.size() + " : " + cachedScannedBlocks.size());
-        }
+        //be maximally aware of the closest blocks around you
+        nearBlocks.update(mod.getWorld(), mod.getPlayer().getBlockPos());
+    }
 
-        scanning = true;
-        forceStop = false;
-        new Thread(() -> {
+    private void queueChunkScan(WorldChunk chunk) {
+        if (chunk == null) return;
+        long chunkKey = chunk.getPos().toLong();
+        scanWorker.execute(() -> {
             try {
-                rescan(Integer.MAX_VALUE, Integer.MAX_VALUE);
+                ScanResult result = scanChunk(chunk);
+                index.putChunk(chunkKey, result.found(), result.sampled());
             } catch (Exception e) {
                 e.printStackTrace();
-            } finally {
-                rescanTimer.reset();
-                scanning = false;
             }
-        }).start();
+        });
     }
 
-    private void scanCloseBlocks() {
-        for (Map.Entry<Block, HashSet<BlockPos>> entry : cachedScannedBlocks.entrySet()) {
-            if (!trackedBlocks.containsKey(entry.getKey())) {
-                trackedBlocks.put(entry.getKey(), new HashSet<>());
-            }
-            trackedBlocks.get(entry.getKey()).clear();
-
-            trackedBlocks.get(entry.getKey()).addAll(entry.getValue());
-        }
-
-        HashMap<Block, HashSet<BlockPos>> map = new HashMap<>();
-
-        BlockPos pos = mod.getPlayer().getBlockPos();
-        World world = mod.getPlayer().getWorld();
-
-        for (int x = pos.getX() - 8; x <= pos.getX() + 8; x++) {
-            for (int y = pos.getY() - 8; y < pos.getY() + 8; y++) {
-                for (int z = pos.getZ() - 8; z <= pos.getZ() + 8; z++) {
-                    BlockPos p = new BlockPos(x, y, z);
-                    BlockState state = world.getBlockState(p);
-                    if (world.getBlockState(p).isAir()) continue;
-
-                    Block block = state.getBlock();
-
-                    if (map.containsKey(block)) {
-                        map.get(block).add(p);
-                    } else {
-                        HashSet<BlockPos> set = new HashSet<>();
-                        set.add(p);
-                        map.put(block, set);
-                    }
-                }
-            }
-        }
-
-        for (Map.Entry<Block, HashSet<BlockPos>> entry : map.entrySet()) {
-            getFirstFewPositions(entry.getValue(),mod.getPlayer().getPos());
-
-            if (!trackedBlocks.containsKey(entry.getKey())) {
-                trackedBlocks.put(entry.getKey(), new HashSet<>());
+    // Called on the scan worker. Chunks are fetched on the client thread.
+    private void rescanChunk(long chunkKey) {
+        MinecraftClient.getInstance().execute(() -> {
+            ChunkPos pos = new ChunkPos(chunkKey);
+            if (mod.getWorld() != null && mod.getChunkTracker().isChunkLoaded(pos)) {
+                queueChunkScan(mod.getWorld().getChunk(pos.x, pos.z));
             }
+        });
+    }
 
-            trackedBlocks.get(entry.getKey()).addAll(entry.getValue());
-        }
+    private record ScanResult(Map<Block, long[]> found, Map<Block, Set<Integer>> sampled) {
     }
 
-    private void rescan(int maxCount, int cutOffRadius) {
+    /**
+     * scans a chunk and collects the block positions in it, per block
+     * <p>
+     * Goes section by section and skips air-only sections, and sections whose palette holds none
+     * of the tracked blocks. A section made of a single block is answered from its palette alone,
+     * without looking at its blocks. Runs on the scan worker.
+     *
+     * @param chunk the scanned chunk
+     */
+    private ScanResult scanChunk(WorldChunk chunk) {
         long ms = System.currentTimeMillis();
-
-        ChunkPos playerChunkPos = mod.getPlayer().getChunkPos();
-        Vec3d playerPos = mod.getPlayer().getPos();
-
-        HashSet<ChunkPos> visited = new HashSet<>();
-        Queue<Node> queue = new ArrayDeque<>();
-        queue.add(new Node(playerChunkPos, 0));
-
-        while (!queue.isEmpty() && visited.size() < maxCount && !forceStop) {
-            Node node = queue.poll();
-
-            if (node.distance > cutOffRadius || visited.contains(node.pos) || !mod.getWorld().getChunkManager().isChunkLoaded(node.pos.x, node.pos.z))
-                continue;
-
-            boolean isPriorityChunk = getChunkDist(node.pos, playerChunkPos) <= 2;
-            if (!isPriorityChunk && scannedChunks.containsKey(node.pos) && mod.getWorld().getTime() - scannedChunks.get(node.pos) < RESCAN_TICK_DELAY)
+        ChunkPos chunkPos = chunk.getPos();
+        int startX = chunkPos.getStartX();
+        int startZ = chunkPos.getStartZ();
+
+        HashMap<Block, LongArrayList> found = new HashMap<>();
+        HashMap<Block, Set<Integer>> sampled = new HashMap<>();
+        HashMap<Block, LongArrayList> inSection = new HashMap<>();
+
+        ChunkSection[] sections = chunk.getSectionArray();
+        for (int i = 0; i < sections.length; i++) {
+            ChunkSection section = sections[i];
+            if (section == null || section.isEmpty()) continue;
+
+            // Palette check: nothing anyone asked about in here
+            if (!section.hasAny(state -> trackedBlocks.contains(state.getBlock()))) continue;
+
+            int sectionY = chunk.sectionIndexToCoord(i);
+            int startY = ChunkSectionPos.getBlockCoord(sectionY);
+
+            // Palette check: all stone, all water... no need to look at 4096 blocks to know where they are
+            BlockState first = section.getBlockState(0, 0, 0);
+            if (!section.hasAny(state -> state != first)) {
+                Block block = first.getBlock();
+                LongArrayList positions = found.computeIfAbsent(block, b -> new LongArrayList());
+                for (int j = 0; j < POSITIONS_PER_SECTION; j++) {
+                    // Index into the section in y/z/x order
+                    int index = spreadIndex(j, 16 * 16 * 16, POSITIONS_PER_SECTION);
+                    positions.add(BlockPos.asLong(startX + (index & 15), startY + (index >> 8), startZ + ((index >> 4) & 15)));
+                }
+                sampled.computeIfAbsent(block, b -> new HashSet<>()).add(sectionY);
                 continue;
+            }
 
-            visited.add(node.pos);
-            scanChunk(node.pos, playerChunkPos);
-
-            queue.add(new Node(new ChunkPos(node.pos.x + 1, node.pos.z + 1), node.distance + 1));
-            queue.add(new Node(new ChunkPos(node.pos.x - 1, node.pos.z + 1), node.distance + 1));
-            queue.add(new Node(new ChunkPos(node.pos.x - 1, node.pos.z - 1), node.distance + 1));
-            queue.add(new Node(new ChunkPos(node.pos.x + 1, node.pos.z - 1), node.distance + 1));
-        }
-        if (forceStop) {
-            // reset again, might have changed some values from the time forceStop was called
-            reset();
-            forceStop = false;
-            return;
-        }
-
-        for (Iterator<ChunkPos> iterator = scannedChunks.keySet().iterator(); iterator.hasNext(); ) {
-            ChunkPos pos = iterator.next();
-            int distance = getChunkDist(pos, playerChunkPos);
+            inSection.clear();
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        BlockState state = section.getBlockState(x, y, z);
+                        if (state.isAir() || !trackedBlocks.contains(state.getBlock())) continue;
 
-            if (distance > cutOffRadius) {
-                iterator.remove();
+                        inSection.computeIfAbsent(state.getBlock(), b -> new LongArrayList())
+                                .add(BlockPos.asLong(startX + x, startY + y, startZ + z));
+                    }
+                }
             }
-        }
 
-        for (HashSet<BlockPos> set : scannedBlocks.values()) {
-            if (set.size() < CACHED_POSITIONS_PER_BLOCK) {
-                continue;
+            for (Map.Entry<Block, LongArrayList> entry : inSection.entrySet()) {
+                LongArrayList all = entry.getValue();
+                LongArrayList positions = found.computeIfAbsent(entry.getKey(), b -> new LongArrayList());
+                if (all.size() <= SAMPLE_ABOVE) {
+                    positions.addAll(all);
+                    continue;
+                }
+                for (int j = 0; j < POSITIONS_PER_SECTION; j++) {
+                    positions.add(all.getLong(spreadIndex(j, all.size(), POSITIONS_PER_SECTION)));
+                }
+                sampled.computeIfAbsent(entry.getKey(), b -> new HashSet<>()).add(sectionY);
             }
-
-            getFirstFewPositions(set, playerPos);
-        }
-
-        if (LOG) {
-            mod.log("Rescanned in: " + (System.currentTimeMillis() - ms) + " ms; visited: " + visited.size() + " chunks");
         }
-    }
-
-    private int getChunkDist(ChunkPos pos1, ChunkPos pos2) {
-        return Math.abs(pos1.x - pos2.x) + Math.abs(pos1.z - pos2.z);
-    }
-
-
-    //TODO rename
-    private void getFirstFewPositions(HashSet<BlockPos> set, Vec3d playerPos) {
-        Queue<BlockPos> queue = new PriorityQueue<>(Comparator.comparingDouble((pos) -> -BaritoneHelper.calculateGenericHeuristic(playerPos, WorldHelper.toVec3d(pos))));
-
-        for (BlockPos pos : set) {
-            queue.add(pos);
 
-            if (queue.size() > CACHED_POSITIONS_PER_BLOCK) {
-                queue.poll();
-            }
+        HashMap<Block, long[]> result = new HashMap<>(found.size());
+        for (Map.Entry<Block, LongArrayList> entry : found.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toLongArray());
         }
-
-        set.clear();
-
-        for (int i = 0; i < CACHED_POSITIONS_PER_BLOCK && !queue.isEmpty(); i++) {
-            set.add(queue.poll());
+        if (LOG) {
+            mod.log("Scanned chunk " + chunkPos + " in " + (System.currentTimeMillis() - ms) + " ms; " + result.size() + " blocks");
         }
+        return new ScanResult(result, sampled);
     }
 
     /**
-     * scans a chunk and adds block positions corresponding to a specific block in a list
-     *
-     * @param chunkPos position of the scanned chunk
+     * The `j`th of `samples` picks out of `n` positions in y/z/x order. Picks are spaced evenly so
+     * they cover the whole height of the section, and shifted within their stride so they don't all
+     * land in the same column.
      */
-    private void scanChunk(ChunkPos chunkPos, ChunkPos playerChunkPos) {
-        World world = mod.getWorld();
-        WorldChunk chunk = mod.getWorld().getChunk(chunkPos.x, chunkPos.z);
-        scannedChunks.put(chunkPos, world.getTime());
-
-        boolean isPriorityChunk = getChunkDist(chunkPos, playerChunkPos) <= 2;
-
-        for (int x = chunkPos.getStartX(); x <= chunkPos.getEndX(); x++) {
-            for (int y = world.getBottomY(); y < world.getTopY(); y++) {
-                for (int z = chunkPos.getStartZ(); z <= chunkPos.getEndZ(); z++) {
-                    BlockPos p = new BlockPos(x, y, z);
-                    if (this.isUnreachable(p) || world.isOutOfHeightLimit(p)) continue;
-
-                    BlockState state = chunk.getBlockState(p);
-                    if (state.isAir()) continue;
-
-                    Block block = state.getBlock();
-                    if (scannedBlocks.containsKey(block)) {
-                        HashSet<BlockPos> set = scannedBlocks.get(block);
-
-                        if ((set.size() > CACHED_POSITIONS_PER_BLOCK * 750 && !isPriorityChunk)) continue;
-
-                        set.add(p);
-                    } else {
-                        HashSet<BlockPos> set = new HashSet<>();
-                        set.add(p);
-                        scannedBlocks.put(block, set);
-                    }
-                }
-            }
-        }
+    private static int spreadIndex(int j, int n, int samples) {
+        int stride = n / samples;
+        return j * stride + (j * 7919) % stride;
     }
-
-    private record Node(ChunkPos pos, int distance) {
-    }
-
-
 }
@@ -0,0 +1,169 @@
+package adris.altoclef.commands;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The blocks in a 17x16x17 window around the player, kept up to date as the window slides.
+ * <p>
+ * Cells are stored wrapping around in each axis, so when the player crosses a block boundary only
+ * the newly exposed slab is read, and each new cell overwrites exactly the cell that left the
+ * window. Block changes are applied from {@link adris.altoclef.eventbus.events.BlockChangedEvent},
+ * and the part of a chunk inside the window is re-read when the chunk loads.
+ * <p>
+ * Client thread only.
+ */
+final class NearBlockCache {
+
+    private static final int RADIUS_XZ = 8;
+    private static final int BELOW = 8;
+    private static final int ABOVE = 7;
+    private static final int SIZE_X = RADIUS_XZ * 2 + 1;
+    private static final int SIZE_Y = BELOW + ABOVE + 1;
+    private static final int SIZE_Z = RADIUS_XZ * 2 + 1;
+
+    private final Block[] cells = new Block[SIZE_X * SIZE_Y * SIZE_Z];
+    private final long[] cellPositions = new long[SIZE_X * SIZE_Y * SIZE_Z];
+    private final HashMap<Block, LongOpenHashSet> positions = new HashMap<>();
+    private final BlockPos.Mutable mutable = new BlockPos.Mutable();
+
+    private boolean filled = false;
+    private int centerX, centerY, centerZ;
+
+    /**
+     * Moves the window to `center`, reading only what came into view.
+     */
+    void update(World world, BlockPos center) {
+        int dx = center.getX() - centerX;
+        int dy = center.getY() - centerY;
+        int dz = center.getZ() - centerZ;
+
+        if (!filled || Math.abs(dx) >= SIZE_X || Math.abs(dy) >= SIZE_Y || Math.abs(dz) >= SIZE_Z) {
+            clear();
+            centerX = center.getX();
+            centerY = center.getY();
+            centerZ = center.getZ();
+            read(world, minX(), maxX(), minY(), maxY(), minZ(), maxZ());
+            filled = true;
+            return;
+        }
+
+        if (dx != 0 || dy != 0 || dz != 0) {
+            int oldMinX = minX(), oldMaxX = maxX();
+            int oldMinY = minY(), oldMaxY = maxY();
+            centerX = center.getX();
+            centerY = center.getY();
+            centerZ = center.getZ();
+            // Overlap with the old window along x and y, so every new cell is read exactly once
+            int keepMinX = Math.max(minX(), oldMinX), keepMaxX = Math.min(maxX(), oldMaxX);
+            int keepMinY = Math.max(minY(), oldMinY), keepMaxY = Math.min(maxY(), oldMaxY);
+
+            if (dx > 0) read(world, keepMaxX + 1, maxX(), minY(), maxY(), minZ(), maxZ());
+            if (dx < 0) read(world, minX(), keepMinX - 1, minY(), maxY(), minZ(), maxZ());
+            if (dy > 0) read(world, keepMinX, keepMaxX, keepMaxY + 1, maxY(), minZ(), maxZ());
+            if (dy < 0) read(world, keepMinX, keepMaxX, minY(), keepMinY - 1, minZ(), maxZ());
+            if (dz > 0) read(world, keepMinX, keepMaxX, keepMinY, keepMaxY, maxZ() - dz + 1, maxZ());
+            if (dz < 0) read(world, keepMinX, keepMaxX, keepMinY, keepMaxY, minZ(), minZ() - dz - 1);
+        }
+    }
+
+    /**
+     * Applies a single block change, if it's in the window. `block` null means air.
+     */
+    void set(long pos, Block block) {
+        if (!filled) return;
+        int x = BlockPos.unpackLongX(pos), y = BlockPos.unpackLongY(pos), z = BlockPos.unpackLongZ(pos);
+        if (x < minX() || x > maxX() || y < minY() || y > maxY() || z < minZ() || z > maxZ()) return;
+        store(x, y, z, block);
+    }
+
+    /**
+     * Re-reads the part of a freshly loaded chunk that's inside the window.
+     */
+    void reloadChunk(World world, ChunkPos chunk) {
+        if (!filled) return;
+        int x0 = Math.max(minX(), chunk.getStartX()), x1 = Math.min(maxX(), chunk.getEndX());
+        int z0 = Math.max(minZ(), chunk.getStartZ()), z1 = Math.min(maxZ(), chunk.getEndZ());
+        if (x0 > x1 || z0 > z1) return;
+        read(world, x0, x1, minY(), maxY(), z0, z1);
+    }
+
+    void clear() {
+        positions.clear();
+        Arrays.fill(cells, null);
+        filled = false;
+    }
+
+    /**
+     * Packed positions of `block` in the window. Don't hold on to it, it changes as the window moves.
+     */
+    LongSet get(Block block) {
+        LongOpenHashSet found = positions.get(block);
+        return found != null ? found : LongSets.EMPTY_SET;
+    }
+
+    private void read(World world, int x0, int x1, int y0, int y1, int z0, int z1) {
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    BlockState state = world.getBlockState(mutable.set(x, y, z));
+                    store(x, y, z, state.isAir() ? null : state.getBlock());
+                }
+            }
+        }
+    }
+
+    private void store(int x, int y, int z, Block block) {
+        int cell = cellIndex(x, y, z);
+        Block old = cells[cell];
+        if (old != null) {
+            LongOpenHashSet oldPositions = positions.get(old);
+            oldPositions.remove(cellPositions[cell]);
+            if (oldPositions.isEmpty()) positions.remove(old);
+        }
+
+        long packed = BlockPos.asLong(x, y, z);
+        cells[cell] = block;
+        cellPositions[cell] = packed;
+        if (block != null) {
+            positions.computeIfAbsent(block, b -> new LongOpenHashSet()).add(packed);
+        }
+    }
+
+    private static int cellIndex(int x, int y, int z) {
+        return (Math.floorMod(y, SIZE_Y) * SIZE_Z + Math.floorMod(z, SIZE_Z)) * SIZE_X + Math.floorMod(x, SIZE_X);
+    }
+
+    private int minX() {
+        return centerX - RADIUS_XZ;
+    }
+
+    private int maxX() {
+        return centerX + RADIUS_XZ;
+    }
+
+    private int minY() {
+        return centerY - BELOW;
+    }
+
+    private int maxY() {
+        return centerY + ABOVE;
+    }
+
+    private int minZ() {
+        return centerZ - RADIUS_XZ;
+    }
+
+    private int maxZ() {
+        return centerZ + RADIUS_XZ;
+    }
+}
@@ -0,0 +1,66 @@
+package adris.altoclef.commands;
+
+import adris.altoclef.AltoClef;
+import adris.altoclef.Debug;
+import adris.altoclef.commandsystem.Arg;
+import adris.altoclef.commandsystem.ArgParser;
+import adris.altoclef.commandsystem.Command;
+import adris.altoclef.commandsystem.CommandException;
+import adris.altoclef.util.time.TickProfiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class ProfileCommand extends Command {
+
+    private static final int SHOWN_SECTIONS = 10;
+    private static final String EXPORT_FOLDER = "altoclef" + File.separator + "profiles";
+
+    public ProfileCommand() throws CommandException {
+        super("profile", "Shows, exports (as CSV) or resets tick timings. Debugging tool, can ONLY be run by the user (NOT the agent).",
+                new Arg<>(ProfileAction.class, "action", ProfileAction.SHOW, 0));
+    }
+
+    @Override
+    protected void call(AltoClef mod, ArgParser parser) throws CommandException {
+        ProfileAction action = parser.get(ProfileAction.class);
+        switch (action) {
+            case SHOW:
+                TickProfiler.Section total = TickProfiler.getTotal();
+                mod.log("Last " + TickProfiler.getHistorySize() + " ticks: " + describe(total));
+                List<TickProfiler.Section> slowest = TickProfiler.getSlowestSections();
+                for (int i = 0; i < Math.min(SHOWN_SECTIONS, slowest.size()); ++i) {
+                    mod.log("  " + describe(slowest.get(i)));
+                }
+                break;
+            case CSV:
+                File file = new File(EXPORT_FOLDER, "tick_profile_" + System.currentTimeMillis() + ".csv");
+                try {
+                    TickProfiler.exportCsv(file);
+                    mod.log("Exported tick profile to " + file.getPath());
+                } catch (IOException e) {
+                    Debug.logWarning("Failed to export tick profile to " + file.getPath() + ": " + e.getMessage());
+                }
+                break;
+            case RESET:
+                TickProfiler.reset();
+                mod.log("Tick profile reset.");
+                break;
+        }
+        finish();
+    }
+
+    private static String describe(TickProfiler.Section section) {
+        return section.getName()
+                + " mean " + TickProfiler.formatMs(section.getRecentMeanNanos())
+                + " ms, max " + TickProfiler.formatMs(section.getRecentMaxNanos())
+                + " ms (all time max " + TickProfiler.formatMs(section.getMaxNanos()) + " ms)";
+    }
+
+    public enum ProfileAction {
+        SHOW,
+        CSV,
+        RESET
+    }
+}
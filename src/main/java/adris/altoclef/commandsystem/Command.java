@@ -30,6 +30,33 @@ public abstract class Command {
             onFinish.run();
     }
 
+    /**
+     * Whether `line` (command name included) would parse into this command's arguments.
+     * Uses a separate parser, so it's safe to call while the command is running.
+     */
+    public boolean canParse(String line) {
+        ArgBase[] args = parser.getArgs();
+        ArgParser check = new ArgParser(args);
+        check.loadArgs(line, true);
+        boolean arbitrarilyLong = false;
+        for (ArgBase arg : args) {
+            arbitrarilyLong |= arg.isArbitrarilyLong();
+        }
+        // get() only catches leftover words once an argument is read
+        if (!arbitrarilyLong && check.getArgUnits().length > args.length) {
+            return false;
+        }
+        try {
+            for (ArgBase arg : args) {
+                check.get(Object.class);
+                if (arg.isArray()) break;
+            }
+            return true;
+        } catch (CommandException | RuntimeException e) {
+            return false;
+        }
+    }
+
     public String getHelpRepresentation() {
         StringBuilder sb = new StringBuilder(name);
         for (ArgBase arg : parser.getArgs()) {
@@ -0,0 +1,474 @@
+package adris.altoclef.control;
+
+import adris.altoclef.multiversion.item.ItemVer;
+import adris.altoclef.util.ItemTarget;
+import adris.altoclef.util.helpers.StorageHelper;
+import adris.altoclef.util.slots.Slot;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ClientPlayerEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.CraftingScreenHandler;
+import net.minecraft.screen.PlayerScreenHandler;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.slot.SlotActionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Plans a whole item move up front as a list of clicks, so {@link SlotHandler} can send them a
+ * batch at a time instead of one per tick.
+ * <p>
+ * Works on a copy of the open screen. Every click is simulated the way vanilla handles it, so
+ * later steps see where earlier ones left things, and each click remembers what the slots it
+ * touched should hold afterwards. That's what the server's slot syncs get checked against.
+ * <p>
+ * Only understands plain left/right clicks, shift clicks out of the crafting grid and drags, which
+ * is all moving items around needs.
+ */
+public class SlotClickPlanner {
+
+    private static final int OUTSIDE_WINDOW = -999;
+    // Way more than any sane plan needs, only there so a confused simulation can't spin forever
+    private static final int MAX_ROUNDS = 64;
+
+    private final ScreenHandler handler;
+    private final ItemStack[] stacks;
+    private ItemStack cursor;
+    // The screen as we planned from, before any click
+    private final ItemStack[] startStacks;
+    private final ItemStack startCursor;
+    // Player main inventory + hotbar, in window order
+    private final int[] inventorySlots;
+    private final List<Click> clicks = new ArrayList<>();
+    private int lastSource = -1;
+
+    private SlotClickPlanner(ScreenHandler handler) {
+        this.handler = handler;
+        stacks = new ItemStack[handler.slots.size()];
+        for (int i = 0; i < stacks.length; ++i) {
+            stacks[i] = handler.getSlot(i).getStack().copy();
+        }
+        cursor = StorageHelper.getItemStackInCursorSlot().copy();
+        startStacks = new ItemStack[stacks.length];
+        for (int i = 0; i < stacks.length; ++i) {
+            startStacks[i] = stacks[i].copy();
+        }
+        startCursor = cursor.copy();
+        inventorySlots = new int[36];
+        for (int i = 0; i < inventorySlots.length; ++i) {
+            Slot slot = Slot.getFromCurrentScreenInventory(i);
+            inventorySlots[i] = slot != null ? slot.getWindowSlot() : -1;
+        }
+        Arrays.sort(inventorySlots);
+    }
+
+    public static Optional<SlotClickPlanner> ofCurrentScreen() {
+        ClientPlayerEntity player = MinecraftClient.getInstance().player;
+        if (player == null || player.currentScreenHandler == null) return Optional.empty();
+        return Optional.of(new SlotClickPlanner(player.currentScreenHandler));
+    }
+
+    /**
+     * Puts `toMove` in `destination` until it holds `count`, taking from `sources`. Whatever's left
+     * on the cursor goes back to the inventory.
+     *
+     * @return false if there isn't enough to take, in which case nothing is planned.
+     */
+    public boolean fill(Slot destination, ItemTarget toMove, int count, List<Slot> sources) {
+        State before = save();
+        int dest = destination.getWindowSlot();
+        int[] reserved = {dest};
+        if (!stacks[dest].isEmpty() && !toMove.matches(stacks[dest].getItem())) {
+            // Something else is in the way
+            if (!stowCursor(reserved)) return restore(before);
+            pickup(dest, 0);
+            if (!stowCursor(reserved)) return restore(before);
+        }
+        for (int round = 0; ; ++round) {
+            if (round > MAX_ROUNDS) return restore(before);
+            ItemStack sample = !stacks[dest].isEmpty() ? stacks[dest] : canPlace(dest, toMove) ? cursor : ItemStack.EMPTY;
+            int missing = Math.min(count, capacity(dest, sample)) - stacks[dest].getCount();
+            if (missing <= 0) break;
+            if (!canPlace(dest, toMove)) {
+                // If the cursor can't go anywhere, picking up the source swaps it out.
+                stowCursor(reserved);
+                if (!pickupSource(sources, toMove, stacks[dest], missing, reserved)) return restore(before);
+                continue;
+            }
+            int placed = stacks[dest].getCount();
+            place(dest, missing);
+            if (stacks[dest].getCount() == placed) return restore(before);
+        }
+        stowCursor(reserved);
+        return true;
+    }
+
+    /**
+     * Puts `perSlot` of `toMove` in every one of `destinations`, dragging across several at once
+     * where that splits evenly. Destinations should be empty or hold `toMove` already.
+     *
+     * @return false if we ran out of `toMove`. What did fit stays planned.
+     */
+    public boolean spread(List<Slot> destinations, ItemTarget toMove, int perSlot, List<Slot> sources) {
+        int[] dests = destinations.stream().mapToInt(Slot::getWindowSlot).toArray();
+        for (int round = 0; round < MAX_ROUNDS; ++round) {
+            // Slots we can put the held stack into, and the least any of them still needs
+            List<Integer> open = new ArrayList<>();
+            int minMissing = Integer.MAX_VALUE;
+            int unsatisfied = -1;
+            for (int dest : dests) {
+                int missing = getMissing(dest, toMove, perSlot);
+                if (missing <= 0) continue;
+                unsatisfied = dest;
+                if (canPlace(dest, toMove)) {
+                    open.add(dest);
+                    minMissing = Math.min(minMissing, missing);
+                }
+            }
+            if (unsatisfied == -1) {
+                stowCursor(dests);
+                return true;
+            }
+            if (open.isEmpty()) {
+                stowCursor(dests);
+                if (!cursor.isEmpty()) break;
+                int wanted = getMissing(unsatisfied, toMove, perSlot);
+                if (!pickupSource(sources, toMove, stacks[unsatisfied], wanted * countOpen(dests, toMove, perSlot, stacks[unsatisfied]), dests)) {
+                    break;
+                }
+                continue;
+            }
+
+            int held = cursor.getCount();
+            int n = open.size();
+            if (n == 1) {
+                place(open.get(0), getMissing(open.get(0), toMove, perSlot));
+            } else if (held < n) {
+                // One each for as many as we can
+                if (held == 1) {
+                    pickup(open.get(0), 1);
+                } else {
+                    drag(open.subList(0, held), 1);
+                }
+            } else if (held / n <= minMissing) {
+                // Even split, never overfills
+                drag(open, 0);
+            } else {
+                // Holding too much to split, hand it out one by one
+                for (int dest : open) {
+                    if (cursor.isEmpty()) break;
+                    place(dest, getMissing(dest, toMove, perSlot));
+                }
+            }
+        }
+        stowCursor(dests);
+        return false;
+    }
+
+    /**
+     * Moves everything in `slot` into the player inventory.
+     *
+     * @return false if it doesn't fit, in which case nothing is planned.
+     */
+    public boolean clear(Slot slot) {
+        int windowSlot = slot.getWindowSlot();
+        if (stacks[windowSlot].isEmpty()) return true;
+        State before = save();
+        int[] reserved = {windowSlot};
+        if (canQuickMoveToInventory(windowSlot) && getInventoryRoom(stacks[windowSlot], reserved) >= stacks[windowSlot].getCount()) {
+            quickMoveToInventory(windowSlot);
+            return true;
+        }
+        if (!stowCursor(reserved)) return restore(before);
+        pickup(windowSlot, 0);
+        if (!stowCursor(reserved)) return restore(before);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return clicks.isEmpty();
+    }
+
+    public int size() {
+        return clicks.size();
+    }
+
+    ScreenHandler getHandler() {
+        return handler;
+    }
+
+    Click getClick(int index) {
+        return clicks.get(index);
+    }
+
+    /**
+     * Whether the open screen holds what it should once the first `sent` clicks went through, so
+     * the rest of the plan still does what it was planned to. Only slots the plan touches are
+     * checked, the rest are none of our business.
+     */
+    boolean matchesScreen(int sent) {
+        boolean[] checked = new boolean[stacks.length + 1];
+        for (int i = sent - 1; i >= 0; --i) {
+            Click click = clicks.get(i);
+            for (int j = 0; j < click.touched.length; ++j) {
+                int slot = click.touched[j];
+                // Cursor goes last
+                int index = slot == Slot.CURSOR_SLOT_INDEX ? stacks.length : slot;
+                if (checked[index]) continue;
+                checked[index] = true;
+                ItemStack actual = slot == Slot.CURSOR_SLOT_INDEX ? StorageHelper.getItemStackInCursorSlot() : handler.getSlot(slot).getStack();
+                if (!ItemStack.areEqual(click.after[j], actual)) return false;
+            }
+        }
+        // Slots only the rest of the plan touches should still be what we planned from
+        for (int i = sent; i < clicks.size(); ++i) {
+            for (int slot : clicks.get(i).touched) {
+                int index = slot == Slot.CURSOR_SLOT_INDEX ? stacks.length : slot;
+                if (checked[index]) continue;
+                checked[index] = true;
+                ItemStack expected = slot == Slot.CURSOR_SLOT_INDEX ? startCursor : startStacks[slot];
+                ItemStack actual = slot == Slot.CURSOR_SLOT_INDEX ? StorageHelper.getItemStackInCursorSlot() : handler.getSlot(slot).getStack();
+                if (!ItemStack.areEqual(expected, actual)) return false;
+            }
+        }
+        return true;
+    }
+
+    private int getMissing(int dest, ItemTarget toMove, int perSlot) {
+        ItemStack present = stacks[dest];
+        if (!present.isEmpty() && !toMove.matches(present.getItem())) return 0;
+        ItemStack sample = present.isEmpty() ? cursor : present;
+        int cap = sample.isEmpty() ? perSlot : Math.min(perSlot, capacity(dest, sample));
+        return cap - present.getCount();
+    }
+
+    private int countOpen(int[] dests, ItemTarget toMove, int perSlot, ItemStack like) {
+        int count = 0;
+        for (int dest : dests) {
+            if (getMissing(dest, toMove, perSlot) > 0 && (stacks[dest].isEmpty() || ItemVer.canCombine(stacks[dest], like))) {
+                count++;
+            }
+        }
+        return Math.max(count, 1);
+    }
+
+    private boolean canPlace(int dest, ItemTarget toMove) {
+        return !cursor.isEmpty() && toMove.matches(cursor.getItem())
+                && (stacks[dest].isEmpty() || ItemVer.canCombine(stacks[dest], cursor))
+                && handler.getSlot(dest).canInsert(cursor);
+    }
+
+    /**
+     * Put up to `missing` of the held stack into `dest`.
+     */
+    private void place(int dest, int missing) {
+        if (cursor.getCount() <= missing) {
+            pickup(dest, 0);
+            return;
+        }
+        for (int i = 0; i < missing && !cursor.isEmpty(); ++i) {
+            pickup(dest, 1);
+        }
+    }
+
+    /**
+     * Picks up a source stack of `toMove` that merges with `like`. We'd rather not hold more than
+     * `wanted`, so a big stack only gets half picked up when half is still enough.
+     */
+    private boolean pickupSource(List<Slot> sources, ItemTarget toMove, ItemStack like, int wanted, int[] reserved) {
+        // Smallest stack that covers what we want, or the largest if none does
+        int best = -1;
+        for (Slot source : sources) {
+            if (Slot.isCursor(source)) continue;
+            int slot = source.getWindowSlot();
+            if (slot < 0 || slot >= stacks.length || contains(reserved, slot)) continue;
+            ItemStack stack = stacks[slot];
+            if (stack.isEmpty() || !toMove.matches(stack.getItem())) continue;
+            if (!like.isEmpty() && !ItemVer.canCombine(like, stack)) continue;
+            if (best == -1) {
+                best = slot;
+                continue;
+            }
+            int countBest = stacks[best].getCount();
+            int countCheck = stack.getCount();
+            if ((countBest < wanted && countCheck > countBest)
+                    || (countBest >= wanted && countCheck >= wanted && countCheck < countBest)) {
+                best = slot;
+            }
+        }
+        if (best == -1) return false;
+        int count = stacks[best].getCount();
+        // Half a big stack can go down in one click instead of being handed out one at a time
+        boolean half = count > wanted && (count + 1) / 2 <= wanted;
+        pickup(best, half ? 1 : 0);
+        lastSource = best;
+        return !cursor.isEmpty() && toMove.matches(cursor.getItem());
+    }
+
+    /**
+     * Puts the held stack back in the inventory: where it came from first, then on top of
+     * matching stacks, then into empty slots.
+     */
+    private boolean stowCursor(int[] reserved) {
+        if (cursor.isEmpty()) return true;
+        if (lastSource != -1 && !contains(reserved, lastSource) && canMerge(lastSource, cursor)) {
+            pickup(lastSource, 0);
+        }
+        for (int pass = 0; pass < 2 && !cursor.isEmpty(); ++pass) {
+            for (int slot : inventorySlots) {
+                if (cursor.isEmpty()) break;
+                if (slot < 0 || contains(reserved, slot)) continue;
+                boolean empty = stacks[slot].isEmpty();
+                // Partial stacks first
+                if ((pass == 0) == empty) continue;
+                if (canMerge(slot, cursor)) {
+                    pickup(slot, 0);
+                }
+            }
+        }
+        return cursor.isEmpty();
+    }
+
+    private int getInventoryRoom(ItemStack stack, int[] reserved) {
+        int room = 0;
+        for (int slot : inventorySlots) {
+            if (slot < 0 || contains(reserved, slot)) continue;
+            if (stacks[slot].isEmpty()) {
+                room += capacity(slot, stack);
+            } else if (ItemVer.canCombine(stacks[slot], stack)) {
+                room += Math.max(0, capacity(slot, stack) - stacks[slot].getCount());
+            }
+        }
+        return room;
+    }
+
+    private boolean canMerge(int slot, ItemStack stack) {
+        if (stacks[slot].isEmpty()) return handler.getSlot(slot).canInsert(stack);
+        return ItemVer.canCombine(stacks[slot], stack) && stacks[slot].getCount() < capacity(slot, stack);
+    }
+
+    private int capacity(int slot, ItemStack stack) {
+        if (stack.isEmpty()) return handler.getSlot(slot).getMaxItemCount();
+        return Math.min(stack.getMaxCount(), handler.getSlot(slot).getMaxItemCount(stack));
+    }
+
+    // Shift clicking out of the crafting grid lands in the inventory, in window order
+    private boolean canQuickMoveToInventory(int slot) {
+        return (handler instanceof PlayerScreenHandler || handler instanceof CraftingScreenHandler)
+                && !contains(inventorySlots, slot) && slot != 0;
+    }
+
+    // Vanilla left/right click, see ScreenHandler#internalOnSlotClick
+    private void pickup(int slot, int button) {
+        ItemStack present = stacks[slot];
+        if (cursor.isEmpty()) {
+            if (!present.isEmpty()) {
+                int take = button == 0 ? present.getCount() : (present.getCount() + 1) / 2;
+                cursor = withCount(present, take);
+                stacks[slot] = withCount(present, present.getCount() - take);
+            }
+        } else if (handler.getSlot(slot).canInsert(cursor)) {
+            if (present.isEmpty() || ItemVer.canCombine(present, cursor)) {
+                int put = Math.min(button == 0 ? cursor.getCount() : 1, capacity(slot, cursor) - present.getCount());
+                if (put > 0) {
+                    stacks[slot] = withCount(cursor, present.getCount() + put);
+                    cursor = withCount(cursor, cursor.getCount() - put);
+                }
+            } else if (cursor.getCount() <= capacity(slot, cursor)) {
+                stacks[slot] = cursor;
+                cursor = present;
+            }
+        }
+        addClick(slot, button, SlotActionType.PICKUP, slot);
+    }
+
+    // Vanilla drag, see ScreenHandler#internalOnSlotClick. Mode 0 splits evenly, mode 1 puts one in each.
+    private void drag(List<Integer> slots, int mode) {
+        addClick(OUTSIDE_WINDOW, ScreenHandler.packQuickCraftData(0, mode), SlotActionType.QUICK_CRAFT);
+        for (int slot : slots) {
+            addClick(slot, ScreenHandler.packQuickCraftData(1, mode), SlotActionType.QUICK_CRAFT);
+        }
+        int each = mode == 0 ? cursor.getCount() / slots.size() : 1;
+        int left = cursor.getCount();
+        for (int slot : slots) {
+            ItemStack present = stacks[slot];
+            int count = Math.min(present.getCount() + each, capacity(slot, cursor));
+            left -= count - present.getCount();
+            stacks[slot] = withCount(cursor, count);
+        }
+        cursor = withCount(cursor, left);
+        addClick(OUTSIDE_WINDOW, ScreenHandler.packQuickCraftData(2, mode), SlotActionType.QUICK_CRAFT,
+                slots.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // Merge into matching stacks first, then the first empty slot, like ScreenHandler#insertItem
+    private void quickMoveToInventory(int slot) {
+        ItemStack moving = stacks[slot];
+        List<Integer> changed = new ArrayList<>();
+        for (int pass = 0; pass < 2 && !moving.isEmpty(); ++pass) {
+            for (int inv : inventorySlots) {
+                if (moving.isEmpty()) break;
+                if (inv < 0) continue;
+                ItemStack present = stacks[inv];
+                if (pass == 0 ? present.isEmpty() || !ItemVer.canCombine(present, moving) : !present.isEmpty()) continue;
+                int put = Math.min(moving.getCount(), capacity(inv, moving) - present.getCount());
+                if (put <= 0) continue;
+                stacks[inv] = withCount(moving, present.getCount() + put);
+                moving = withCount(moving, moving.getCount() - put);
+                changed.add(inv);
+            }
+        }
+        stacks[slot] = moving;
+        changed.add(slot);
+        addClick(slot, 0, SlotActionType.QUICK_MOVE, changed.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private void addClick(int slot, int button, SlotActionType type, int... touched) {
+        int[] withCursor = Arrays.copyOf(touched, touched.length + 1);
+        withCursor[touched.length] = Slot.CURSOR_SLOT_INDEX;
+        ItemStack[] after = new ItemStack[withCursor.length];
+        for (int i = 0; i < withCursor.length; ++i) {
+            after[i] = (withCursor[i] == Slot.CURSOR_SLOT_INDEX ? cursor : stacks[withCursor[i]]).copy();
+        }
+        clicks.add(new Click(slot, button, type, withCursor, after));
+    }
+
+    private State save() {
+        ItemStack[] savedStacks = new ItemStack[stacks.length];
+        for (int i = 0; i < stacks.length; ++i) {
+            savedStacks[i] = stacks[i].copy();
+        }
+        return new State(savedStacks, cursor.copy(), clicks.size(), lastSource);
+    }
+
+    private boolean restore(State state) {
+        System.arraycopy(state.stacks, 0, stacks, 0, stacks.length);
+        cursor = state.cursor;
+        clicks.subList(state.clickCount, clicks.size()).clear();
+        lastSource = state.lastSource;
+        return false;
+    }
+
+    private static ItemStack withCount(ItemStack stack, int count) {
+        if (count <= 0) return ItemStack.EMPTY;
+        ItemStack result = stack.copy();
+        result.setCount(count);
+        return result;
+    }
+
+    private static boolean contains(int[] slots, int slot) {
+        for (int s : slots) {
+            if (s == slot) return true;
+        }
+        return false;
+    }
+
+    record Click(int slot, int button, SlotActionType type, int[] touched, ItemStack[] after) {
+    }
+
+    private record State(ItemStack[] stacks, ItemStack cursor, int clickCount, int lastSource) {
+    }
+}
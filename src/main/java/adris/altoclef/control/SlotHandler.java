@@ -2,6 +2,8 @@ package adris.altoclef.control;
 
 import adris.altoclef.AltoClef;
 import adris.altoclef.Debug;
+import adris.altoclef.eventbus.EventBus;
+import adris.altoclef.eventbus.events.InventorySyncEvent;
 import adris.altoclef.util.ItemTarget;
 import adris.altoclef.util.helpers.ItemHelper;
 import adris.altoclef.util.helpers.StorageHelper;
@@ -26,9 +28,13 @@ public class SlotHandler {
 
     private final TimerGame slotActionTimer = new TimerGame(0);
     private boolean overrideTimerOnce = false;
+    // Planned clicks still being sent, see queueClicks
+    private SlotClickPlanner batch = null;
+    private int batchSent = 0;
 
     public SlotHandler(AltoClef mod) {
         this.mod = mod;
+        EventBus.subscribe(InventorySyncEvent.class, evt -> onInventorySync());
     }
 
     private void forceAllowNextSlotAction() {
@@ -50,19 +56,88 @@ public class SlotHandler {
     }
 
 
-    public void clickSlot(Slot slot, int mouseButton, SlotActionType type) {
-        if (!canDoSlotAction()) {
+    /**
+     * Sends every click of `plan`, a few at a time every slot action (see {@link adris.altoclef.Settings#getContainerClicksPerBatch()}).
+     * <p>
+     * Single clicks wait until it's done. If the server disagrees with what the clicks should have
+     * done, or the screen changes, the rest is dropped and whoever planned it can plan again.
+     */
+    public void queueClicks(SlotClickPlanner plan) {
+        if (plan.isEmpty()) return;
+        batch = plan;
+        batchSent = 0;
+    }
+
+    public boolean isBatchPending() {
+        return batch != null;
+    }
+
+    public void cancelBatch() {
+        batch = null;
+        batchSent = 0;
+    }
+
+    public void tick() {
+        if (batch == null) return;
+        ClientPlayerEntity player = MinecraftClient.getInstance().player;
+        if (player == null || player.currentScreenHandler != batch.getHandler()) {
+            cancelBatch();
+            return;
+        }
+        if (!canDoSlotAction()) return;
+        // Something else may have moved items since we planned (or since the last batch)
+        if (!batch.matchesScreen(batchSent)) {
+            Debug.logInternal("Screen changed under planned slot clicks, dropping the rest.");
+            cancelBatch();
             return;
         }
+        int end = Math.min(batch.size(), batchSent + mod.getModSettings().getContainerClicksPerBatch());
+        while (batchSent < end) {
+            SlotClickPlanner.Click click = batch.getClick(batchSent++);
+            clickWindowSlot(click.slot(), click.button(), click.type());
+        }
+        if (batchSent >= batch.size()) {
+            cancelBatch();
+        }
+    }
+
+    private void onInventorySync() {
+        if (batch == null || batchSent == 0) return;
+        if (!batch.matchesScreen(batchSent)) {
+            Debug.logInternal("Server disagreed with planned slot clicks, dropping the rest.");
+            cancelBatch();
+        }
+    }
+
+    /**
+     * Clicks `slot` if a slot action is allowed right now.
+     * <p>
+     * While planned clicks are still being sent, only forced clicks go through (and drop the rest
+     * of the plan). Anything else is turned down so it can't shuffle items under the plan.
+     *
+     * @return Whether the click was sent, try again next tick if not.
+     */
+    public boolean clickSlot(Slot slot, int mouseButton, SlotActionType type) {
+        if (batch != null) {
+            if (!overrideTimerOnce) {
+                Debug.logInternal("Slot click on " + slot + " turned down, planned clicks are still being sent.");
+                return false;
+            }
+            // Forced clicks win, the batch gets planned again
+            cancelBatch();
+        }
+        if (!canDoSlotAction()) {
+            return false;
+        }
 
         if (slot.getWindowSlot() == -1) {
-            clickSlot(PlayerSlot.UNDEFINED, 0, SlotActionType.PICKUP);
-            return;
+            return clickSlot(PlayerSlot.UNDEFINED, 0, SlotActionType.PICKUP);
         }
         // NOT THE CASE! We may have something in the cursor slot to place.
         //if (getItemStackInSlot(slot).isEmpty()) return getItemStackInSlot(slot);
 
         clickWindowSlot(slot.getWindowSlot(), mouseButton, type);
+        return true;
     }
 
     private void clickSlotForce(Slot slot, int mouseButton, SlotActionType type) {
@@ -0,0 +1,88 @@
+package adris.altoclef.eventbus;
+
+import adris.altoclef.eventbus.events.BlockChangedEvent;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.Arrays;
+
+/**
+ * Collects block changes in the client world and publishes them as one {@link BlockChangedEvent} per tick.
+ * <p>
+ * Chunk delta packets apply their blocks one by one through the world, so they land in the same
+ * batch instead of each becoming its own event. Two events are swapped between, so collecting
+ * and publishing never allocate once the arrays are big enough.
+ * <p>
+ * Client thread only.
+ */
+public final class BlockChangeBatcher {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static BlockChangedEvent collecting = new BlockChangedEvent(INITIAL_CAPACITY);
+    private static BlockChangedEvent publishing = new BlockChangedEvent(INITIAL_CAPACITY);
+    // Position -> index in `collecting`, to merge repeated changes
+    private static final Long2IntOpenHashMap indexOf = new Long2IntOpenHashMap();
+    private static World world = null;
+
+    static {
+        indexOf.defaultReturnValue(-1);
+    }
+
+    public static void record(World changedWorld, BlockPos pos, BlockState oldState, BlockState newState) {
+        if (changedWorld != world) {
+            // Changes from a world we left are meaningless now
+            world = changedWorld;
+            collecting.size = 0;
+            indexOf.clear();
+        }
+        long packed = pos.asLong();
+        int index = indexOf.get(packed);
+        if (index != -1) {
+            // Keep the state from before the first change
+            collecting.newStates[index] = Block.getRawIdFromState(newState);
+            return;
+        }
+        BlockChangedEvent batch = collecting;
+        if (batch.size == batch.positions.length) {
+            int capacity = batch.size * 2;
+            batch.positions = Arrays.copyOf(batch.positions, capacity);
+            batch.oldStates = Arrays.copyOf(batch.oldStates, capacity);
+            batch.newStates = Arrays.copyOf(batch.newStates, capacity);
+        }
+        batch.positions[batch.size] = packed;
+        batch.oldStates[batch.size] = Block.getRawIdFromState(oldState);
+        batch.newStates[batch.size] = Block.getRawIdFromState(newState);
+        indexOf.put(packed, batch.size);
+        batch.size++;
+    }
+
+    /**
+     * Publishes everything collected since the last call, if anything changed.
+     */
+    public static void publish() {
+        BlockChangedEvent batch = collecting;
+        if (batch.size == 0) return;
+        collecting = publishing;
+        collecting.size = 0;
+        publishing = batch;
+        indexOf.clear();
+
+        // Drop positions that changed back
+        int kept = 0;
+        for (int i = 0; i < batch.size; ++i) {
+            if (batch.oldStates[i] == batch.newStates[i]) continue;
+            batch.positions[kept] = batch.positions[i];
+            batch.oldStates[kept] = batch.oldStates[i];
+            batch.newStates[kept] = batch.newStates[i];
+            kept++;
+        }
+        batch.size = kept;
+        if (kept != 0) {
+            EventBus.publish(batch);
+        }
+    }
+}
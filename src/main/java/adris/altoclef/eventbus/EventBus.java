@@ -1,79 +1,139 @@
 package adris.altoclef.eventbus;
 
-import net.minecraft.util.Pair;
+import net.minecraft.client.MinecraftClient;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Consumer;
 
 /**
  * A static class to solve dependency issues. Lets us send and receive events globally, decoupling our codebase.
  * <p>
  * Technically `ConfigHelper` does something like this, but here is a more general case.
+ * <p>
+ * Subscribing and unsubscribing copy the handler arrays, publishing only reads them, so publishing
+ * allocates nothing and is safe from any thread. Handlers run on the publishing thread though;
+ * code that isn't on the client thread should use {@link #post} to have its event delivered there.
  */
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class EventBus {
 
-    private static final HashMap<Class, List<Subscription>> topics = new HashMap<>();
-    private static final List<Pair<Class, Subscription>> toAdd = new ArrayList<>();
-    private static boolean lock;
+    private static final Subscription[] NONE = new Subscription[0];
 
-    public static <T> void publish(T event) {
-        Class type = event.getClass();
+    // Event type -> subscriptions to exactly that type. Copy-on-write, guarded by `topics` for writes.
+    private static final Map<Class, Subscription[]> topics = new ConcurrentHashMap<>();
+    // Event class -> everything it's delivered to (its own subscribers plus supertype subscribers that asked for it).
+    // Built lazily, dropped whenever a subscription changes.
+    private static final Map<Class, Subscription[]> dispatch = new ConcurrentHashMap<>();
+    private static final Queue<Object> queued = new ConcurrentLinkedQueue<>();
 
-        // Add all subscriptions we need to add
-        for (Pair<Class, Subscription> toAdd : toAdd) {
-            subscribeInternal(toAdd.getLeft(), toAdd.getRight());
+    public static <T> void publish(T event) {
+        Subscription[] subscribers = dispatch.get(event.getClass());
+        if (subscribers == null) {
+            subscribers = buildDispatch(event.getClass());
         }
-        toAdd.clear();
-
-        if (topics.containsKey(type)) {
-            List<Subscription> subscribers = topics.get(type);
 
-            // Subscriptions can be deleted while they're called
-            List<Subscription> toDelete = new ArrayList<>();
-
-            // Go through our subscription list. We shouldn't modify the list while we're iterating it.
-            lock = true;
-            for (Subscription subRaw : subscribers) {
-                Subscription<T> sub;
-                try {
-                    sub = (Subscription<T>) subRaw;
-                    if (sub.shouldDelete()) {
-                        toDelete.add(sub);
-                    } else {
-                        sub.accept(event);
-                    }
-                } catch (ClassCastException e) {
-                    System.err.println("TRIED PUBLISHING MISMAPPED EVENT: " + event);
-                    e.printStackTrace();
+        for (Subscription subRaw : subscribers) {
+            Subscription<T> sub;
+            try {
+                sub = (Subscription<T>) subRaw;
+                // Subscriptions can be deleted while they're called
+                if (!sub.shouldDelete()) {
+                    sub.accept(event);
                 }
+            } catch (ClassCastException e) {
+                System.err.println("TRIED PUBLISHING MISMAPPED EVENT: " + event);
+                e.printStackTrace();
             }
-            // Delete all subscriptions
-            lock = false;
         }
     }
 
-    private static <T> void subscribeInternal(Class<T> type, Subscription<T> sub) {
-        if (!topics.containsKey(type)) {
-            topics.put(type, new ArrayList<>());
+    /**
+     * Publishes right away on the client thread. From any other thread (integrated server, LLM,
+     * network) the event is queued and published at the start of the next client tick.
+     */
+    public static <T> void post(T event) {
+        if (MinecraftClient.getInstance().isOnThread()) {
+            publish(event);
+        } else {
+            queued.add(event);
         }
-        topics.get(type).add(sub);
     }
 
-    public static <T> Subscription<T> subscribe(Class<T> type, Consumer<T> consumeEvent) {
-        Subscription<T> sub = new Subscription<>(consumeEvent);
-        if (lock) {
-            toAdd.add(new Pair<>(type, sub));
-        } else {
-            subscribeInternal(type, sub);
+    /**
+     * Publishes everything {@link #post}ed from other threads. Called by the client tick.
+     */
+    public static void publishQueued() {
+        for (Object event; (event = queued.poll()) != null; ) {
+            publish(event);
         }
-        return sub;
+    }
+
+    public static <T> Subscription<T> subscribe(Class<T> type, Consumer<T> consumeEvent) {
+        return subscribeInternal(new Subscription<>(type, consumeEvent, false));
+    }
+
+    /**
+     * Like {@link #subscribe}, but also receives events of any subclass (or implementation) of `type`.
+     */
+    public static <T> Subscription<T> subscribeIncludingSubtypes(Class<T> type, Consumer<? super T> consumeEvent) {
+        return subscribeInternal(new Subscription<>(type, (Consumer<T>) consumeEvent, true));
     }
 
     public static <T> void unsubscribe(Subscription<T> subscription) {
         if (subscription != null)
             subscription.delete();
     }
+
+    private static <T> Subscription<T> subscribeInternal(Subscription<T> sub) {
+        synchronized (topics) {
+            Subscription[] current = topics.getOrDefault(sub.getType(), NONE);
+            Subscription[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = sub;
+            topics.put(sub.getType(), added);
+            dispatch.clear();
+        }
+        return sub;
+    }
+
+    // Called by Subscription.delete
+    static void remove(Subscription<?> sub) {
+        synchronized (topics) {
+            Subscription[] current = topics.get(sub.getType());
+            if (current == null) return;
+            int index = Arrays.asList(current).indexOf(sub);
+            if (index == -1) return;
+            if (current.length == 1) {
+                topics.remove(sub.getType());
+            } else {
+                Subscription[] removed = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, removed, 0, index);
+                System.arraycopy(current, index + 1, removed, index, current.length - index - 1);
+                topics.put(sub.getType(), removed);
+            }
+            dispatch.clear();
+        }
+    }
+
+    private static Subscription[] buildDispatch(Class type) {
+        synchronized (topics) {
+            List<Subscription> result = new ArrayList<>(Arrays.asList(topics.getOrDefault(type, NONE)));
+            for (Map.Entry<Class, Subscription[]> topic : topics.entrySet()) {
+                if (topic.getKey() == type || !topic.getKey().isAssignableFrom(type)) continue;
+                for (Subscription sub : topic.getValue()) {
+                    if (sub.includesSubtypes()) {
+                        result.add(sub);
+                    }
+                }
+            }
+            Subscription[] built = result.toArray(NONE);
+            dispatch.put(type, built);
+            return built;
+        }
+    }
 }
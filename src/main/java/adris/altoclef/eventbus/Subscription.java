@@ -4,11 +4,15 @@ import java.util.function.Consumer;
 
 // A wrapper object for event subscription
 public class Subscription<T> {
+    private final Class<T> type;
     private final Consumer<T> callback;
-    private boolean shouldDelete;
+    private final boolean includeSubtypes;
+    private volatile boolean shouldDelete;
 
-    public Subscription(Consumer<T> callback) {
+    Subscription(Class<T> type, Consumer<T> callback, boolean includeSubtypes) {
+        this.type = type;
         this.callback = callback;
+        this.includeSubtypes = includeSubtypes;
     }
 
     public void accept(T event) {
@@ -17,9 +21,18 @@ public class Subscription<T> {
 
     public void delete() {
         shouldDelete = true;
+        EventBus.remove(this);
     }
 
     public boolean shouldDelete() {
         return shouldDelete;
     }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    boolean includesSubtypes() {
+        return includeSubtypes;
+    }
 }
@@ -0,0 +1,39 @@
+package adris.altoclef.eventbus.events;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Every block change in the client world since the last tick, published once at the start of the tick.
+ * <p>
+ * A position that changed several times shows up once, with the state before its first change
+ * and after its last one. Positions that ended up where they started are left out. States are
+ * raw ids, see {@link Block#getStateFromRawId}.
+ * <p>
+ * The event and its arrays are reused, don't hold on to them after the callback.
+ */
+public class BlockChangedEvent {
+    public int size;
+    public long[] positions;
+    public int[] oldStates;
+    public int[] newStates;
+
+    public BlockChangedEvent(int capacity) {
+        positions = new long[capacity];
+        oldStates = new int[capacity];
+        newStates = new int[capacity];
+    }
+
+    public BlockPos getPos(int i) {
+        return BlockPos.fromLong(positions[i]);
+    }
+
+    public BlockState getOldState(int i) {
+        return Block.getStateFromRawId(oldStates[i]);
+    }
+
+    public BlockState getNewState(int i) {
+        return Block.getStateFromRawId(newStates[i]);
+    }
+}
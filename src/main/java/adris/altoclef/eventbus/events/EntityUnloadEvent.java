@@ -0,0 +1,11 @@
+package adris.altoclef.eventbus.events;
+
+import net.minecraft.entity.Entity;
+
+public class EntityUnloadEvent {
+    public Entity entity;
+
+    public EntityUnloadEvent(Entity entity) {
+        this.entity = entity;
+    }
+}
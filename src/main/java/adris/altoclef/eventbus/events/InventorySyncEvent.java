@@ -0,0 +1,7 @@
+package adris.altoclef.eventbus.events;
+
+/**
+ * The server sent us new contents for one or all slots of a screen handler (including the player inventory).
+ */
+public class InventorySyncEvent {
+}
@@ -33,7 +33,7 @@ public class BlockModifiedByPlayerMixin {
             evt.blockPos = pos;
             evt.blockState = state;
             evt.player = player;
-            EventBus.publish(evt);
+            EventBus.post(evt);
         }
     }
 
@@ -0,0 +1,33 @@
+package adris.altoclef.mixins;
+
+import adris.altoclef.eventbus.EventBus;
+import adris.altoclef.eventbus.events.EntityLoadEvent;
+import adris.altoclef.eventbus.events.EntityUnloadEvent;
+import net.minecraft.entity.Entity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Tells us when the client world starts and stops tracking an entity (spawned/despawned/left render distance).
+ */
+@Mixin(targets = "net.minecraft.client.world.ClientWorld$ClientEntityHandler")
+public class ClientEntityTrackingMixin {
+
+    @Inject(
+            method = "startTracking(Lnet/minecraft/entity/Entity;)V",
+            at = @At("TAIL")
+    )
+    private void onStartTracking(Entity entity, CallbackInfo ci) {
+        EventBus.publish(new EntityLoadEvent(entity));
+    }
+
+    @Inject(
+            method = "stopTracking(Lnet/minecraft/entity/Entity;)V",
+            at = @At("HEAD")
+    )
+    private void onStopTracking(Entity entity, CallbackInfo ci) {
+        EventBus.publish(new EntityUnloadEvent(entity));
+    }
+}
@@ -1,5 +1,6 @@
 package adris.altoclef.mixins;
 
+import adris.altoclef.eventbus.BlockChangeBatcher;
 import adris.altoclef.eventbus.EventBus;
 import adris.altoclef.eventbus.events.ClientTickEvent;
 import net.minecraft.client.MinecraftClient;
@@ -16,6 +17,9 @@ public final class  ClientTickMixin {
             at = @At("HEAD")
     )
     private void clientTick(CallbackInfo ci) {
+        // Events posted from other threads since the last tick
+        EventBus.publishQueued();
+        BlockChangeBatcher.publish();
         EventBus.publish(new ClientTickEvent());
     }
 }
\ No newline at end of file
@@ -21,6 +21,10 @@ public abstract class EntityAnimationSwungMixin {
     @Inject(method = "onEntityAnimation", at = @At("HEAD"))
     private void onEntityAnimation(EntityAnimationS2CPacket packet, CallbackInfo ci) {
         MinecraftClient client = MinecraftClient.getInstance();
+        // Packets are first handled on the network thread and then again on the client thread, only count that one
+        if (!client.isOnThread()) {
+            return;
+        }
         Entity entity = client.world.getEntityById(packet.getEntityId());
 
         if (entity == null) {
@@ -17,6 +17,6 @@ public class MobDeathMixin {
     @Inject(at = @At("HEAD"), method = "onDeath")
     private void onDie(DamageSource damageSource, CallbackInfo info) {
         Entity died = (Entity) ((Object) this);
-        EventBus.publish(new EntityDeathEvent(died, damageSource));
+        EventBus.post(new EntityDeathEvent(died, damageSource));
     }
 }
@@ -0,0 +1,32 @@
+package adris.altoclef.mixins;
+
+import adris.altoclef.eventbus.EventBus;
+import adris.altoclef.eventbus.events.InventorySyncEvent;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.network.packet.s2c.play.InventoryS2CPacket;
+import net.minecraft.network.packet.s2c.play.ScreenHandlerSlotUpdateS2CPacket;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+// Both handlers hop over to the client thread first, so TAIL only runs there once the slots are set.
+@Mixin(ClientPlayNetworkHandler.class)
+public final class ScreenHandlerSyncMixin {
+
+    @Inject(
+            method = "onScreenHandlerSlotUpdate",
+            at = @At("TAIL")
+    )
+    private void onSlotUpdate(ScreenHandlerSlotUpdateS2CPacket packet, CallbackInfo ci) {
+        EventBus.publish(new InventorySyncEvent());
+    }
+
+    @Inject(
+            method = "onInventory",
+            at = @At("TAIL")
+    )
+    private void onInventory(InventoryS2CPacket packet, CallbackInfo ci) {
+        EventBus.publish(new InventorySyncEvent());
+    }
+}
@@ -1,5 +1,6 @@
 package adris.altoclef.mixins;
 
+import adris.altoclef.eventbus.BlockChangeBatcher;
 import adris.altoclef.eventbus.EventBus;
 import adris.altoclef.eventbus.events.BlockPlaceEvent;
 import net.minecraft.block.BlockState;
@@ -25,9 +26,13 @@ public class WorldBlockModifiedMixin {
             at = @At("HEAD")
     )
     public void onBlockWasChanged(BlockPos pos, BlockState oldBlock, BlockState newBlock, CallbackInfo ci) {
+        World world = (World) (Object) this;
+        // The integrated server's changes reach the client world through packets anyway
+        if (!world.isClient) return;
+        BlockChangeBatcher.record(world, pos, oldBlock, newBlock);
         if (!hasBlock(oldBlock, pos) && hasBlock(newBlock, pos)) {
             BlockPlaceEvent evt = new BlockPlaceEvent(pos, newBlock);
-            EventBus.publish(evt);
+            EventBus.post(evt);
         }
     }
 
@@ -29,6 +29,17 @@ public class ItemVer {
         //#endif
     }
 
+    // Same item and same data, so the two stacks would merge in a slot
+    public static boolean canCombine(ItemStack a, ItemStack b) {
+        //#if MC >= 12005
+        return ItemStack.areItemsAndComponentsEqual(a, b);
+        //#elseif MC >= 11701
+        //$$ return ItemStack.canCombine(a, b);
+        //#else
+        //$$ return ItemStack.areItemsEqual(a, b) && ItemStack.areTagsEqual(a, b);
+        //#endif
+    }
+
     public static boolean isFood(Item item) {
         //#if MC >=12005
         return item.getComponents().contains(net.minecraft.component.DataComponentTypes.FOOD);
@@ -4,8 +4,7 @@ import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.Text;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -14,8 +13,10 @@ import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 import adris.altoclef.ai.LlmBackend;
+import adris.altoclef.ai.LlmStreamListener;
 import adris.altoclef.ai.OpenAiBackend;
 import adris.altoclef.ai.Player2Backend;
+import adris.altoclef.ai.TokenUsageStats;
 import adris.altoclef.AltoClef;
 import adris.altoclef.Debug;
 import adris.altoclef.commandsystem.Command;
@@ -23,6 +24,7 @@ import adris.altoclef.commandsystem.CommandExecutor;
 import adris.altoclef.eventbus.EventBus;
 import adris.altoclef.eventbus.events.ChatMessageEvent;
 import adris.altoclef.player2api.status.AgentStatus;
+import adris.altoclef.player2api.status.StatusSnapshotStore;
 import adris.altoclef.player2api.status.StatusUtils;
 import adris.altoclef.player2api.status.WorldStatus;
 import net.minecraft.network.message.MessageType;
@@ -59,8 +61,8 @@ public class AICommandBridge {
             The user messages will all be just strings, except for the current message. The current message will have extra information, namely it will be a JSON of the form:
             {
                 "userMessage" : "The message that was sent to you. The message can be send by the user or command system or other players."
-                "worldStatus" : "The status of the current game world."
-                "agentStatus" : "The status of you, the agent in the game."
+                "worldStatus" : "Changes to the status of the current game world since the full game status system message, or unchanged."
+                "agentStatus" : "Changes to the status of you, the agent in the game, since the full game status system message, or unchanged."
                 "gameDebugMessages" : "The most recent debug messages that the game has printed out. The user cannot see these."
             }
 
@@ -91,23 +93,28 @@ public class AICommandBridge {
     private boolean _enabled = true;
     private boolean _playermode = false;
 
-    private String _lastQueuedMessage = null;
+    private volatile boolean llmProcessing = false;
 
-    private boolean llmProcessing = false;
-
-    private boolean eventPolling = false;
+    private volatile boolean eventPolling = false;
 
     private MessageBuffer altoClefMsgBuffer = new MessageBuffer(10);
 
+    private final StatusSnapshotStore statusSnapshots = new StatusSnapshotStore();
+
+    private final TokenUsageStats tokenUsage = new TokenUsageStats();
+
+    private final IntentRouter intentRouter;
+
     public static final ExecutorService llmThread = Executors.newSingleThreadExecutor();
 
     public static final ExecutorService sttThread = Executors.newSingleThreadExecutor();
 
-    private final Queue<String> messageQueue = new ConcurrentLinkedQueue<>();
+    private final PendingMessageQueue messageQueue = new PendingMessageQueue();
 
     public AICommandBridge(CommandExecutor cmdExecutor, AltoClef mod) {
         this.mod = mod;
         this.cmdExecutor = cmdExecutor;
+        this.intentRouter = new IntentRouter(cmdExecutor);
 		String k = System.getenv("OPENAI_API_KEY");
 		String m = System.getenv("OPENAI_MODEL");
 		String b = System.getenv("OPENAI_BASE_URL");
@@ -128,7 +135,8 @@ public class AICommandBridge {
             final Matcher taskMatcher = AI_TASK_PATTERN.matcher(raw);
             if (sender != null && sender.equals(me) && taskMatcher.find()) {
                 final String task = taskMatcher.group(1).trim();
-                addMessageToQueue(task);
+                if (tryLocalIntent(task, task)) return;
+                addMessageToQueue(task, PendingMessageQueue.Source.USER);
                 System.out.printf("[AIBridge] queued task from self chat: %s%n", task);
                 return;
             }
@@ -144,7 +152,7 @@ public class AICommandBridge {
 
             if (sender != null && !sender.equals(me)) {
                 final String wholeMessage = "Other players: [" + sender + "] " + raw;
-                addMessageToQueue(wholeMessage);
+                addMessageToQueue(wholeMessage, PendingMessageQueue.Source.OTHER_PLAYER);
             }
         });
 
@@ -195,87 +203,228 @@ public class AICommandBridge {
         altoClefMsgBuffer.addMsg(message);
     }
 
+    /**
+     * Handles a chat line typed by the local user.
+     */
+    public void addUserChat(String line) {
+        String message = "User: " + line;
+        if (tryLocalIntent(line, message)) return;
+        addMessageToQueue(message, PendingMessageQueue.Source.USER);
+    }
+
     public void addMessageToQueue(String message) {
+        addMessageToQueue(message, PendingMessageQueue.Source.USER);
+    }
+
+    public void addMessageToQueue(String message, PendingMessageQueue.Source source) {
         if (message == null)
             return;
-        // 1) skip if it’s identical to the last one we added
-        if (message.equals(_lastQueuedMessage))
-            return;
-
-        // 2) enqueue & remember it
-        messageQueue.offer(message);
-        _lastQueuedMessage = message;
+        // Identical pending messages are coalesced, overflow drops the lowest priority first
+        messageQueue.offer(message, source);
+    }
 
-        // 3) enforce max size
-        if (messageQueue.size() > 10) {
-            messageQueue.poll(); // remove oldest
+    /**
+     * Runs the local user's chat lines that can only mean one command right away, without an LLM
+     * round trip. The exchange still goes into the history as if the LLM had answered, so the model
+     * keeps context. Only ever called for the local user.
+     *
+     * @param text           what was actually written
+     * @param historyMessage the message as it would have been queued for the LLM
+     * @return whether the line was handled
+     */
+    private boolean tryLocalIntent(String text, String historyMessage) {
+        if (!ChatclefConfigPersistantState.isLocalIntentRoutingEnabled() || conversationHistory == null) {
+            return false;
+        }
+        IntentRouter.Intent intent = intentRouter.route(text);
+        if (intent == null) {
+            return false;
         }
+        System.out.printf("[AICommandBridge/tryLocalIntent]: \"%s\" -> %s (%s)%n", text, intent.command(), intent.reason());
+        JsonObject reply = new JsonObject();
+        reply.addProperty("message", "");
+        reply.addProperty("command", intent.command());
+        reply.addProperty("reason", intent.reason());
+        conversationHistory.addUserMessage(historyMessage);
+        conversationHistory.addAssistantMessage(reply.toString());
+        runCommandFromLLM(intent.command());
+        return true;
     }
 
     public void processChatWithAPI() {
+        llmProcessing = true;
         llmThread.submit(() -> {
             try {
-                llmProcessing = true;
                 System.out.println("[AICommandBridge/processChatWithAPI]: Sending messages to LLM");
 
-                String agentStatus = AgentStatus.fromMod(mod).toString();
-                String worldStatus = WorldStatus.fromMod(mod).toString();
+                StatusSnapshotStore.Encoded status = statusSnapshots.encode(WorldStatus.fromMod(mod), AgentStatus.fromMod(mod),
+                        conversationHistory.hasStatusKeyframe());
                 String altoClefDebugMsgs = altoClefMsgBuffer.dumpAndGetString();
-                ConversationHistory historyWithStatus = conversationHistory.copyThenWrapLatestWithStatus(worldStatus,
-                        agentStatus, altoClefDebugMsgs);
+                PromptMessages historyWithStatus = conversationHistory.copyThenWrapLatestWithStatus(status.keyframe(),
+                        status.worldStatus(), status.agentStatus(), altoClefDebugMsgs);
                 System.out.printf("[AICommandBridge/processChatWithAPI]: History: %s", historyWithStatus.toString());
-                JsonObject response = backend.complete(historyWithStatus);
-                String responseAsString = response.toString();
-                System.out.println("[AICommandBridge/processChatWithAPI]: LLM Response: " + responseAsString);
-                conversationHistory.addAssistantMessage(responseAsString);
-
-                // process message
-                String llmMessage = Utils.getStringJsonSafely(response, "message");
-                if (llmMessage != null && !llmMessage.isEmpty()) {
-                    showLocalChat(llmMessage);  // <-- local only, never serverbound
-                }
-
-                // process command
-                String commandResponse = Utils.getStringJsonSafely(response, "command");
-                if (commandResponse != null && !commandResponse.isEmpty()) {
-                    String commandWithPrefix = cmdExecutor.isClientCommand(commandResponse) ? commandResponse
-                            : cmdExecutor.getCommandPrefix() + commandResponse;
-                    if (commandWithPrefix.equals("@stop")) {
-                        mod.isStopping = true;
-                    } else {
-                        mod.isStopping = false;
-                    }
-                    cmdExecutor.execute(commandWithPrefix, () -> {
-                        if (mod.isStopping) {
-                            System.out.printf(
-                                    "[AICommandBridge/processChat]: (%s) was cancelled. Not adding finish event to queue.",
-                                    commandWithPrefix);
-                            // Canceled logic herethis.character.name
-                        }
-                        if (messageQueue.isEmpty() && !mod.isStopping) {
-                            // on finish
-                            addMessageToQueue(String.format(
-                                    "Command feedback: %s finished running. What shall we do next? If no new action is needed to finish user's request, generate empty command `\"\"`.",
-                                    commandResponse));
+                StreamedReplyHandler replyHandler = new StreamedReplyHandler();
+                // The round trip runs on the HTTP pool, llmThread is free again right away
+                backend.completeStreamingAsync(historyWithStatus, replyHandler).whenComplete((response, e) -> {
+                    try {
+                        if (e != null) {
+                            e.printStackTrace();
+                            System.err.println("Error communicating with API");
+                            // We may have acted on part of it already, the next turn has to know
+                            replyHandler.recordCutOff();
+                            return;
                         }
-                    }, (err) -> {
-                        // on error
-                        addMessageToQueue(
-                                String.format("Command feedback: %s FAILED. The error was %s.",
-                                        commandResponse, err.getMessage()));
-                    });
-                }
-
+                        String responseAsString = response.toString();
+                        System.out.println("[AICommandBridge/processChatWithAPI]: LLM Response: " + responseAsString);
+                        conversationHistory.addAssistantMessage(responseAsString);
+                        System.out.printf("[AICommandBridge/processChatWithAPI]: Tokens: %s | status chars sent %d of %d | queue %s%n",
+                                tokenUsage, statusSnapshots.getSentStatusChars(), statusSnapshots.getFullStatusChars(), messageQueue);
+
+                        // Anything the stream didn't deliver (ex. fields the backend added after parsing)
+                        replyHandler.finish(response);
+                    } finally {
+                        llmProcessing = false;
+                        eventPolling = false;
+                    }
+                });
             } catch (Exception e) {
                 e.printStackTrace();
                 System.err.println("Error communicating with API");
-            } finally {
                 llmProcessing = false;
                 eventPolling = false;
             }
         });
     }
 
+    /**
+     * Acts on the LLM reply while it is still being generated: the command runs as soon as its
+     * string closes, and the message is shown sentence by sentence instead of all at the end.
+     */
+    private class StreamedReplyHandler implements LlmStreamListener {
+        private final StringBuilder pendingMessage = new StringBuilder();
+        // Everything shown so far
+        private final StringBuilder shownMessage = new StringBuilder();
+        private boolean messageShown = false;
+        private boolean commandDispatched = false;
+        private String dispatchedCommand = null;
+
+        @Override
+        public void onFieldDelta(String field, String delta) {
+            if (!"message".equals(field)) return;
+            pendingMessage.append(delta);
+            // Flush whole sentences only, one chat line per token would be unreadable
+            int cut = -1;
+            for (int i = pendingMessage.length() - 2; i >= 0; i--) {
+                char c = pendingMessage.charAt(i);
+                if ((c == '.' || c == '!' || c == '?') && Character.isWhitespace(pendingMessage.charAt(i + 1))) {
+                    cut = i + 1;
+                    break;
+                }
+            }
+            if (cut > 0) {
+                show(pendingMessage.substring(0, cut).trim());
+                pendingMessage.delete(0, cut);
+            }
+        }
+
+        @Override
+        public void onUsage(int promptTokens, int completionTokens) {
+            tokenUsage.record(promptTokens, completionTokens);
+        }
+
+        @Override
+        public void onFieldComplete(String field, String value) {
+            if ("message".equals(field)) {
+                flushMessage();
+            } else if ("command".equals(field)) {
+                dispatchCommand(value);
+            }
+        }
+
+        void finish(JsonObject response) {
+            flushMessage();
+            if (!messageShown) {
+                String llmMessage = Utils.getStringJsonSafely(response, "message");
+                if (llmMessage != null && !llmMessage.isEmpty()) {
+                    show(llmMessage);
+                }
+            }
+            dispatchCommand(Utils.getStringJsonSafely(response, "command"));
+        }
+
+        /**
+         * The stream broke off. Whatever was already shown or run goes into the history as the
+         * reply, with a note that it was cut off, so the next turn knows what happened.
+         */
+        void recordCutOff() {
+            flushMessage();
+            if (!messageShown && dispatchedCommand == null) return;
+            JsonObject reply = new JsonObject();
+            reply.addProperty("message", shownMessage.toString());
+            reply.addProperty("command", dispatchedCommand != null ? dispatchedCommand : "");
+            conversationHistory.addAssistantMessage(reply.toString());
+            conversationHistory.addSystemMessage(dispatchedCommand != null
+                    ? "The reply above was cut off, but its command was already run: " + dispatchedCommand
+                    : "The reply above was cut off, no command was run.");
+        }
+
+        private void flushMessage() {
+            String rest = pendingMessage.toString().trim();
+            pendingMessage.setLength(0);
+            if (!rest.isEmpty()) {
+                show(rest);
+            }
+        }
+
+        private void show(String text) {
+            showLocalChat(text);  // <-- local only, never serverbound
+            if (!shownMessage.isEmpty()) shownMessage.append(' ');
+            shownMessage.append(text);
+            messageShown = true;
+        }
+
+        private void dispatchCommand(String commandResponse) {
+            if (commandDispatched) return;
+            commandDispatched = true;
+            if (commandResponse != null && !commandResponse.isEmpty()) {
+                dispatchedCommand = commandResponse;
+            }
+            runCommandFromLLM(commandResponse);
+        }
+    }
+
+    private void runCommandFromLLM(String commandResponse) {
+        if (commandResponse == null || commandResponse.isEmpty()) {
+            return;
+        }
+        String commandWithPrefix = cmdExecutor.isClientCommand(commandResponse) ? commandResponse
+                : cmdExecutor.getCommandPrefix() + commandResponse;
+        if (commandWithPrefix.equals("@stop")) {
+            mod.isStopping = true;
+        } else {
+            mod.isStopping = false;
+        }
+        cmdExecutor.execute(commandWithPrefix, () -> {
+            if (mod.isStopping) {
+                System.out.printf(
+                        "[AICommandBridge/processChat]: (%s) was cancelled. Not adding finish event to queue.",
+                        commandWithPrefix);
+                // Canceled logic herethis.character.name
+            }
+            if (messageQueue.isEmpty() && !mod.isStopping) {
+                // on finish
+                addMessageToQueue(String.format(
+                        "Command feedback: %s finished running. What shall we do next? If no new action is needed to finish user's request, generate empty command `\"\"`.",
+                        commandResponse), PendingMessageQueue.Source.COMMAND_FEEDBACK);
+            }
+        }, (err) -> {
+            // on error
+            addMessageToQueue(
+                    String.format("Command feedback: %s FAILED. The error was %s.",
+                            commandResponse, err.getMessage()), PendingMessageQueue.Source.COMMAND_FEEDBACK);
+        });
+    }
+
     /**
      * Sends either the first-time greeting or a welcome-back message based on loaded history.
      */
@@ -295,25 +444,24 @@ public class AICommandBridge {
     }
 
     public void sendHeartbeat() {
-        llmThread.submit(() -> {
-            Player2APIService.sendHeartbeat();
-        });
+        // Asynchronous, doesn't occupy llmThread
+        Player2APIService.sendHeartbeat();
     }
 
     public void onTick() {
-        if (messageQueue.isEmpty()) {
+        if (messageQueue.isEmpty() || conversationHistory == null) {
             return;
         }
         if (!eventPolling && !llmProcessing) {
-            eventPolling = true;
-            String message = messageQueue.poll();
-            conversationHistory.addUserMessage(message);
-            if (messageQueue.isEmpty()) {
-                // That was last message
-                processChatWithAPI();
-            } else {
-                eventPolling = false;
+            List<String> batch = messageQueue.pollBatch();
+            if (batch.isEmpty()) {
+                // Still debouncing
+                return;
             }
+            eventPolling = true;
+            // Everything that piled up goes out as one request
+            conversationHistory.addUserMessage(String.join("\n", batch));
+            processChatWithAPI();
         }
     }
 
@@ -0,0 +1,59 @@
+package adris.altoclef.player2api;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * One immutable chat message ({"role", "content"}), serialized exactly once when it is created.
+ * The cached bytes are reused for every request and journal write that includes the message.
+ */
+public final class ChatMessage {
+    private final String role;
+    private final String content;
+    private final byte[] json;
+
+    public ChatMessage(String role, String content) {
+        this.role = role;
+        this.content = content;
+        JsonObject obj = new JsonObject();
+        obj.addProperty("role", role);
+        obj.addProperty("content", content);
+        this.json = obj.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static ChatMessage fromJson(JsonObject obj) {
+        JsonElement role = obj.get("role");
+        JsonElement content = obj.get("content");
+        return new ChatMessage(role == null || role.isJsonNull() ? "user" : role.getAsString(),
+                content == null || content.isJsonNull() ? "" : content.getAsString());
+    }
+
+    public String role() {
+        return role;
+    }
+
+    public String content() {
+        return content;
+    }
+
+    /**
+     * The serialized message. Shared, must not be modified.
+     */
+    public byte[] jsonBytes() {
+        return json;
+    }
+
+    /**
+     * Rough token estimate (~4 chars per token plus message overhead).
+     */
+    public int estimateTokens() {
+        return content.length() / 4 + 4;
+    }
+
+    @Override
+    public String toString() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
@@ -15,10 +15,39 @@ public class ChatclefConfigPersistantState {
 
     private boolean sttHintEnabled = true;
 
+    // Dispatch unambiguous chat commands ("stop", "get 20 logs") without asking the LLM
+    private boolean localIntentRouting = true;
+
+    // HTTP transport used for all LLM/Player2 calls
+    private int httpConnectTimeoutMs = 15000;
+    private int httpRequestTimeoutMs = 60000;
+    private int httpMaxRetries = 2;
+    private int httpRetryBackoffMs = 500;
+
     public static boolean isSttHintEnabled() {
         return instance().sttHintEnabled;
     }
 
+    public static boolean isLocalIntentRoutingEnabled() {
+        return instance().localIntentRouting;
+    }
+
+    public static int getHttpConnectTimeoutMs() {
+        return instance().httpConnectTimeoutMs;
+    }
+
+    public static int getHttpRequestTimeoutMs() {
+        return instance().httpRequestTimeoutMs;
+    }
+
+    public static int getHttpMaxRetries() {
+        return instance().httpMaxRetries;
+    }
+
+    public static int getHttpRetryBackoffMs() {
+        return instance().httpRetryBackoffMs;
+    }
+
     public static void updateSttHint(boolean value) {
         System.out.println("[ChatclefConfigPersistantState]: updateSttHint called with: " + value);
         instance().sttHintEnabled = value;
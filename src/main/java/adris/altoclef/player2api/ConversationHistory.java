@@ -1,25 +1,36 @@
 package adris.altoclef.player2api;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
 import adris.altoclef.player2api.status.ObjectStatus;
 import net.fabricmc.loader.api.FabricLoader;
 
 public class ConversationHistory {
-    private final List<JsonObject> conversationHistory = new ArrayList<>();
-    private final Path historyFile;
+    // Immutable and structurally shared: snapshots handed to requests never see later changes
+    private MessageLog conversationHistory = MessageLog.EMPTY;
+    private final ConversationJournal journal;
     private boolean loadedFromFile = false;
-    private static final int MAX_HISTORY = 64;
-    private static final int SUMMARY_COUNT = 48;
+    // Rough token budget (~4 chars per token). Past MAX_HISTORY_TOKENS the oldest messages are
+    // summarized in the background until at most KEEP_RECENT_TOKENS of recent history remain.
+    private static final int MAX_HISTORY_TOKENS = 12_000;
+    private static final int KEEP_RECENT_TOKENS = 4_000;
+    // Only used to cap how much is read back from disk.
+    private static final int MAX_LOADED_MESSAGES = 64;
+
+    private static final ExecutorService summarizerThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "chatclef-summarizer");
+        t.setDaemon(true);
+        return t;
+    });
+    private boolean summarizing = false;
+    // The user message carrying the last full status, and what it said before it was wrapped
+    private ChatMessage statusKeyframe = null;
+    private ChatMessage statusKeyframeOriginal = null;
 
     /**
      * Constructs conversation history tied to a specific character, naming the file
@@ -32,27 +43,20 @@ public class ConversationHistory {
     public ConversationHistory(String initialSystemPrompt, String characterName, String characterShortName) {
         Path configDir = FabricLoader.getInstance().getConfigDir();
         String fileName = characterName.replaceAll("\\s+", "_") + "_" + characterShortName + ".txt";
-        this.historyFile = configDir.resolve(fileName);
+        this.journal = new ConversationJournal(configDir.resolve(fileName));
 
-        if (Files.exists(historyFile)) {
+        if (journal.exists()) {
             loadFromFile();
             setBaseSystemPrompt(initialSystemPrompt);
             loadedFromFile = true;
+            // Restart the journal from what we actually hold in memory (drops anything trimmed on load)
+            journal.compact(conversationHistory);
         } else {
             setBaseSystemPrompt(initialSystemPrompt);
             loadedFromFile = false;
         }
     }
 
-    /**
-     * Helper constructor for temporary summarization (no file persistence).
-     */
-    private ConversationHistory(String initialSystemPrompt) {
-        this.historyFile = null;
-        setBaseSystemPrompt(initialSystemPrompt);
-        loadedFromFile = false;
-    }
-
     /**
      * Whether this history was restored from disk.
      */
@@ -61,43 +65,80 @@ public class ConversationHistory {
     }
 
     /**
-     * Adds a new message to the history. Summarizes and persists when exceeding
-     * MAX_HISTORY.
+     * Adds a new message to the history and appends it to the journal. Starts a background
+     * summarization when the history grows past its token budget.
      */
-    public void addHistory(JsonObject text, boolean doCutOff) {
-        conversationHistory.add(text);
-        if (doCutOff && conversationHistory.size() > MAX_HISTORY) {
-            List<JsonObject> toSummarize = new ArrayList<>(conversationHistory.subList(1, SUMMARY_COUNT + 1));
-            String summary = summarizeHistory(toSummarize);
+    public synchronized void addHistory(ChatMessage message, boolean doCutOff) {
+        conversationHistory = conversationHistory.append(message);
+        journal.append(message);
+        if (doCutOff && !summarizing && estimateTokens(conversationHistory) > MAX_HISTORY_TOKENS) {
+            startSummarization();
+        }
+    }
 
-            if (summary == "") {
-                // 0th index is always system prompt
-                conversationHistory.remove(1);
-            } else {
-                JsonObject systemPrompt = conversationHistory.get(0);
-                int tailStart = conversationHistory.size() - (MAX_HISTORY - SUMMARY_COUNT);
-                List<JsonObject> tail = new ArrayList<>(
-                        conversationHistory.subList(tailStart, conversationHistory.size()));
+    /**
+     * Summarizes the oldest messages on the summarizer thread, against a snapshot of the history.
+     * The chat keeps going in the meantime, and the summary replaces exactly the summarized messages
+     * once it arrives.
+     */
+    private void startSummarization() {
+        // 0th index is always system prompt. Keep the most recent KEEP_RECENT_TOKENS worth of messages.
+        int tailStart = conversationHistory.size();
+        int tailTokens = 0;
+        while (tailStart > 2) {
+            int tokens = conversationHistory.get(tailStart - 1).estimateTokens();
+            if (tailTokens + tokens > KEEP_RECENT_TOKENS) break;
+            tailTokens += tokens;
+            tailStart--;
+        }
+        if (tailStart <= 1) {
+            return;
+        }
+        MessageLog snapshot = conversationHistory.slice(1, tailStart);
+        summarizing = true;
+        summarizerThread.submit(() -> {
+            String summary = summarizeHistory(snapshot);
+            applySummary(snapshot, summary);
+        });
+    }
 
-                conversationHistory.clear();
-                conversationHistory.add(systemPrompt);
-                JsonObject summaryMsg = new JsonObject();
-                summaryMsg.addProperty("role", "assistant");
-                summaryMsg.addProperty("content", "Summary of earlier events: " + summary);
-                conversationHistory.add(summaryMsg);
-                conversationHistory.addAll(tail);
+    /**
+     * Swaps the summarized messages for the summary, leaving everything added since untouched.
+     * Without a summary nothing is dropped, the next turn over budget tries again.
+     */
+    private synchronized void applySummary(MessageLog summarized, String summary) {
+        try {
+            if (summary == null || summary.isBlank()) {
+                return;
+            }
+            // The history may have been cleared or reloaded while we were summarizing.
+            if (conversationHistory.size() <= summarized.size()
+                    || conversationHistory.get(1) != summarized.get(0)
+                    || conversationHistory.get(summarized.size()) != summarized.last()) {
+                return;
             }
-            if (historyFile != null)
-                saveToFile();
-        } else if (doCutOff && conversationHistory.size() % 8 == 0 && historyFile != null) {
-            saveToFile();
+            MessageLog rebuilt = conversationHistory.slice(0, 1)
+                    .append(new ChatMessage("assistant", "Summary of earlier events: " + summary));
+            conversationHistory = rebuilt.appendAll(
+                    conversationHistory.slice(summarized.size() + 1, conversationHistory.size()));
+            journal.compact(conversationHistory);
+        } finally {
+            summarizing = false;
         }
     }
 
+    private static int estimateTokens(MessageLog messages) {
+        int total = 0;
+        for (ChatMessage msg : messages) {
+            total += msg.estimateTokens();
+        }
+        return total;
+    }
+
     /**
      * Calls LLM to generate a concise summary of provided messages.
      */
-    private String summarizeHistory(List<JsonObject> messages) {
+    private String summarizeHistory(MessageLog messages) {
         String summarizationPrompt = """
                     Our AI agent that has been chatting with user and playing minecraft.
                     Update agent's memory by summarizing the following conversation in the next response.
@@ -107,13 +148,11 @@ public class ConversationHistory {
                     Prioritize preserving important facts, things user asked agent to remember, useful tips.
                     Do not record stats, inventory, code or docs; limit to 500 chars.
                 """;
-        ConversationHistory temp = new ConversationHistory(summarizationPrompt);
-        for (JsonObject msg : messages)
-            temp.addHistory(Utils.deepCopy(msg), false);
+        MessageLog temp = MessageLog.EMPTY.append(new ChatMessage("system", summarizationPrompt)).appendAll(messages);
 
         // temp.addUserMessage("Now return the summary.");
         try {
-            String resp = Player2APIService.completeConversationToString(temp);
+            String resp = Player2APIService.completeConversationToString(new PromptMessages(temp));
             return resp;
         } catch (Exception e) {
             e.printStackTrace();
@@ -122,30 +161,13 @@ public class ConversationHistory {
         }
     }
 
-    /**
-     * Persist current history to disk (one JSON per line).
-     */
-    private void saveToFile() {
-        try (BufferedWriter writer = Files.newBufferedWriter(historyFile)) {
-            for (JsonObject msg : conversationHistory) {
-                writer.write(msg.toString());
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
     /**
      * Load history from disk into memory.
      */
     private void loadFromFile() {
-        List<JsonObject> loaded = new ArrayList<>();
-        try (BufferedReader reader = Files.newBufferedReader(historyFile)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // JsonObject obj = JsonParser.parseString(line).getAsJsonObject();
-                JsonObject obj = Utils.parseCleanedJson(line);
+        try {
+            MessageLog loaded = MessageLog.EMPTY;
+            for (JsonObject obj : journal.replay(MAX_LOADED_MESSAGES)) {
                 // Trim content field if too long
                 if (obj.has("content")) {
                     String content = obj.get("content").getAsString();
@@ -153,17 +175,12 @@ public class ConversationHistory {
                         obj.addProperty("content", content.substring(0, 500));
                     }
                 }
-                loaded.add(obj);
-                // Enforce maximum history in memory by discarding oldest when exceeding
-                if (loaded.size() > MAX_HISTORY) {
-                    break;
-                }
+                loaded = loaded.append(ChatMessage.fromJson(obj));
             }
-            conversationHistory.clear();
-            conversationHistory.addAll(loaded);
+            conversationHistory = loaded;
         } catch (IOException e) {
             e.printStackTrace();
-            conversationHistory.clear();
+            conversationHistory = MessageLog.EMPTY;
         }
     }
 
@@ -171,23 +188,18 @@ public class ConversationHistory {
      * Adds a user message without triggering cutoff.
      */
     public void addUserMessage(String userText) {
-        JsonObject objectToAdd = new JsonObject();
-        objectToAdd.addProperty("role", "user");
-        objectToAdd.addProperty("content", userText);
-        addHistory(objectToAdd, false);
+        addHistory(new ChatMessage("user", userText), false);
     }
 
     /**
      * Sets or updates the base system prompt at index 0.
      */
-    public void setBaseSystemPrompt(String newPrompt) {
-        if (!conversationHistory.isEmpty() && "system".equals(conversationHistory.get(0).get("role").getAsString())) {
-            conversationHistory.get(0).addProperty("content", newPrompt);
+    public synchronized void setBaseSystemPrompt(String newPrompt) {
+        ChatMessage systemMessage = new ChatMessage("system", newPrompt);
+        if (!conversationHistory.isEmpty() && "system".equals(conversationHistory.get(0).role())) {
+            conversationHistory = conversationHistory.set(0, systemMessage);
         } else {
-            JsonObject systemMessage = new JsonObject();
-            systemMessage.addProperty("role", "system");
-            systemMessage.addProperty("content", newPrompt);
-            conversationHistory.add(0, systemMessage);
+            conversationHistory = MessageLog.EMPTY.append(systemMessage).appendAll(conversationHistory);
         }
     }
 
@@ -195,80 +207,87 @@ public class ConversationHistory {
      * Queues a system-level message without cutoff.
      */
     public void addSystemMessage(String systemText) {
-        JsonObject objectToAdd = new JsonObject();
-        objectToAdd.addProperty("role", "system");
-        objectToAdd.addProperty("content", systemText);
-        addHistory(objectToAdd, false);
+        addHistory(new ChatMessage("system", systemText), false);
     }
 
     /**
      * Queues an assistant message and triggers cutoff logic.
      */
     public void addAssistantMessage(String messageText) {
-        JsonObject objectToAdd = new JsonObject();
-        objectToAdd.addProperty("role", "assistant");
-        objectToAdd.addProperty("content", messageText);
-        addHistory(objectToAdd, true);
+        addHistory(new ChatMessage("assistant", messageText), true);
     }
 
     /**
-     * Exposes the raw conversation JSON list.
+     * An immutable snapshot of the current history, as sent to the LLM.
      */
-    public List<JsonObject> getListJSON() {
-        return conversationHistory;
+    public synchronized PromptMessages toPromptMessages() {
+        return new PromptMessages(conversationHistory);
     }
 
     /**
-     * Wraps the latest user message with world/agent/debug status for LLM input.
+     * Wraps the latest user message with world/agent/debug status for LLM input. The history itself
+     * is shared, not copied; only the wrapped message is new.
+     *
+     * @param keyframe The status is complete. The wrapped message then stays in the history so later
+     *                 turns can send only what changed, and the previous keyframe goes back to plain text.
      */
-    public ConversationHistory copyThenWrapLatestWithStatus(String worldStatus, String agentStatus,
-            String altoclefStatusMsgs) {
-        ConversationHistory copy = new ConversationHistory(
-                conversationHistory.get(0).get("content").getAsString());
-        for (int i = 1; i < conversationHistory.size() - 1; i++) {
-            copy.addHistory(Utils.deepCopy(conversationHistory.get(i)), false);
+    public synchronized PromptMessages copyThenWrapLatestWithStatus(boolean keyframe, String worldStatus,
+            String agentStatus, String altoclefStatusMsgs) {
+        if (conversationHistory.size() <= 1 || !"user".equals(conversationHistory.last().role())) {
+            return new PromptMessages(conversationHistory);
         }
-        if (conversationHistory.size() > 1) {
-            JsonObject last = Utils.deepCopy(conversationHistory.get(conversationHistory.size() - 1));
-            if ("user".equals(last.get("role").getAsString())) {
-                String originalContent = last.get("content").getAsString();
-                ObjectStatus msgObj = new ObjectStatus();
-                msgObj.add("userMessage", originalContent);
-                msgObj.add("worldStatus", worldStatus);
-                msgObj.add("agentStatus", agentStatus);
-                msgObj.add("gameDebugMessages", altoclefStatusMsgs);
-                last.addProperty("content", msgObj.toString());
-            }
-            copy.addHistory(last, false);
+        ObjectStatus msgObj = new ObjectStatus();
+        msgObj.add("userMessage", conversationHistory.last().content());
+        msgObj.add("worldStatus", worldStatus);
+        msgObj.add("agentStatus", agentStatus);
+        msgObj.add("gameDebugMessages", altoclefStatusMsgs);
+        if (!keyframe) {
+            msgObj.add("statusNote", "only lists what changed since the last full status in the conversation");
+        }
+        ChatMessage wrapped = new ChatMessage("user", msgObj.toString());
+        if (!keyframe) {
+            return new PromptMessages(conversationHistory, wrapped);
         }
-        return copy;
+        int previous = indexOf(statusKeyframe);
+        if (previous != -1) {
+            conversationHistory = conversationHistory.set(previous, statusKeyframeOriginal);
+        }
+        statusKeyframeOriginal = conversationHistory.last();
+        statusKeyframe = wrapped;
+        conversationHistory = conversationHistory.set(conversationHistory.size() - 1, wrapped);
+        return new PromptMessages(conversationHistory);
+    }
+
+    /**
+     * Whether the last full status is still in the history, or got summarized/cleared away.
+     */
+    public synchronized boolean hasStatusKeyframe() {
+        return indexOf(statusKeyframe) != -1;
+    }
+
+    private int indexOf(ChatMessage message) {
+        if (message == null) return -1;
+        for (int i = conversationHistory.size() - 1; i >= 0; --i) {
+            if (conversationHistory.get(i) == message) return i;
+        }
+        return -1;
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("ConversationHistory {\n");
-        for (JsonObject message : conversationHistory) {
-            String role = message.has("role") ? message.get("role").getAsString() : "unknown";
-            String content = message.has("content") ? message.get("content").getAsString() : "";
-            sb.append("  [").append(role).append("] ").append(content).append("\n");
+        for (ChatMessage message : conversationHistory) {
+            sb.append("  [").append(message.role()).append("] ").append(message.content()).append("\n");
         }
         sb.append("}");
         return sb.toString();
     }
 
-    public void clear() {
+    public synchronized void clear() {
         if (!conversationHistory.isEmpty()) {
-            JsonObject systemPrompt = conversationHistory.get(0);
-            conversationHistory.clear();
-            conversationHistory.add(systemPrompt);
-        }
-        if (historyFile != null) {
-            try {
-                Files.deleteIfExists(historyFile);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            conversationHistory = conversationHistory.slice(0, 1);
         }
+        journal.delete();
     }
 }
\ No newline at end of file
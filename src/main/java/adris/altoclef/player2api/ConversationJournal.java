@@ -0,0 +1,210 @@
+package adris.altoclef.player2api;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Append-only JSONL file backing a {@link ConversationHistory}, one message per line.
+ * <p>
+ * Each new message is appended, so persisting costs the same no matter how long the history is.
+ * When the history is rewritten (summarization, first start) the whole file is compacted to a
+ * fresh snapshot. All file I/O happens on a background writer in the order it was requested;
+ * appends are batched and synced to disk together.
+ */
+public class ConversationJournal {
+    private static final long FLUSH_DELAY_MS = 250;
+    private static final byte[] NEWLINE = {'\n'};
+
+    private static final ScheduledExecutorService writerThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "chatclef-history-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    // Weak, so journals of old connections don't pile up. Any still waiting on a flush are held by the writer.
+    private static final Set<ConversationJournal> liveJournals = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    static {
+        // Don't lose the last batch when the game closes.
+        Runtime.getRuntime().addShutdownHook(new Thread(ConversationJournal::drainAll, "chatclef-history-flush"));
+    }
+
+    private final Path file;
+    private final Queue<Op> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private FileChannel channel = null;
+
+    private sealed interface Op permits Append, Compact, Delete {
+    }
+
+    private record Append(ChatMessage message) implements Op {
+    }
+
+    private record Compact(List<ChatMessage> messages) implements Op {
+    }
+
+    private record Delete() implements Op {
+    }
+
+    public ConversationJournal(Path file) {
+        this.file = file;
+        liveJournals.add(this);
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Queues one message to be appended, written from its cached serialized form.
+     */
+    public void append(ChatMessage message) {
+        enqueue(new Append(message));
+    }
+
+    /**
+     * Queues a rewrite of the whole file with exactly these messages.
+     */
+    public void compact(Iterable<ChatMessage> messages) {
+        List<ChatMessage> snapshot = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            snapshot.add(message);
+        }
+        enqueue(new Compact(snapshot));
+    }
+
+    /**
+     * Queues deleting the file. Later appends start a new one.
+     */
+    public void delete() {
+        enqueue(new Delete());
+    }
+
+    /**
+     * Reads the journal back: the leading system prompt (if any) plus the newest `maxMessages` messages.
+     * Unreadable lines are skipped.
+     */
+    public List<JsonObject> replay(int maxMessages) throws IOException {
+        JsonObject systemPrompt = null;
+        Deque<JsonObject> recent = new ArrayDeque<>();
+        boolean first = true;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.isBlank()) continue;
+                JsonObject obj;
+                try {
+                    obj = JsonParser.parseString(line).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    System.err.println("[ConversationJournal]: Skipping unreadable line: " + line);
+                    continue;
+                }
+                if (first && obj.has("role") && "system".equals(obj.get("role").getAsString())) {
+                    systemPrompt = obj;
+                } else {
+                    recent.addLast(obj);
+                    if (recent.size() > maxMessages) {
+                        recent.removeFirst();
+                    }
+                }
+                first = false;
+            }
+        }
+        List<JsonObject> result = new ArrayList<>(recent.size() + 1);
+        if (systemPrompt != null) result.add(systemPrompt);
+        result.addAll(recent);
+        return result;
+    }
+
+    private static void drainAll() {
+        List<ConversationJournal> journals;
+        synchronized (liveJournals) {
+            journals = new ArrayList<>(liveJournals);
+        }
+        for (ConversationJournal journal : journals) {
+            journal.drain();
+        }
+    }
+
+    private void enqueue(Op op) {
+        pending.add(op);
+        if (flushScheduled.compareAndSet(false, true)) {
+            writerThread.schedule(this::drain, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Applies every queued operation in order, then syncs once.
+     */
+    private synchronized void drain() {
+        flushScheduled.set(false);
+        boolean wrote = false;
+        try {
+            for (Op op; (op = pending.poll()) != null; ) {
+                if (op instanceof Append append) {
+                    ensureOpen().write(new ByteBuffer[]{ByteBuffer.wrap(append.message().jsonBytes()), ByteBuffer.wrap(NEWLINE)});
+                    wrote = true;
+                } else if (op instanceof Compact compact) {
+                    closeChannel();
+                    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        for (ChatMessage message : compact.messages()) {
+                            out.write(new ByteBuffer[]{ByteBuffer.wrap(message.jsonBytes()), ByteBuffer.wrap(NEWLINE)});
+                        }
+                        out.force(false);
+                    }
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else if (op instanceof Delete) {
+                    closeChannel();
+                    Files.deleteIfExists(file);
+                }
+            }
+            if (wrote && channel != null) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeChannel();
+        }
+    }
+
+    private FileChannel ensureOpen() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package adris.altoclef.player2api;
+
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import adris.altoclef.TaskCatalogue;
+import adris.altoclef.commandsystem.Command;
+import adris.altoclef.commandsystem.CommandExecutor;
+
+/**
+ * Recognizes lines from the local user that can only mean one command ("stop", "get 20 logs",
+ * "idle") so they can run right away instead of waiting for an LLM round trip.
+ * <p>
+ * Only matches with high confidence. Item names must be in the {@link TaskCatalogue}, commands
+ * must parse with their own arguments, and anything else is left to the LLM. Other players always
+ * go through the LLM, and explicit "@" commands are already run by the chat handler.
+ */
+public class IntentRouter {
+    private static final Pattern FILLER = Pattern.compile(
+            "^(?:(?:hey|ok|okay)\\s*,?\\s+)?(?:(?:please|pls|can you|could you|would you)\\s+)?");
+    private static final Pattern TRAILING = Pattern.compile("(?:\\s*,?\\s*(?:please|pls|now))?[\\s.!?]*$");
+
+    private static final Pattern STOP = Pattern.compile(
+            "^(?:stop|halt|cancel|abort)(?:\\s+(?:it|that|this|everything|all|following me|following))?$");
+    // "get 20 logs", "craft me a wooden pickaxe"
+    private static final Pattern GET_COUNT_FIRST = Pattern.compile(
+            "^(?:get|collect|gather|craft|make|obtain|fetch|grab)(?:\\s+(?:me|us))?\\s+(\\d{1,4}|an?|one)\\s+(.+)$");
+    // "get log 20", the way the get command itself is written
+    private static final Pattern GET_COUNT_LAST = Pattern.compile(
+            "^(?:get|collect|gather|craft|make|obtain|fetch|grab)\\s+([a-z_ ]+?)\\s+(\\d{1,4})$");
+    // Commands a bare name may run. Nothing user-only, and nothing that gives away, stashes or fights.
+    private static final Set<String> BARE_COMMANDS = Set.of("idle", "stop", "pause", "unpause", "status", "inventory", "help", "list");
+
+    public record Intent(String command, String reason) {
+    }
+
+    private final CommandExecutor cmdExecutor;
+
+    public IntentRouter(CommandExecutor cmdExecutor) {
+        this.cmdExecutor = cmdExecutor;
+    }
+
+    /**
+     * @param text the local user's chat line as written
+     * @return the command to run, or null if the LLM should decide
+     */
+    public Intent route(String text) {
+        if (text == null) return null;
+        String normalized = normalize(text.trim());
+        if (normalized.isEmpty()) return null;
+
+        if (STOP.matcher(normalized).matches()) {
+            return new Intent("stop", "User asked to stop.");
+        }
+
+        Matcher get = GET_COUNT_FIRST.matcher(normalized);
+        if (get.matches()) {
+            return getIntent(get.group(2), parseCount(get.group(1)));
+        }
+        get = GET_COUNT_LAST.matcher(normalized);
+        if (get.matches()) {
+            return getIntent(get.group(1), parseCount(get.group(2)));
+        }
+
+        // A bare command name ("idle", "status") that needs no arguments
+        if (BARE_COMMANDS.contains(normalized) && parses(normalized)) {
+            return new Intent(normalized, "User wrote a command name.");
+        }
+        return null;
+    }
+
+    private Intent getIntent(String itemPhrase, int count) {
+        if (count <= 0) return null;
+        String item = resolveItem(itemPhrase);
+        if (item == null) return null;
+        String command = "get " + item + " " + count;
+        return parses(command) ? new Intent(command, "User asked for " + count + " " + item + ".") : null;
+    }
+
+    private boolean parses(String line) {
+        int firstSpace = line.indexOf(' ');
+        Command command = cmdExecutor.get(firstSpace == -1 ? line : line.substring(0, firstSpace));
+        return command != null && command.canParse(line);
+    }
+
+    private static String normalize(String text) {
+        String result = text.toLowerCase().trim();
+        result = FILLER.matcher(result).replaceFirst("");
+        result = TRAILING.matcher(result).replaceFirst("");
+        return result.replaceAll("\\s+", " ").trim();
+    }
+
+    private static int parseCount(String count) {
+        return switch (count) {
+            case "a", "an", "one" -> 1;
+            default -> Integer.parseInt(count);
+        };
+    }
+
+    /**
+     * Maps "iron ingots" to "iron_ingot". Only exact catalogue names count, no fuzzy matching.
+     */
+    private static String resolveItem(String phrase) {
+        String name = phrase.trim().replace(' ', '_');
+        if (name.startsWith("of_")) name = name.substring(3);
+        if (TaskCatalogue.taskExists(name)) return name;
+        if (name.endsWith("es") && TaskCatalogue.taskExists(name.substring(0, name.length() - 2))) {
+            return name.substring(0, name.length() - 2);
+        }
+        if (name.endsWith("s") && TaskCatalogue.taskExists(name.substring(0, name.length() - 1))) {
+            return name.substring(0, name.length() - 1);
+        }
+        return null;
+    }
+}
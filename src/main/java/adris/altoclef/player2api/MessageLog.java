@@ -0,0 +1,100 @@
+package adris.altoclef.player2api;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable, structurally shared list of {@link ChatMessage}s.
+ * <p>
+ * Snapshots and slices share one backing array. Appending to the newest log writes into the free
+ * slot after it instead of copying, older snapshots don't see the new slot since their size is fixed.
+ * Only appending to a log that already has a successor, and replacing entries, copies the array.
+ */
+public final class MessageLog implements Iterable<ChatMessage> {
+    public static final MessageLog EMPTY = new MessageLog(new ChatMessage[0], 0, 0);
+
+    private final ChatMessage[] items;
+    private final int from;
+    private final int to;
+
+    private MessageLog(ChatMessage[] items, int from, int to) {
+        this.items = items;
+        this.from = from;
+        this.to = to;
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return to == from;
+    }
+
+    public ChatMessage get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return items[from + index];
+    }
+
+    public ChatMessage last() {
+        return get(size() - 1);
+    }
+
+    public MessageLog append(ChatMessage message) {
+        synchronized (items) {
+            if (to < items.length && items[to] == null) {
+                items[to] = message;
+                return new MessageLog(items, from, to + 1);
+            }
+        }
+        ChatMessage[] grown = new ChatMessage[Math.max(8, size() * 2)];
+        System.arraycopy(items, from, grown, 0, size());
+        grown[size()] = message;
+        return new MessageLog(grown, 0, size() + 1);
+    }
+
+    public MessageLog appendAll(MessageLog other) {
+        MessageLog result = this;
+        for (ChatMessage message : other) {
+            result = result.append(message);
+        }
+        return result;
+    }
+
+    /**
+     * A view of [fromIndex, toIndex), sharing this log's storage.
+     */
+    public MessageLog slice(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("[" + fromIndex + ", " + toIndex + ") of " + size());
+        }
+        return new MessageLog(items, from + fromIndex, from + toIndex);
+    }
+
+    public MessageLog set(int index, ChatMessage message) {
+        ChatMessage[] copy = new ChatMessage[Math.max(8, items.length - from)];
+        System.arraycopy(items, from, copy, 0, size());
+        copy[index] = message;
+        return new MessageLog(copy, 0, size());
+    }
+
+    @Override
+    public Iterator<ChatMessage> iterator() {
+        return new Iterator<>() {
+            private int i = from;
+
+            @Override
+            public boolean hasNext() {
+                return i < to;
+            }
+
+            @Override
+            public ChatMessage next() {
+                if (i >= to) throw new NoSuchElementException();
+                return items[i++];
+            }
+        };
+    }
+}
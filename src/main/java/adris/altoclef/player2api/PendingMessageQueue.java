@@ -0,0 +1,147 @@
+package adris.altoclef.player2api;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Messages waiting to be sent to the LLM, handed out in debounced batches so a busy chat turns
+ * into one request instead of one request per line.
+ * <p>
+ * Identical pending messages are coalesced into one. When the queue is full, the oldest message
+ * of the lowest priority source is dropped. Thread-safe: messages arrive from the client thread
+ * and from command callbacks.
+ */
+public class PendingMessageQueue {
+    /**
+     * Where a message came from, highest priority first.
+     */
+    public enum Source {
+        USER,
+        OTHER_PLAYER,
+        COMMAND_FEEDBACK
+    }
+
+    private static final int CAPACITY = 20;
+    private static final int MAX_BATCH = 8;
+    // Wait for the chat to go quiet this long before sending, unless the user wrote something
+    private static final long DEBOUNCE_MS = 400;
+    // but never hold a message back longer than this.
+    private static final long MAX_DELAY_MS = 2000;
+
+    private record Entry(String message, Source source, long queuedAt) {
+    }
+
+    // Arrival order
+    private final List<Entry> entries = new ArrayList<>();
+    private long lastArrival = 0;
+
+    private long enqueued = 0;
+    private long coalesced = 0;
+    private long dropped = 0;
+    private long batches = 0;
+    private long dispatched = 0;
+    private long totalWaitMs = 0;
+    private long maxWaitMs = 0;
+
+    /**
+     * @return false if the message was coalesced into an identical pending one
+     */
+    public synchronized boolean offer(String message, Source source) {
+        for (Entry entry : entries) {
+            if (entry.message().equals(message)) {
+                coalesced++;
+                return false;
+            }
+        }
+        long now = System.currentTimeMillis();
+        entries.add(new Entry(message, source, now));
+        lastArrival = now;
+        enqueued++;
+
+        if (entries.size() > CAPACITY) {
+            Entry victim = entries.get(0);
+            for (Entry entry : entries) {
+                if (entry.source().ordinal() > victim.source().ordinal()) {
+                    victim = entry;
+                }
+            }
+            entries.remove(victim);
+            dropped++;
+            System.out.printf("[PendingMessageQueue/offer]: Queue full, dropped (%s) %s%n", victim.source(), victim.message());
+        }
+        return true;
+    }
+
+    /**
+     * Takes the next batch if it's due: right away if the user is waiting, otherwise once the chat
+     * has been quiet for a moment. The highest priority messages are picked, and returned in the
+     * order they arrived.
+     *
+     * @return the batch, empty if nothing is due
+     */
+    public synchronized List<String> pollBatch() {
+        if (entries.isEmpty()) {
+            return List.of();
+        }
+        long now = System.currentTimeMillis();
+        boolean userWaiting = entries.stream().anyMatch(entry -> entry.source() == Source.USER);
+        if (!userWaiting && now - lastArrival < DEBOUNCE_MS && now - entries.get(0).queuedAt() < MAX_DELAY_MS) {
+            return List.of();
+        }
+
+        List<Entry> picked = new ArrayList<>(entries);
+        if (picked.size() > MAX_BATCH) {
+            // Stable sort, so equal priorities stay in arrival order
+            picked.sort(Comparator.comparingInt(entry -> entry.source().ordinal()));
+            picked = picked.subList(0, MAX_BATCH);
+            picked.sort(Comparator.comparingLong(Entry::queuedAt));
+        }
+
+        List<String> batch = new ArrayList<>(picked.size());
+        for (Entry entry : picked) {
+            long waited = now - entry.queuedAt();
+            totalWaitMs += waited;
+            maxWaitMs = Math.max(maxWaitMs, waited);
+            batch.add(entry.message());
+        }
+        entries.removeAll(picked);
+        dispatched += batch.size();
+        batches++;
+        return batch;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized int getDepth() {
+        return entries.size();
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    public synchronized long getAverageWaitMs() {
+        return dispatched == 0 ? 0 : totalWaitMs / dispatched;
+    }
+
+    public synchronized long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("depth=%d enqueued=%d coalesced=%d dropped=%d | %d messages in %d batches, wait avg %dms max %dms",
+                entries.size(), enqueued, coalesced, dropped, dispatched, batches, getAverageWaitMs(), maxWaitMs);
+    }
+}
@@ -1,164 +1,145 @@
 package adris.altoclef.player2api;
 
+import adris.altoclef.ai.ChatCompletionStream;
+import adris.altoclef.ai.HttpTransport;
+import adris.altoclef.ai.LlmStreamListener;
 import com.google.gson.*;
 
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.http.HttpRequest;
+import java.util.concurrent.CompletableFuture;
 
 public class Player2APIService {
     private static final String BASE_URL = "http://127.0.0.1:4315";
+
     /**
-     * Handles boilerplate logic for interacting with the API endpoint
+     * Builds a request against the Player2 API with the common headers set.
      *
      * @param endpoint The API endpoint (e.g., "/v1/chat/completions").
      * @param postRequest True -> POST request, False -> GET request
      * @param requestBody JSON payload to send.
-     * @return A map containing JSON keys and values from the response.
-     * @throws Exception If there is an error.
+     * @param accept Accepted response content type.
      */
-    private static Map<String, JsonElement> sendRequest(String endpoint, boolean postRequest, JsonObject requestBody) throws Exception {
-        URL url = new URI(BASE_URL + endpoint).toURL();
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod(postRequest ? "POST" : "GET");
-
-        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-        connection.setRequestProperty("Accept", "application/json; charset=utf-8");
-        connection.setRequestProperty("player2-game-key", "chatclef");
-
-        if (postRequest && requestBody != null) {
-            connection.setDoOutput(true);
-            try (OutputStream os = connection.getOutputStream()) {
-                byte[] input = requestBody.toString().getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
-        }
-
-        int responseCode = connection.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("HTTP " + responseCode + ": " + connection.getResponseMessage());
-        }
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            response.append(line);
-        }
-        reader.close();
-
-        JsonParser parser = new JsonParser();
-        JsonObject jsonResponse = parser.parse(response.toString()).getAsJsonObject();
-        Map<String, JsonElement> responseMap = new HashMap<>();
+    private static HttpRequest buildRequest(String endpoint, boolean postRequest, JsonObject requestBody, String accept) {
+        return buildRequest(endpoint, postRequest,
+                requestBody != null ? HttpTransport.jsonBody(requestBody) : HttpRequest.BodyPublishers.noBody(), accept);
+    }
 
-        for (Map.Entry<String, JsonElement> entry : jsonResponse.entrySet()) {
-            responseMap.put(entry.getKey(), entry.getValue());
+    private static HttpRequest buildRequest(String endpoint, boolean postRequest, HttpRequest.BodyPublisher requestBody, String accept) {
+        HttpRequest.Builder builder = HttpTransport.request(BASE_URL + endpoint)
+                .header("Content-Type", "application/json; charset=utf-8")
+                .header("Accept", accept)
+                .header("player2-game-key", "chatclef");
+        if (postRequest) {
+            builder.POST(requestBody);
+        } else {
+            builder.GET();
         }
-
-        return responseMap;
+        return builder.build();
     }
 
-
     /**
-     * Handles a chat completion request using the AI API.
+     * Handles boilerplate logic for interacting with the API endpoint
      *
-     * @param conversationHistory The conversation history object.
-     * @return The AI's response as a JSON object.
-     * @throws Exception If there is an error.
+     * @param endpoint The API endpoint (e.g., "/v1/chat/completions").
+     * @param postRequest True -> POST request, False -> GET request
+     * @param requestBody JSON payload to send.
+     * @return Future of the JSON response body.
      */
-    public static JsonObject completeConversation(ConversationHistory conversationHistory) throws Exception {
+    private static CompletableFuture<JsonObject> sendRequestAsync(String endpoint, boolean postRequest, JsonObject requestBody) {
+        return HttpTransport.sendJsonAsync(buildRequest(endpoint, postRequest, requestBody, "application/json; charset=utf-8"));
+    }
+
+    /**
+     * Builds a chat completion request. The messages are written straight from their cached
+     * serialized form, nothing is copied or re-serialized.
+     */
+    private static HttpRequest buildCompletionRequest(PromptMessages messages, boolean stream) {
         JsonObject requestBody = new JsonObject();
-        JsonArray messagesArray = new JsonArray();
-        for (JsonObject msg : conversationHistory.getListJSON()) {
-            messagesArray.add(msg);
+        if (stream) {
+            requestBody.addProperty("stream", true);
         }
+        return buildRequest("/v1/chat/completions", true, messages.toBodyPublisher(requestBody),
+                stream ? "text/event-stream, application/json" : "application/json; charset=utf-8");
+    }
 
-        requestBody.add("messages", messagesArray);
-        Map<String, JsonElement> responseMap = sendRequest("/v1/chat/completions", true, requestBody);
-        if (responseMap.containsKey("choices")) {
-            JsonArray choices = responseMap.get("choices").getAsJsonArray();
+    private static String extractContent(JsonObject response) throws Exception {
+        if (response.has("choices")) {
+            JsonArray choices = response.get("choices").getAsJsonArray();
 
             if (choices.size() != 0) {
                 JsonObject messageObject = choices.get(0).getAsJsonObject().getAsJsonObject("message");
 
                 if (messageObject != null && messageObject.has("content")) {
-                    String content = messageObject.get("content").getAsString();
-                    return Utils.parseCleanedJson(content);
+                    return messageObject.get("content").getAsString();
                 }
             }
         }
 
-        throw new Exception("Invalid response format: " + responseMap.toString());
+        throw new Exception("Invalid response format: " + response);
     }
-    public static String completeConversationToString(ConversationHistory conversationHistory) throws Exception {
-        JsonObject requestBody = new JsonObject();
-        JsonArray messagesArray = new JsonArray();
-        for (JsonObject msg : conversationHistory.getListJSON()) {
-            messagesArray.add(msg);
-        }
 
-        requestBody.add("messages", messagesArray);
-        Map<String, JsonElement> responseMap = sendRequest("/v1/chat/completions", true, requestBody);
-        if (responseMap.containsKey("choices")) {
-            JsonArray choices = responseMap.get("choices").getAsJsonArray();
-
-            if (choices.size() != 0) {
-                JsonObject messageObject = choices.get(0).getAsJsonObject().getAsJsonObject("message");
-
-                if (messageObject != null && messageObject.has("content")) {
-                    String content = messageObject.get("content").getAsString();
-                    return content;
-                }
-            }
-        }
-
-        throw new Exception("Invalid response format: " + responseMap.toString());
+    /**
+     * Handles a chat completion request using the AI API.
+     *
+     * @param messages The messages to send.
+     * @return The AI's response as a JSON object.
+     * @throws Exception If there is an error.
+     */
+    public static JsonObject completeConversation(PromptMessages messages) throws Exception {
+        JsonObject response = HttpTransport.sendJson(buildCompletionRequest(messages, false));
+        return Utils.parseCleanedJson(extractContent(response));
     }
 
     /**
-     * Fetches the first selected character from the API and returns it as a Character object.
+     * Handles a chat completion request with "stream": true. String fields of the reply are
+     * reported to the listener while the model is still generating. Falls back transparently
+     * if the API answers with a single JSON body.
      *
-     * @return A Character object containing the character's details.
+     * @param messages The messages to send.
+     * @param listener Receives the reply's fields as they stream in.
+     * @return The AI's response as a JSON object.
+     * @throws Exception If there is an error.
      */
-    
+    public static JsonObject completeConversationStreaming(PromptMessages messages, LlmStreamListener listener) throws Exception {
+        HttpRequest request = buildCompletionRequest(messages, true);
+        String content = ChatCompletionStream.read(HttpTransport.send(request).body(), listener);
+        return Utils.parseCleanedJson(content);
+    }
+
+    public static String completeConversationToString(PromptMessages messages) throws Exception {
+        JsonObject response = HttpTransport.sendJson(buildCompletionRequest(messages, false));
+        return extractContent(response);
+    }
 
     public static void startSTT(){
         JsonObject requestBody = new JsonObject();
         requestBody.addProperty("timeout", 30);
-        try {
-            sendRequest("/v1/stt/start", true, requestBody);
-        } catch (Exception e) {
+        sendRequestAsync("/v1/stt/start", true, requestBody).exceptionally(e -> {
             System.err.println("[Player2APIService/startSTT]: Error" + e.getMessage());
-        }
+            return null;
+        });
     }
 
-    public static String stopSTT () {
-        try{
-            Map<String, JsonElement> responseMap = sendRequest("/v1/stt/stop", true, null);
-            if(!responseMap.containsKey("text")){
-                throw new Exception("Could not find key 'text' in response");
-            }
-            return responseMap.get("text").getAsString();
-        } catch (Exception e) {
-            // handle timeout err here?
-            return e.getMessage();
-        }
-    } 
+    public static CompletableFuture<String> stopSTT() {
+        return sendRequestAsync("/v1/stt/stop", true, null)
+                .thenApply(response -> {
+                    if (!response.has("text")) {
+                        throw new IllegalStateException("Could not find key 'text' in response");
+                    }
+                    return response.get("text").getAsString();
+                })
+                // handle timeout err here?
+                .exceptionally(Throwable::getMessage);
+    }
 
     public static void sendHeartbeat(){
-        try{
-            System.out.println("Sending Heartbeat");
-            Map<String, JsonElement> responseMap = sendRequest("/v1/health", false, null);
-            if(responseMap.containsKey("client_version")){
+        System.out.println("Sending Heartbeat");
+        sendRequestAsync("/v1/health", false, null).whenComplete((response, e) -> {
+            if (e != null) {
+                System.err.printf("Heartbeat Fail: %s", e.getMessage());
+            } else if (response.has("client_version")) {
                 System.out.println("Heartbeat Successful");
             }
-        }
-        catch(Exception e){
-            System.err.printf("Heartbeat Fail: %s",e.getMessage());
-        }
+        });
     }
 }
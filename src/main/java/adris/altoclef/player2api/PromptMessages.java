@@ -0,0 +1,101 @@
+package adris.altoclef.player2api;
+
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The messages of one LLM request: a snapshot of the history, optionally with the latest message
+ * swapped for a wrapped version.
+ * <p>
+ * Nothing is copied or re-serialized; the request body is streamed from the messages' cached bytes.
+ */
+public final class PromptMessages implements Iterable<ChatMessage> {
+    private static final byte[] COMMA = {','};
+    private static final byte[] CLOSE = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private final MessageLog history;
+    private final ChatMessage latest;
+
+    public PromptMessages(MessageLog history) {
+        this(history, null);
+    }
+
+    /**
+     * @param history snapshot, index 0 is the system prompt
+     * @param latest  replaces the last history message, or null
+     */
+    public PromptMessages(MessageLog history, ChatMessage latest) {
+        this.history = history;
+        this.latest = latest;
+    }
+
+    /**
+     * Builds a request body: `body`'s own fields plus a "messages" array.
+     */
+    public HttpRequest.BodyPublisher toBodyPublisher(JsonObject body) {
+        String head = body.toString();
+        head = head.substring(0, head.length() - 1) + (body.size() == 0 ? "" : ",") + "\"messages\":[";
+        List<byte[]> parts = new ArrayList<>(size() * 2 + 2);
+        parts.add(head.getBytes(StandardCharsets.UTF_8));
+        boolean first = true;
+        for (ChatMessage message : this) {
+            if (!first) parts.add(COMMA);
+            parts.add(message.jsonBytes());
+            first = false;
+        }
+        parts.add(CLOSE);
+        return HttpRequest.BodyPublishers.ofByteArrays(parts);
+    }
+
+    public int size() {
+        return history.size();
+    }
+
+    public int estimateTokens() {
+        int total = 0;
+        for (ChatMessage message : this) {
+            total += message.estimateTokens();
+        }
+        return total;
+    }
+
+    @Override
+    public Iterator<ChatMessage> iterator() {
+        return new Iterator<>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < history.size();
+            }
+
+            @Override
+            public ChatMessage next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                ChatMessage message = history.get(i);
+                if (i == history.size() - 1 && latest != null && i > 0) {
+                    message = latest;
+                }
+                i++;
+                return message;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ConversationHistory {\n");
+        for (ChatMessage message : this) {
+            sb.append("  [").append(message.role()).append("] ").append(message.content()).append("\n");
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+}
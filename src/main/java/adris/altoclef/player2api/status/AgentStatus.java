@@ -18,6 +18,7 @@ public class AgentStatus extends ObjectStatus {
                 .add("saturation", String.format("%.2f/20", player.getHungerManager().getSaturationLevel()))
                 .add("inventory", StatusUtils.getInventoryString(mod))
                 .add("taskStatus", StatusUtils.getTaskStatusString(mod))
+                .add("taskMaterialsNeeded", StatusUtils.getTaskMaterialsString(mod))
                 .add("oxygenLevel", StatusUtils.getOxygenString(mod))
                 .add("armor", StatusUtils.getEquippedArmorStatusString(mod))
                 .add("gamemode", StatusUtils.getGamemodeString(mod));
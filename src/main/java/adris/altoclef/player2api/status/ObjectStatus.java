@@ -1,16 +1,26 @@
 package adris.altoclef.player2api.status;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class ObjectStatus {
-    protected final Map<String, String> fields = new HashMap<>();
+    // Insertion order keeps the rendered text stable between turns
+    protected final Map<String, String> fields = new LinkedHashMap<>();
 
     public ObjectStatus add(String key, String value) {
         fields.put(key, value);
         return this;
     }
 
+    public Map<String, String> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    public boolean isEmpty() {
+        return fields.isEmpty();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("{\n");
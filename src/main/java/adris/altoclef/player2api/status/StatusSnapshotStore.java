@@ -0,0 +1,100 @@
+package adris.altoclef.player2api.status;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last full world/agent status sent to the LLM so later turns only need to
+ * carry the fields that changed.
+ * <p>
+ * A turn that sends the full status (the "keyframe") keeps it in the conversation history, so
+ * every later request already carries it once and only needs the fields that differ from it. A new
+ * keyframe goes out every {@link #KEYFRAME_INTERVAL} turns, earlier once most of it is outdated
+ * anyway, and whenever the old one was summarized out of the history.
+ */
+public class StatusSnapshotStore {
+
+    private static final int KEYFRAME_INTERVAL = 10;
+
+    private final Map<String, Map<String, String>> keyframe = new HashMap<>();
+    private String keyframeText = null;
+    private int turnsSinceKeyframe = 0;
+
+    // How many status characters we would have sent without deltas vs. what we did send
+    private long fullStatusChars = 0;
+    private long sentStatusChars = 0;
+
+    /**
+     * @param keyframe Whether world/agent are the full status, which then has to stay in the history
+     */
+    public record Encoded(boolean keyframe, String worldStatus, String agentStatus) {
+    }
+
+    /**
+     * Encodes this turn's status.
+     *
+     * @param keyframeSent Whether the last keyframe is still part of what gets sent
+     * @return the full status if it's time for a keyframe, otherwise the fields that changed since
+     */
+    public synchronized Encoded encode(ObjectStatus world, ObjectStatus agent, boolean keyframeSent) {
+        String fullWorld = world.toString();
+        String fullAgent = agent.toString();
+        fullStatusChars += fullWorld.length() + fullAgent.length();
+
+        ObjectStatus worldDelta = diff("worldStatus", world);
+        ObjectStatus agentDelta = diff("agentStatus", agent);
+        int changed = worldDelta.getFields().size() + agentDelta.getFields().size();
+        int total = world.getFields().size() + agent.getFields().size();
+
+        if (keyframeText == null || !keyframeSent || ++turnsSinceKeyframe >= KEYFRAME_INTERVAL || changed * 2 > total) {
+            keyframe.put("worldStatus", new HashMap<>(world.getFields()));
+            keyframe.put("agentStatus", new HashMap<>(agent.getFields()));
+            keyframeText = new ObjectStatus()
+                    .add("worldStatus", fullWorld)
+                    .add("agentStatus", fullAgent)
+                    .toString();
+            turnsSinceKeyframe = 0;
+            sentStatusChars += fullWorld.length() + fullAgent.length();
+            return new Encoded(true, fullWorld, fullAgent);
+        }
+
+        String worldText = worldDelta.isEmpty() ? "unchanged" : worldDelta.toString();
+        String agentText = agentDelta.isEmpty() ? "unchanged" : agentDelta.toString();
+        // The keyframe rides along in the history, that's sent too
+        sentStatusChars += keyframeText.length() + worldText.length() + agentText.length();
+        return new Encoded(false, worldText, agentText);
+    }
+
+    /**
+     * Forgets the keyframe, the next turn sends everything again.
+     */
+    public synchronized void reset() {
+        keyframe.clear();
+        keyframeText = null;
+        turnsSinceKeyframe = 0;
+    }
+
+    public synchronized long getFullStatusChars() {
+        return fullStatusChars;
+    }
+
+    public synchronized long getSentStatusChars() {
+        return sentStatusChars;
+    }
+
+    private ObjectStatus diff(String section, ObjectStatus current) {
+        ObjectStatus delta = new ObjectStatus();
+        Map<String, String> previous = keyframe.getOrDefault(section, Map.of());
+        for (Map.Entry<String, String> entry : current.getFields().entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                delta.add(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.getFields().containsKey(key)) {
+                delta.add(key, "none");
+            }
+        }
+        return delta;
+    }
+}
@@ -1,12 +1,15 @@
 package adris.altoclef.player2api.status;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import adris.altoclef.AltoClef;
+import adris.altoclef.TaskCatalogue;
+import adris.altoclef.tasks.ResourceTask;
 import adris.altoclef.tasksystem.Task;
 import adris.altoclef.util.helpers.ItemHelper;
 import net.minecraft.client.network.ClientPlayerEntity;
@@ -15,6 +18,7 @@ import net.minecraft.entity.EquipmentSlot;
 import net.minecraft.entity.mob.HostileEntity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.ArmorItem;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.ShieldItem;
 import net.minecraft.util.math.BlockPos;
@@ -70,23 +74,49 @@ public class StatusUtils {
         }
     }
 
+    /**
+     * Raw materials the current resource task still has to gather, after what's already in the inventory.
+     */
+    public static String getTaskMaterialsString(AltoClef mod) {
+        List<Task> tasks = mod.getUserTaskChain().getTasks();
+        ResourceTask[] resourceTask = new ResourceTask[1];
+        if (tasks.isEmpty() || !tasks.get(0).thisOrChildSatisfies(task -> {
+            if (task instanceof ResourceTask found) {
+                resourceTask[0] = found;
+                return true;
+            }
+            return false;
+        })) {
+            return "none";
+        }
+
+        Map<Item, Integer> inventory = new HashMap<>();
+        for (int i = 0; i < mod.getPlayer().getInventory().size(); ++i) {
+            ItemStack stack = mod.getPlayer().getInventory().getStack(i);
+            if (!stack.isEmpty()) {
+                inventory.merge(stack.getItem(), stack.getCount(), Integer::sum);
+            }
+        }
+        Map<String, Integer> rawMaterials = TaskCatalogue.getRecipeGraph().getRawMaterials(Arrays.asList(resourceTask[0].getItemTargets()), name -> {
+            int count = 0;
+            for (Item item : TaskCatalogue.getItemMatches(name)) {
+                count += inventory.getOrDefault(item, 0);
+            }
+            return count;
+        });
+
+        List<String> needed = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : rawMaterials.entrySet()) {
+            needed.add(entry.getValue() + " " + entry.getKey());
+        }
+        return needed.isEmpty() ? "none" : String.join(", ", needed);
+    }
+
     public static String getNearbyBlocksString(AltoClef mod) {
         final int radius = 12;
         BlockPos center = mod.getPlayer().getBlockPos();
-        Map<String, Integer> blockCounts = new HashMap<>();
-
-        for (int dx = -radius; dx <= radius; dx++) {
-            for (int dy = -radius; dy <= radius; dy++) {
-                for (int dz = -radius; dz <= radius; dz++) {
-                    BlockPos pos = center.add(dx, dy, dz);
-                    String blockName = mod.getWorld().getBlockState(pos).getBlock().getTranslationKey()
-                            .replace("block.minecraft.", "");
-                    if (!blockName.equals("air")) {
-                        blockCounts.put(blockName, blockCounts.getOrDefault(blockName, 0) + 1);
-                    }
-                }
-            }
-        }
+        // Section histograms are maintained on the client thread, no world access from here.
+        Map<String, Integer> blockCounts = mod.getBlockHistogramTracker().getBlockCountsAround(center, radius);
 
         ObjectStatus status = new ObjectStatus();
         for (Map.Entry<String, Integer> entry : blockCounts.entrySet()) {
@@ -4,9 +4,15 @@ import adris.altoclef.AltoClef;
 import adris.altoclef.tasks.movement.TimeoutWanderTask;
 import adris.altoclef.tasksystem.Task;
 import adris.altoclef.util.helpers.WorldHelper;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.goals.GoalGetToBlock;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -16,6 +22,9 @@ import java.util.Optional;
  */
 public abstract class AbstractDoToClosestObjectTask<T> extends Task {
 
+    // How many of the closest objects get their real path cost compared
+    protected static final int PATH_COST_CANDIDATES = 4;
+
     private final HashMap<T, CachedHeuristic> heuristicMap = new HashMap<>();
     private T currentlyPursuing = null;
     private boolean wasWandering;
@@ -36,6 +45,25 @@ public abstract class AbstractDoToClosestObjectTask<T> extends Task {
         return new TimeoutWanderTask(true);
     }
 
+    // Virtual
+    /**
+     * Up to `count` of the closest objects to `pos`, closest first. When there's more than one, we
+     * go for the one with the cheapest real path from the player instead of the closest.
+     */
+    protected List<T> getClosestCandidates(AltoClef mod, Vec3d pos, int count) {
+        return getClosestTo(mod, pos).map(Collections::singletonList).orElse(Collections.emptyList());
+    }
+
+    // Virtual
+    protected Goal getPathCostGoal(AltoClef mod, T obj) {
+        return new GoalGetToBlock(getPathCostTarget(mod, obj));
+    }
+
+    private BlockPos getPathCostTarget(AltoClef mod, T obj) {
+        Vec3d pos = getPos(mod, obj);
+        return new BlockPos(MathHelper.floor(pos.x), MathHelper.floor(pos.y), MathHelper.floor(pos.z));
+    }
+
     public void resetSearch() {
         currentlyPursuing = null;
         heuristicMap.clear();
@@ -64,7 +92,19 @@ public abstract class AbstractDoToClosestObjectTask<T> extends Task {
         }
 
         // Get closest object
-        Optional<T> checkNewClosest = getClosestTo(mod, getOriginPos(mod));
+        List<T> candidates = getClosestCandidates(mod, getOriginPos(mod), PATH_COST_CANDIDATES);
+        Optional<T> checkNewClosest = candidates.isEmpty() ? Optional.empty() : Optional.of(candidates.get(0));
+        if (candidates.size() > 1) {
+            // Straight line distance lies when there's a wall or a ravine in the way. Go for the
+            // cheapest real path we know of, and while none is known keep what we're already after.
+            Optional<T> cheapest = mod.getPathCostEstimator().getCheapest(candidates,
+                    obj -> getPathCostGoal(mod, obj), obj -> getPathCostTarget(mod, obj));
+            if (cheapest.isPresent()) {
+                checkNewClosest = cheapest;
+            } else if (currentlyPursuing != null) {
+                checkNewClosest = Optional.of(currentlyPursuing);
+            }
+        }
 
         // Receive closest object and position
         if (checkNewClosest.isPresent() && !checkNewClosest.get().equals(currentlyPursuing)) {
@@ -1,7 +1,7 @@
 package adris.altoclef.tasks;
 
 import adris.altoclef.AltoClef;
-import adris.altoclef.tasks.slot.MoveItemToSlotFromInventoryTask;
+import adris.altoclef.control.SlotClickPlanner;
 import adris.altoclef.tasks.slot.ReceiveCraftingOutputSlotTask;
 import adris.altoclef.tasksystem.Task;
 import adris.altoclef.util.ItemTarget;
@@ -15,6 +15,8 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.item.Items;
 import net.minecraft.screen.slot.SlotActionType;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -76,7 +78,20 @@ public class CraftGenericManuallyTask extends Task {
         // this means 3 planks per slot
         int requiredPerSlot = (int) Math.ceil((double) target.getTargetCount() / target.getRecipe().outputCount());
 
-        // For each slot in table
+        // Wait for the last plan to go through
+        if (mod.getSlotHandler().isBatchPending()) {
+            setDebugState("Moving items to grid...");
+            return null;
+        }
+
+        // Plan the whole grid at once
+        Optional<SlotClickPlanner> plan = SlotClickPlanner.ofCurrentScreen();
+        if (plan.isEmpty()) {
+            return null;
+        }
+        // Slots sharing an item get spread together, so they can be dragged across in one go
+        List<ItemTarget> toFillTargets = new ArrayList<>();
+        List<List<Slot>> toFillSlots = new ArrayList<>();
         for (int craftSlot = 0; craftSlot < target.getRecipe().getSlotCount(); ++craftSlot) {
             ItemTarget toFill = target.getRecipe().getSlot(craftSlot);
             Slot currentCraftSlot;
@@ -92,34 +107,32 @@ public class CraftGenericManuallyTask extends Task {
                 if (present.getItem() != Items.AIR) {
                     // Move this item OUT if it should be empty
                     setDebugState("Found INVALID slot");
-                    mod.getSlotHandler().clickSlot(currentCraftSlot, 0, SlotActionType.PICKUP);
-                }
-            } else {
-                boolean correctItem = toFill.matches(present.getItem());
-                boolean isSatisfied = correctItem && present.getCount() >= requiredPerSlot;
-                if (!isSatisfied) {
-                    // We have items that satisfy, but we CAN NOT fill in the current slot!
-                    // In that case, just grab from the output.
-                    if (!mod.getItemStorage().hasItemInventoryOnly(present.getItem())) {
-                        if (!StorageHelper.getItemStackInSlot(outputSlot).isEmpty()) {
-                            setDebugState("NO MORE to fit: grabbing from output.");
-                            return new ReceiveCraftingOutputSlotTask(outputSlot, target.getTargetCount());
-                        } else {
-                            // Move on to the NEXT slot, we can't fill this one anymore.
-                            continue;
-                        }
-                    }
-
-                    setDebugState("Moving item to slot...");
-                    return new MoveItemToSlotFromInventoryTask(new ItemTarget(toFill, requiredPerSlot), currentCraftSlot);
-                }
-                // We could be OVER satisfied
-                boolean oversatisfies = present.getCount() > requiredPerSlot;
-                if (oversatisfies) {
-                    setDebugState("OVER SATISFIED slot! Right clicking slot to extract half and spread it out more.");
-                    mod.getSlotHandler().clickSlot(currentCraftSlot, 0, SlotActionType.PICKUP);
+                    plan.get().clear(currentCraftSlot);
                 }
+                continue;
+            }
+            boolean correctItem = toFill.matches(present.getItem());
+            // Wrong item, or OVER satisfied: take it all out and fill it back in with the rest.
+            if ((!present.isEmpty() && !correctItem) || present.getCount() > requiredPerSlot) {
+                plan.get().clear(currentCraftSlot);
+            }
+            int group = toFillTargets.indexOf(toFill);
+            if (group == -1) {
+                toFillTargets.add(toFill);
+                toFillSlots.add(new ArrayList<>());
+                group = toFillTargets.size() - 1;
             }
+            toFillSlots.get(group).add(currentCraftSlot);
+        }
+        for (int i = 0; i < toFillTargets.size(); ++i) {
+            ItemTarget toFill = toFillTargets.get(i);
+            // If we run out, whatever fit stays and we grab from the output below.
+            plan.get().spread(toFillSlots.get(i), toFill, requiredPerSlot, mod.getItemStorage().getSlotsWithItemPlayerInventory(false, toFill.getMatches()));
+        }
+        if (!plan.get().isEmpty()) {
+            setDebugState("Moving items to grid...");
+            mod.getSlotHandler().queueClicks(plan.get());
+            return null;
         }
 
         // Ensure our cursor is empty/can receive our item
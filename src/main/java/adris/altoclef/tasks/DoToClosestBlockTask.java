@@ -8,6 +8,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -60,6 +61,15 @@ public class DoToClosestBlockTask extends AbstractDoToClosestObjectTask<BlockPos
         return mod.getBlockScanner().getNearestBlock(pos, isValid, targetBlocks);
     }
 
+    @Override
+    protected List<BlockPos> getClosestCandidates(AltoClef mod, Vec3d pos, int count) {
+        // Path costs are measured from the player, so only compare them when that's where we search from
+        if (getClosest != null || getOriginPos != null) {
+            return super.getClosestCandidates(mod, pos, count);
+        }
+        return mod.getBlockScanner().getNearestBlocks(pos, count, isValid, targetBlocks);
+    }
+
     @Override
     protected Vec3d getOriginPos(AltoClef mod) {
         if (getOriginPos != null) {
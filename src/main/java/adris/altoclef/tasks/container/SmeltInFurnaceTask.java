@@ -1,380 +1,19 @@
 package adris.altoclef.tasks.container;
 
-import adris.altoclef.AltoClef;
-import adris.altoclef.BotBehaviour;
-import adris.altoclef.Debug;
-import adris.altoclef.TaskCatalogue;
-import adris.altoclef.tasks.ResourceTask;
-import adris.altoclef.tasks.resources.CollectFuelTask;
-import adris.altoclef.tasks.slot.MoveInaccessibleItemToInventoryTask;
-import adris.altoclef.tasks.slot.MoveItemToSlotFromInventoryTask;
-import adris.altoclef.tasksystem.Task;
-import adris.altoclef.util.ItemTarget;
-import adris.altoclef.util.MiningRequirement;
 import adris.altoclef.util.SmeltTarget;
-import adris.altoclef.util.helpers.ItemHelper;
-import adris.altoclef.util.helpers.StorageHelper;
-import adris.altoclef.util.slots.FurnaceSlot;
-import adris.altoclef.util.slots.Slot;
-import net.minecraft.block.Blocks;
-import net.minecraft.item.Item;
-import net.minecraft.item.ItemStack;
-import net.minecraft.item.Items;
-import net.minecraft.screen.FurnaceScreenHandler;
-import net.minecraft.screen.slot.SlotActionType;
-import net.minecraft.util.math.BlockPos;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-import java.util.stream.Stream;
-
-
-// Ref
-// https://minecraft.gamepedia.com/Smelting
 
 /**
- * Smelt in a furnace, placing a furnace and collecting fuel as needed.
+ * Smelt, placing a furnace and collecting fuel as needed.
+ * <p>
+ * Any smokers or blast furnaces around that can cook the input get used too, see {@link SmeltTask}.
  */
-public class SmeltInFurnaceTask extends ResourceTask {
-    private final SmeltTarget[] _targets;
-
-    private final DoSmeltInFurnaceTask _doTask;
+public class SmeltInFurnaceTask extends SmeltTask {
 
     public SmeltInFurnaceTask(SmeltTarget[] targets) {
-        super(extractItemTargets(targets));
-        _targets = targets;
-        // TODO: Do them in order.
-        _doTask = new DoSmeltInFurnaceTask(targets[0]);
+        super(SmelterType.FURNACE, targets);
     }
 
     public SmeltInFurnaceTask(SmeltTarget target) {
         this(new SmeltTarget[]{target});
     }
-
-    private static ItemTarget[] extractItemTargets(SmeltTarget[] recipeTargets) {
-        List<ItemTarget> result = new ArrayList<>(recipeTargets.length);
-        for (SmeltTarget target : recipeTargets) {
-            result.add(target.getItem());
-        }
-        return result.toArray(ItemTarget[]::new);
-    }
-
-    public void ignoreMaterials() {
-        _doTask.ignoreMaterials();
-    }
-
-    @Override
-    protected boolean shouldAvoidPickingUp(AltoClef mod) {
-        return false;
-    }
-
-    @Override
-    protected void onResourceStart(AltoClef mod) {
-        mod.getBehaviour().push();
-        if (_targets.length != 1) {
-            Debug.logWarning("Tried smelting multiple targets, only one target is supported at a time!");
-        }
-    }
-
-    @Override
-    protected Task onResourceTick(AltoClef mod) {
-        Optional<BlockPos> furnacePos = mod.getBlockScanner().getNearestBlock(Blocks.FURNACE);
-        furnacePos.ifPresent(blockPos -> mod.getBehaviour().avoidBlockBreaking(blockPos));
-        return _doTask;
-    }
-
-    @Override
-    protected void onResourceStop(AltoClef mod, Task interruptTask) {
-        mod.getBehaviour().pop();
-        // Close furnace screen
-        ItemStack cursorStack = StorageHelper.getItemStackInCursorSlot();
-        if (!cursorStack.isEmpty()) {
-            Optional<Slot> moveTo = mod.getItemStorage().getSlotThatCanFitInPlayerInventory(cursorStack, false);
-            moveTo.ifPresent(slot -> mod.getSlotHandler().clickSlot(slot, 0, SlotActionType.PICKUP));
-            if (ItemHelper.canThrowAwayStack(mod, cursorStack)) {
-                mod.getSlotHandler().clickSlot(Slot.UNDEFINED, 0, SlotActionType.PICKUP);
-            }
-            Optional<Slot> garbage = StorageHelper.getGarbageSlot(mod);
-            // Try throwing away cursor slot if it's garbage
-            garbage.ifPresent(slot -> mod.getSlotHandler().clickSlot(slot, 0, SlotActionType.PICKUP));
-            mod.getSlotHandler().clickSlot(Slot.UNDEFINED, 0, SlotActionType.PICKUP);
-        } else {
-            StorageHelper.closeScreen();
-        }
-    }
-
-    @Override
-    public boolean isFinished() {
-        return super.isFinished() || _doTask.isFinished();
-    }
-
-    @Override
-    protected boolean isEqualResource(ResourceTask other) {
-        if (other instanceof SmeltInFurnaceTask task) {
-            return task._doTask.isEqual(_doTask);
-        }
-        return false;
-    }
-
-    @Override
-    protected String toDebugStringName() {
-        return _doTask.toDebugString();
-    }
-
-    public SmeltTarget[] getTargets() {
-        return _targets;
-    }
-
-
-    static class DoSmeltInFurnaceTask extends DoStuffInContainerTask {
-
-        private final SmeltTarget target;
-        private final FurnaceCache furnaceCache = new FurnaceCache();
-        private final ItemTarget allMaterials;
-        private boolean ignoreMaterials;
-
-        public DoSmeltInFurnaceTask(SmeltTarget target) {
-            super(Blocks.FURNACE, new ItemTarget(Items.FURNACE));
-            this.target = target;
-            allMaterials = new ItemTarget(Stream.concat(Arrays.stream(this.target.getMaterial().getMatches()), Arrays.stream(this.target.getOptionalMaterials())).toArray(Item[]::new), this.target.getMaterial().getTargetCount());
-        }
-
-        public void ignoreMaterials() {
-            ignoreMaterials = true;
-        }
-
-        @Override
-        protected boolean isSubTaskEqual(DoStuffInContainerTask other) {
-            if (other instanceof DoSmeltInFurnaceTask task) {
-                return task.target.equals(target) && task.ignoreMaterials == ignoreMaterials;
-            }
-            return false;
-        }
-
-        @Override
-        protected boolean isContainerOpen(AltoClef mod) {
-            return (mod.getPlayer().currentScreenHandler instanceof FurnaceScreenHandler);
-        }
-
-        @Override
-        protected void onStart() {
-            super.onStart();
-            BotBehaviour botBehaviour = AltoClef.getInstance().getBehaviour();
-
-            botBehaviour.addProtectedItems(ItemHelper.PLANKS);
-            botBehaviour.addProtectedItems(Items.COAL);
-            botBehaviour.addProtectedItems(allMaterials.getMatches());
-            botBehaviour.addProtectedItems(target.getMaterial().getMatches());
-        }
-
-        @Override
-        protected Task onTick() {
-            AltoClef mod = AltoClef.getInstance();
-
-            tryUpdateOpenFurnace(mod);
-            // Include both regular + optional items
-            ItemTarget materialTarget = allMaterials;
-            ItemTarget outputTarget = target.getItem();
-            // Materials needed = (mat_target (- 0*mat_in_inventory) - out_in_inventory - mat_in_furnace - out_in_furnace)
-            // ^ 0 * mat_in_inventory because we always care aobut the TARGET materials, not how many LEFT there are.
-            int materialsNeeded = materialTarget.getTargetCount()
-                    /*- mod.getItemStorage().getItemCountInventoryOnly(materialTarget.getMatches())*/ // See comment above
-                    - mod.getItemStorage().getItemCountInventoryOnly(outputTarget.getMatches())
-                    - (materialTarget.matches(furnaceCache.materialSlot.getItem()) ? furnaceCache.materialSlot.getCount() : 0)
-                    - (outputTarget.matches(furnaceCache.outputSlot.getItem()) ? furnaceCache.outputSlot.getCount() : 0);
-            double totalFuelInFurnace = ItemHelper.getFuelAmount(furnaceCache.fuelSlot) + furnaceCache.burningFuelCount + furnaceCache.burnPercentage;
-            // Fuel needed = (mat_target - out_in_inventory - out_in_furnace - totalFuelInFurnace)
-            double fuelNeeded = ignoreMaterials
-                    ? Math.min(materialTarget.matches(furnaceCache.materialSlot.getItem()) ? furnaceCache.materialSlot.getCount() : 0, materialTarget.getTargetCount())
-                    : materialTarget.getTargetCount()
-                    /* - mod.getItemStorage().getItemCountInventoryOnly(materialTarget.getMatches()) */
-                    - mod.getItemStorage().getItemCountInventoryOnly(outputTarget.getMatches())
-                    - (outputTarget.matches(furnaceCache.outputSlot.getItem()) ? furnaceCache.outputSlot.getCount() : 0)
-                    - totalFuelInFurnace;
-
-            // We don't have enough materials...
-            if (mod.getItemStorage().getItemCount(materialTarget.getMatches()) < materialsNeeded) {
-                setDebugState("Getting Materials");
-                return getMaterialTask(target.getMaterial());
-            }
-
-            // We don't have enough fuel...
-            if (furnaceCache.burningFuelCount <= 0 && StorageHelper.calculateInventoryFuelCount(mod) < fuelNeeded) {
-                setDebugState("Getting Fuel");
-                return new CollectFuelTask(fuelNeeded + 1);
-            }
-
-            // Make sure our materials are accessible in our inventory
-            if (StorageHelper.isItemInaccessibleToContainer(mod, allMaterials)) {
-                return new MoveInaccessibleItemToInventoryTask(allMaterials);
-            }
-
-            // We have fuel and materials. Get to our container and smelt!
-            return super.onTick();
-        }
-
-        // Override this if our materials must be acquired in a special way.
-        // virtual
-        protected Task getMaterialTask(ItemTarget target) {
-            return TaskCatalogue.getItemTask(target);
-        }
-
-        @Override
-        protected Task containerSubTask(AltoClef mod) {
-            // We have appropriate materials/fuel.
-            /*
-             * - If output slot has something, receive it.
-             * - Calculate needed material input. If we don't have, put it in.
-             * - Calculate needed fuel input. If we don't have, put it in.
-             * - Wait lol
-             */
-            ItemStack output = StorageHelper.getItemStackInSlot(FurnaceSlot.OUTPUT_SLOT);
-            ItemStack material = StorageHelper.getItemStackInSlot(FurnaceSlot.INPUT_SLOT_MATERIALS);
-            ItemStack fuel = StorageHelper.getItemStackInSlot(FurnaceSlot.INPUT_SLOT_FUEL);
-
-            // Receive from output if present
-            double currentlyCachedWhileCooking = StorageHelper.getFurnaceFuel() + StorageHelper.getFurnaceCookPercent();
-            double needsWhileCooking = material.getCount() - currentlyCachedWhileCooking;
-            if (needsWhileCooking <= 0) {
-                if (!fuel.isEmpty()) {
-                    ItemStack cursor = StorageHelper.getItemStackInCursorSlot();
-                    if (!ItemHelper.canStackTogether(fuel, cursor)) {
-                        Optional<Slot> toFit = mod.getItemStorage().getSlotThatCanFitInPlayerInventory(cursor, false);
-                        if (toFit.isPresent()) {
-                            mod.getSlotHandler().clickSlot(toFit.get(), 0, SlotActionType.PICKUP);
-                            return null;
-                        } else {
-                            // Eh screw it
-                            if (ItemHelper.canThrowAwayStack(mod, cursor)) {
-                                mod.getSlotHandler().clickSlot(Slot.UNDEFINED, 0, SlotActionType.PICKUP);
-                                return null;
-                            }
-                        }
-                    }
-                    mod.getSlotHandler().clickSlot(FurnaceSlot.INPUT_SLOT_FUEL, 0, SlotActionType.PICKUP);
-                    return null;
-                }
-            }
-            if (!output.isEmpty()) {
-                setDebugState("Receiving Output");
-                // Ensure our cursor is empty/can receive our item
-                ItemStack cursor = StorageHelper.getItemStackInCursorSlot();
-                if (!ItemHelper.canStackTogether(output, cursor)) {
-                    Optional<Slot> toFit = mod.getItemStorage().getSlotThatCanFitInPlayerInventory(cursor, false);
-                    if (toFit.isPresent()) {
-                        mod.getSlotHandler().clickSlot(toFit.get(), 0, SlotActionType.PICKUP);
-                        return null;
-                    } else {
-                        // Eh screw it
-                        if (ItemHelper.canThrowAwayStack(mod, cursor)) {
-                            mod.getSlotHandler().clickSlot(Slot.UNDEFINED, 0, SlotActionType.PICKUP);
-                            return null;
-                        }
-                    }
-                }
-                // Pick up
-                mod.getSlotHandler().clickSlot(FurnaceSlot.OUTPUT_SLOT, 0, SlotActionType.PICKUP);
-                return null;
-                // return new MoveItemToSlotTask(new ItemTarget(output.getItem(), output.getCount()), toMoveTo.get(), mod -> FurnaceSlot.OUTPUT_SLOT);
-            }
-
-            // Fill in input if needed
-            // Materials needed in slot = (mat_target - out_in_inventory - out_in_furnace)
-            ItemTarget materialTarget = allMaterials;
-
-            int neededMaterialsInSlot = materialTarget.getTargetCount()
-                    - mod.getItemStorage().getItemCountInventoryOnly(target.getItem().getMatches())
-                    - (target.getItem().matches(output.getItem()) ? output.getCount() : 0);
-            // We don't have the right material or we need more
-            if (!allMaterials.matches(material.getItem()) || neededMaterialsInSlot > material.getCount()) {
-                int materialsAlreadyIn = (materialTarget.matches(material.getItem()) ? material.getCount() : 0);
-                setDebugState("Moving Materials");
-                return new MoveItemToSlotFromInventoryTask(new ItemTarget(materialTarget, neededMaterialsInSlot - materialsAlreadyIn), FurnaceSlot.INPUT_SLOT_MATERIALS);
-            }
-
-            /*
-            double currentFuel = _ignoreMaterials
-                    ? (Math.min(materialTarget.matches(_furnaceCache.materialSlot.getItem()) ? _furnaceCache.materialSlot.getCount() : 0, materialTarget.getTargetCount())
-                    : materialTarget.getTargetCount()
-                    - mod.getItemStorage().getItemCountInventoryOnly(materialTarget.getMatches())
-                    - mod.getItemStorage().getItemCountInventoryOnly(outputTarget.getMatches())
-                    - (outputTarget.matches(_furnaceCache.outputSlot.getItem()) ? _furnaceCache.outputSlot.getCount() : 0)
-                    - totalFuelInFurnace;
-             */
-            // Fill in fuel if needed
-            if (fuel.isEmpty() || ItemHelper.isFuel(fuel.getItem())) {
-                double currentlyCached = StorageHelper.getFurnaceFuel() + StorageHelper.getFurnaceCookPercent();
-                double needs = material.getCount() - currentlyCached;
-                if (needs > 0) {
-                    // Get best fuel to fill
-                    double closestDelta = Double.NEGATIVE_INFINITY;
-                    ItemStack bestStack = null;
-                    for (ItemStack stack : mod.getItemStorage().getItemStacksPlayerInventory(true)) {
-                        if (mod.getModSettings().isSupportedFuel(stack.getItem())) {
-                            double fuelAmount = ItemHelper.getFuelAmount(stack.getItem()) * stack.getCount();
-                            double delta = needs - fuelAmount;
-                            if (
-                                    (bestStack == null) ||
-                                            // If our best is above, prioritize lower values
-                                            (closestDelta > 0 && delta < closestDelta) ||
-                                            // If our best is below, prioritize higher below values
-                                            (delta < 0 && delta > closestDelta)
-                            ) {
-                                bestStack = stack;
-                                closestDelta = delta;
-                            }
-                        }
-                    }
-                    if (bestStack != null) {
-                        setDebugState("Filling fuel");
-                        return new MoveItemToSlotFromInventoryTask(new ItemTarget(bestStack.getItem(), bestStack.getCount()), FurnaceSlot.INPUT_SLOT_FUEL);
-                    }
-                }
-            }
-
-            setDebugState("Waiting...");
-            return null;
-        }
-
-        @Override
-        protected double getCostToMakeNew(AltoClef mod) {
-            if (furnaceCache.burnPercentage > 0 || furnaceCache.burningFuelCount > 0 ||
-                    !furnaceCache.fuelSlot.isEmpty() || !furnaceCache.materialSlot.isEmpty() ||
-                    !furnaceCache.outputSlot.isEmpty()) {
-                return 9999999.0;
-            }
-            if (mod.getItemStorage().getItemCount(Items.COBBLESTONE) > 8) {
-                double cost = 100.0 - 90.0 * (double) mod.getItemStorage().getItemCount(new Item[]{Items.COBBLESTONE}) / 8.0;
-                return Math.max(cost, 10.0);
-            }
-            return StorageHelper.miningRequirementMetInventory(MiningRequirement.WOOD) ? 50.0 : 100.0;
-        }
-
-        @Override
-        protected BlockPos overrideContainerPosition(AltoClef mod) {
-            // If we have a valid container position, KEEP it.
-            return getTargetContainerPosition();
-        }
-
-        private void tryUpdateOpenFurnace(AltoClef mod) {
-            if (isContainerOpen(mod)) {
-                // Update current furnace cache
-                furnaceCache.burnPercentage = StorageHelper.getFurnaceCookPercent();
-                furnaceCache.burningFuelCount = StorageHelper.getFurnaceFuel();
-                furnaceCache.fuelSlot = StorageHelper.getItemStackInSlot(FurnaceSlot.INPUT_SLOT_FUEL);
-                furnaceCache.materialSlot = StorageHelper.getItemStackInSlot(FurnaceSlot.INPUT_SLOT_MATERIALS);
-                furnaceCache.outputSlot = StorageHelper.getItemStackInSlot(FurnaceSlot.OUTPUT_SLOT);
-            }
-        }
-    }
-
-    static class FurnaceCache {
-        public ItemStack materialSlot = ItemStack.EMPTY;
-        public ItemStack fuelSlot = ItemStack.EMPTY;
-        public ItemStack outputSlot = ItemStack.EMPTY;
-        public double burningFuelCount = 0;
-        public double burnPercentage = 0;
-    }
 }
@@ -0,0 +1,531 @@
+package adris.altoclef.tasks.container;
+
+import adris.altoclef.AltoClef;
+import adris.altoclef.BotBehaviour;
+import adris.altoclef.TaskCatalogue;
+import adris.altoclef.multiversion.blockpos.BlockPosVer;
+import adris.altoclef.tasks.ResourceTask;
+import adris.altoclef.tasks.resources.CollectFuelTask;
+import adris.altoclef.tasks.slot.EnsureFreeInventorySlotTask;
+import adris.altoclef.tasks.slot.MoveInaccessibleItemToInventoryTask;
+import adris.altoclef.tasks.slot.MoveItemToSlotFromInventoryTask;
+import adris.altoclef.tasksystem.Task;
+import adris.altoclef.trackers.storage.ContainerCache;
+import adris.altoclef.util.ItemTarget;
+import adris.altoclef.util.MiningRequirement;
+import adris.altoclef.util.SmeltTarget;
+import adris.altoclef.util.helpers.ItemHelper;
+import adris.altoclef.util.helpers.StorageHelper;
+import adris.altoclef.util.helpers.WorldHelper;
+import adris.altoclef.util.slots.Slot;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.screen.slot.SlotActionType;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Ref
+// https://minecraft.gamepedia.com/Smelting
+
+/**
+ * Smelts a batch of targets, in order, across every furnace, smoker and blast furnace around.
+ * <p>
+ * Each target gets spread over the nearby smelters that can cook its input, the fastest kind
+ * first. We load them one after the other and keep loading (fuel and input) while the others
+ * cook, then go round collecting from whichever should be done first. If there are no smelters
+ * around, one of `placeType` gets placed like before.
+ */
+public class SmeltTask extends ResourceTask {
+
+    // Smelters further than this aren't worth walking to
+    private static final double SMELTER_RANGE = 64;
+    private static final int MAX_SMELTERS = 8;
+    // Below this many items per smelter it isn't worth spreading out (one coal's worth)
+    private static final int MIN_ITEMS_PER_SMELTER = 8;
+    private static final int MAX_ITEMS_PER_SMELTER = 64;
+
+    private final SmeltTarget[] targets;
+    private final SmelterType placeType;
+    private final List<Job> jobs = new ArrayList<>();
+    private boolean ignoreMaterials = false;
+    private SmeltTarget currentTarget = null;
+    private ItemTarget currentMaterials = null;
+    private SmeltVisitTask visitTask = null;
+
+    public SmeltTask(SmelterType placeType, SmeltTarget... targets) {
+        super(extractItemTargets(targets));
+        this.placeType = placeType;
+        this.targets = targets;
+    }
+
+    private static ItemTarget[] extractItemTargets(SmeltTarget[] recipeTargets) {
+        List<ItemTarget> result = new ArrayList<>(recipeTargets.length);
+        for (SmeltTarget target : recipeTargets) {
+            result.add(target.getItem());
+        }
+        return result.toArray(ItemTarget[]::new);
+    }
+
+    private static ItemTarget getAllMaterials(SmeltTarget target) {
+        // Include both regular + optional items
+        return new ItemTarget(Stream.concat(Arrays.stream(target.getMaterial().getMatches()), Arrays.stream(target.getOptionalMaterials())).toArray(Item[]::new), target.getMaterial().getTargetCount());
+    }
+
+    /**
+     * Only smelt the materials we already have, don't go get more.
+     */
+    public void ignoreMaterials() {
+        ignoreMaterials = true;
+    }
+
+    public SmeltTarget[] getTargets() {
+        return targets;
+    }
+
+    @Override
+    protected boolean shouldAvoidPickingUp(AltoClef mod) {
+        return false;
+    }
+
+    @Override
+    protected void onResourceStart(AltoClef mod) {
+        BotBehaviour botBehaviour = mod.getBehaviour();
+        botBehaviour.push();
+        botBehaviour.addProtectedItems(ItemHelper.PLANKS);
+        botBehaviour.addProtectedItems(Items.COAL);
+        for (SmeltTarget target : targets) {
+            botBehaviour.addProtectedItems(getAllMaterials(target).getMatches());
+        }
+        // Don't break the smelters we're cooking in
+        botBehaviour.avoidBlockBreaking(pos -> jobs.stream().anyMatch(job -> pos.equals(job.pos)));
+    }
+
+    @Override
+    protected Task onResourceTick(AltoClef mod) {
+        SmeltTarget target = getUnfinishedTarget(mod);
+        if (target == null) {
+            return null;
+        }
+        if (target != currentTarget) {
+            // Whatever's left in the smelters from the last target is extra
+            currentTarget = target;
+            currentMaterials = getAllMaterials(target);
+            jobs.clear();
+            visitTask = null;
+        }
+        ItemTarget outputTarget = target.getItem();
+
+        // Smelters that got broken, or are done with their share
+        jobs.removeIf(job -> job.remaining <= 0 || (job.pos != null && mod.getChunkTracker().isChunkLoaded(job.pos)
+                && !mod.getBlockScanner().isBlockAtPosition(job.pos, job.type.block)));
+
+        int owed = 0;
+        int toInsert = 0;
+        double fuelNeeded = 0;
+        for (Job job : jobs) {
+            owed += job.remaining;
+            toInsert += job.getToInsert();
+            fuelNeeded += Math.max(0, job.remaining - job.output - job.fuel);
+        }
+        int materialsInInventory = mod.getItemStorage().getItemCountInventoryOnly(currentMaterials.getMatches());
+        int toAssign = outputTarget.getTargetCount() - mod.getItemStorage().getItemCountInventoryOnly(outputTarget.getMatches()) - owed;
+        if (ignoreMaterials) {
+            toAssign = Math.min(toAssign, materialsInInventory - toInsert);
+        }
+        if (toAssign > 0) {
+            assignJobs(mod, toAssign);
+            toInsert += toAssign;
+            fuelNeeded += toAssign;
+        }
+
+        // We don't have enough materials...
+        if (!ignoreMaterials && materialsInInventory < toInsert) {
+            setDebugState("Getting Materials");
+            return getMaterialTask(new ItemTarget(target.getMaterial(), toInsert));
+        }
+
+        // We don't have enough fuel...
+        if (StorageHelper.calculateInventoryFuelCount(mod) < fuelNeeded) {
+            setDebugState("Getting Fuel");
+            return new CollectFuelTask(fuelNeeded + 1);
+        }
+
+        // Make sure our materials are accessible in our inventory
+        if (StorageHelper.isItemInaccessibleToContainer(mod, currentMaterials)) {
+            return new MoveInaccessibleItemToInventoryTask(currentMaterials);
+        }
+
+        if (visitTask != null && visitTask.isActive() && !visitTask.isFinished() && jobs.contains(visitTask.job)) {
+            return visitTask;
+        }
+        if (visitTask != null) {
+            StorageHelper.closeScreen();
+        }
+
+        Job next = getNextJob(mod);
+        if (next == null) {
+            setDebugState("Waiting...");
+            return null;
+        }
+        visitTask = new SmeltVisitTask(next, currentMaterials, outputTarget, !next.needsLoading());
+        setDebugState((visitTask.waitForOutput ? "Collecting from " : "Loading ") + next);
+        return visitTask;
+    }
+
+    // Override this if our materials must be acquired in a special way.
+    // virtual
+    protected Task getMaterialTask(ItemTarget target) {
+        return TaskCatalogue.getItemTask(target);
+    }
+
+    private SmeltTarget getUnfinishedTarget(AltoClef mod) {
+        for (SmeltTarget target : targets) {
+            if (mod.getItemStorage().getItemCountInventoryOnly(target.getItem().getMatches()) < target.getItem().getTargetCount()) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Spreads `count` more items over the smelters around, topping up the ones we use already first.
+     */
+    private void assignJobs(AltoClef mod, int count) {
+        for (Job job : jobs) {
+            int add = Math.min(count, MAX_ITEMS_PER_SMELTER - job.remaining);
+            if (add > 0) {
+                job.remaining += add;
+                count -= add;
+            }
+        }
+        if (count <= 0) return;
+
+        List<Job> found = findSmelters(mod);
+        int smelters = Math.max(1, Math.min(found.size(), Math.min(MAX_SMELTERS - jobs.size(), (count + MIN_ITEMS_PER_SMELTER - 1) / MIN_ITEMS_PER_SMELTER)));
+        if (found.isEmpty()) {
+            // Nothing around, go to the nearest or place one
+            found.add(new Job(null, placeType));
+        }
+        List<Job> added = found.subList(0, Math.min(smelters, found.size()));
+        // Faster smelters get a bigger share
+        double totalSpeed = 0;
+        for (Job job : added) {
+            totalSpeed += 1.0 / job.type.cookTicks;
+        }
+        int left = count;
+        for (Job job : added) {
+            int share = (int) Math.ceil(count * (1.0 / job.type.cookTicks) / totalSpeed);
+            job.remaining = Math.min(Math.min(share, left), MAX_ITEMS_PER_SMELTER);
+            left -= job.remaining;
+            jobs.add(job);
+        }
+        if (left > 0) {
+            // Everything's full, the first one gets the rest once it's emptied
+            added.get(0).remaining += left;
+        }
+    }
+
+    /**
+     * Known smelters nearby that can cook our input and aren't busy with something else, fastest and closest first.
+     */
+    private List<Job> findSmelters(AltoClef mod) {
+        Item[] inputs = currentMaterials.getMatches();
+        Vec3d playerPos = mod.getPlayer().getPos();
+        List<Job> result = new ArrayList<>();
+        for (SmelterType type : SmelterType.values()) {
+            if (!type.canSmeltAny(inputs)) continue;
+            for (BlockPos pos : mod.getBlockScanner().getKnownLocationsWithinRange(playerPos, SMELTER_RANGE, type.block)) {
+                if (jobs.stream().anyMatch(job -> pos.equals(job.pos)) || !WorldHelper.canReach(pos)) continue;
+                Optional<ContainerCache> cache = mod.getItemStorage().getContainerAtPosition(pos);
+                if (cache.isPresent() && isBusy(cache.get())) continue;
+                result.add(new Job(pos, type));
+            }
+        }
+        result.sort(Comparator.comparingInt((Job job) -> job.type.cookTicks)
+                .thenComparingDouble(job -> BlockPosVer.getSquaredDistance(job.pos, playerPos)));
+        return result;
+    }
+
+    private boolean isBusy(ContainerCache cache) {
+        for (Item item : cache.getItemCounts().keySet()) {
+            if (!currentMaterials.matches(item) && !currentTarget.getItem().matches(item) && !ItemHelper.isFuel(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loading comes first, nearest first. Once everything's loaded, go wait at whichever should be done first.
+     */
+    private Job getNextJob(AltoClef mod) {
+        Vec3d playerPos = mod.getPlayer().getPos();
+        Job nearest = null;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (Job job : jobs) {
+            if (!job.needsLoading()) continue;
+            double distance = job.pos == null ? 0 : BlockPosVer.getSquaredDistance(job.pos, playerPos);
+            if (distance < nearestDistance) {
+                nearest = job;
+                nearestDistance = distance;
+            }
+        }
+        if (nearest != null) return nearest;
+
+        return jobs.stream().min(Comparator.comparingLong(Job::getDoneTime)).orElse(null);
+    }
+
+    @Override
+    protected void onResourceStop(AltoClef mod, Task interruptTask) {
+        mod.getBehaviour().pop();
+        // Close smelter screen
+        ItemStack cursorStack = StorageHelper.getItemStackInCursorSlot();
+        if (!cursorStack.isEmpty()) {
+            Optional<Slot> moveTo = mod.getItemStorage().getSlotThatCanFitInPlayerInventory(cursorStack, false);
+            moveTo.ifPresent(slot -> mod.getSlotHandler().clickSlot(slot, 0, SlotActionType.PICKUP));
+            if (ItemHelper.canThrowAwayStack(mod, cursorStack)) {
+                mod.getSlotHandler().clickSlot(Slot.UNDEFINED, 0, SlotActionType.PICKUP);
+            }
+            Optional<Slot> garbage = StorageHelper.getGarbageSlot(mod);
+            // Try throwing away cursor slot if it's garbage
+            garbage.ifPresent(slot -> mod.getSlotHandler().clickSlot(slot, 0, SlotActionType.PICKUP));
+            mod.getSlotHandler().clickSlot(Slot.UNDEFINED, 0, SlotActionType.PICKUP);
+        } else {
+            StorageHelper.closeScreen();
+        }
+    }
+
+    @Override
+    protected boolean isEqualResource(ResourceTask other) {
+        if (other instanceof SmeltTask task) {
+            return task.getClass() == getClass() && task.placeType == placeType
+                    && Arrays.equals(task.targets, targets) && task.ignoreMaterials == ignoreMaterials;
+        }
+        return false;
+    }
+
+    @Override
+    protected String toDebugStringName() {
+        return "Smelting " + Arrays.toString(extractItemTargets(targets)) + " in " + Math.max(jobs.size(), 1) + " smelter(s)";
+    }
+
+    /**
+     * One smelter and our share of the batch in it.
+     */
+    private static class Job {
+        // Null until we know which one (when we're going to the nearest or placing one)
+        private BlockPos pos;
+        private final SmelterType type;
+        // Items this smelter still owes us: input not yet put in, cooking, or waiting in the output
+        private int remaining = 0;
+        // What we saw last time it was open
+        private int input = 0;
+        private int output = 0;
+        private double fuel = 0;
+        private double cookProgress = 0;
+        private long seenAt = 0;
+
+        Job(BlockPos pos, SmelterType type) {
+            this.pos = pos;
+            this.type = type;
+        }
+
+        int getToInsert() {
+            return Math.max(0, remaining - input - output);
+        }
+
+        boolean needsLoading() {
+            return seenAt == 0 || getToInsert() > 0 || fuel < input - cookProgress;
+        }
+
+        /**
+         * When the last of its input should be cooked, in ms.
+         */
+        long getDoneTime() {
+            return seenAt + (long) ((input - cookProgress) * type.cookTicks * 50);
+        }
+
+        @Override
+        public String toString() {
+            return type.name().toLowerCase() + (pos != null ? " at " + pos.toShortString() : "");
+        }
+    }
+
+    /**
+     * Goes to one smelter, takes out what's cooked and puts in input and fuel for its share.
+     * If `waitForOutput`, sticks around until all of it is cooked.
+     */
+    private static class SmeltVisitTask extends DoStuffInContainerTask {
+
+        private final Job job;
+        private final ItemTarget materials;
+        private final ItemTarget outputTarget;
+        private final boolean waitForOutput;
+        private boolean done = false;
+
+        public SmeltVisitTask(Job job, ItemTarget materials, ItemTarget outputTarget, boolean waitForOutput) {
+            super(job.type.block, new ItemTarget(job.type.item));
+            this.job = job;
+            this.materials = materials;
+            this.outputTarget = outputTarget;
+            this.waitForOutput = waitForOutput;
+        }
+
+        @Override
+        protected boolean isSubTaskEqual(DoStuffInContainerTask other) {
+            return other instanceof SmeltVisitTask task && task.job == job && task.waitForOutput == waitForOutput;
+        }
+
+        @Override
+        protected boolean isContainerOpen(AltoClef mod) {
+            return job.type.isOpen();
+        }
+
+        @Override
+        protected Task containerSubTask(AltoClef mod) {
+            if (job.pos == null) {
+                job.pos = getTargetContainerPosition();
+            }
+            ItemStack output = StorageHelper.getItemStackInSlot(job.type.outputSlot);
+            ItemStack material = StorageHelper.getItemStackInSlot(job.type.materialSlot);
+            ItemStack fuel = StorageHelper.getItemStackInSlot(job.type.fuelSlot);
+            job.input = materials.matches(material.getItem()) ? material.getCount() : 0;
+            job.output = outputTarget.matches(output.getItem()) ? output.getCount() : 0;
+            job.cookProgress = StorageHelper.getFurnaceCookPercent();
+            job.fuel = job.type.getBurningFuel() + (ItemHelper.isFuel(fuel.getItem()) ? ItemHelper.getFuelAmount(fuel) : 0);
+            job.seenAt = System.currentTimeMillis();
+
+            ItemStack cursor = StorageHelper.getItemStackInCursorSlot();
+            if (!cursor.isEmpty() && !materials.matches(cursor.getItem()) && !mod.getModSettings().isSupportedFuel(cursor.getItem())) {
+                // Ensure our cursor is empty/can receive our item
+                Optional<Slot> toFit = mod.getItemStorage().getSlotThatCanFitInPlayerInventory(cursor, false);
+                if (toFit.isPresent()) {
+                    mod.getSlotHandler().clickSlot(toFit.get(), 0, SlotActionType.PICKUP);
+                } else if (ItemHelper.canThrowAwayStack(mod, cursor)) {
+                    // Eh screw it
+                    mod.getSlotHandler().clickSlot(Slot.UNDEFINED, 0, SlotActionType.PICKUP);
+                }
+                return null;
+            }
+
+            // Receive from output if present
+            if (!output.isEmpty() && cursor.isEmpty()) {
+                setDebugState("Receiving Output");
+                // Clicks wait for the move delay, only count it once it actually went out
+                if (mod.getSlotHandler().clickSlot(job.type.outputSlot, 0, SlotActionType.PICKUP) && job.output > 0) {
+                    job.remaining -= job.output;
+                }
+                return null;
+            }
+
+            // Everything's cooking already, leftover fuel is better off in our inventory
+            if (job.input == 0 && job.getToInsert() == 0 && !fuel.isEmpty() && cursor.isEmpty()) {
+                mod.getSlotHandler().clickSlot(job.type.fuelSlot, 0, SlotActionType.QUICK_MOVE);
+                return null;
+            }
+
+            // Someone else's input is in the way, take it out first
+            if (!material.isEmpty() && job.input == 0 && cursor.isEmpty()) {
+                setDebugState("Clearing material slot");
+                if (mod.getItemStorage().getSlotThatCanFitInPlayerInventory(material, false).isEmpty()) {
+                    return new EnsureFreeInventorySlotTask();
+                }
+                mod.getSlotHandler().clickSlot(job.type.materialSlot, 0, SlotActionType.QUICK_MOVE);
+                return null;
+            }
+
+            // Fill in input if needed
+            int toInsert = Math.min(job.getToInsert(), mod.getItemStorage().getItemCountInventoryOnly(materials.getMatches()));
+            if (toInsert > 0) {
+                setDebugState("Moving Materials");
+                return new MoveItemToSlotFromInventoryTask(new ItemTarget(materials, job.input + toInsert), job.type.materialSlot);
+            }
+
+            // Fill in fuel if needed
+            if (fuel.isEmpty() || ItemHelper.isFuel(fuel.getItem())) {
+                double needs = job.input - job.cookProgress - job.fuel;
+                if (needs > 0) {
+                    Optional<ItemStack> bestStack = getBestFuel(mod, needs, fuel);
+                    if (bestStack.isPresent()) {
+                        setDebugState("Filling fuel");
+                        int fuelCount = fuel.isEmpty() ? 0 : fuel.getCount();
+                        return new MoveItemToSlotFromInventoryTask(new ItemTarget(bestStack.get().getItem(), fuelCount + bestStack.get().getCount()), job.type.fuelSlot);
+                    }
+                }
+            }
+
+            if (waitForOutput && job.input > 0) {
+                setDebugState("Waiting...");
+                return null;
+            }
+            if (job.input == 0 && job.output == 0 && job.getToInsert() == 0) {
+                // Anything we're still owed here went missing
+                job.remaining = 0;
+            }
+            done = true;
+            return null;
+        }
+
+        /**
+         * The stack that covers `needs` best without overshooting too much. Has to stack with what's in the fuel slot already.
+         */
+        private static Optional<ItemStack> getBestFuel(AltoClef mod, double needs, ItemStack inSlot) {
+            double closestDelta = Double.NEGATIVE_INFINITY;
+            ItemStack bestStack = null;
+            for (ItemStack stack : mod.getItemStorage().getItemStacksPlayerInventory(true)) {
+                if (!mod.getModSettings().isSupportedFuel(stack.getItem())) continue;
+                if (!inSlot.isEmpty() && !ItemHelper.canStackTogether(inSlot, stack)) continue;
+                double fuelAmount = ItemHelper.getFuelAmount(stack.getItem()) * stack.getCount();
+                double delta = needs - fuelAmount;
+                if (
+                        (bestStack == null) ||
+                                // If our best is above, prioritize lower values
+                                (closestDelta > 0 && delta < closestDelta) ||
+                                // If our best is below, prioritize higher below values
+                                (delta < 0 && delta > closestDelta)
+                ) {
+                    bestStack = stack;
+                    closestDelta = delta;
+                }
+            }
+            return Optional.ofNullable(bestStack);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return done;
+        }
+
+        @Override
+        protected double getCostToMakeNew(AltoClef mod) {
+            // We already put stuff in this one
+            if (job.seenAt != 0) {
+                return 9999999.0;
+            }
+            if (mod.getItemStorage().getItemCount(Items.COBBLESTONE) > 8) {
+                double cost = 100.0 - 90.0 * (double) mod.getItemStorage().getItemCount(new Item[]{Items.COBBLESTONE}) / 8.0;
+                return Math.max(cost, 10.0);
+            }
+            return StorageHelper.miningRequirementMetInventory(MiningRequirement.WOOD) ? 50.0 : 100.0;
+        }
+
+        @Override
+        protected BlockPos overrideContainerPosition(AltoClef mod) {
+            // Go to our smelter, or if we haven't picked one, keep the one we're heading to.
+            return job.pos != null ? job.pos : getTargetContainerPosition();
+        }
+
+        @Override
+        protected String toDebugString() {
+            return (waitForOutput ? "Collecting from " : "Loading ") + job;
+        }
+    }
+}
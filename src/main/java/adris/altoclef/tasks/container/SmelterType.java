@@ -0,0 +1,110 @@
+package adris.altoclef.tasks.container;
+
+import adris.altoclef.mixins.AbstractFurnaceScreenHandlerAccessor;
+import adris.altoclef.util.helpers.ItemHelper;
+import adris.altoclef.util.slots.BlastFurnaceSlot;
+import adris.altoclef.util.slots.FurnaceSlot;
+import adris.altoclef.util.slots.Slot;
+import adris.altoclef.util.slots.SmokerSlot;
+import net.minecraft.block.Block;
+import net.minecraft.block.Blocks;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.item.Item;
+import net.minecraft.item.Items;
+import net.minecraft.screen.AbstractFurnaceScreenHandler;
+import net.minecraft.screen.BlastFurnaceScreenHandler;
+import net.minecraft.screen.FurnaceScreenHandler;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.SmokerScreenHandler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The three blocks that smelt things. Smokers and blast furnaces cook twice as fast, but only
+ * food and ores respectively.
+ */
+public enum SmelterType {
+    FURNACE(Blocks.FURNACE, Items.FURNACE, 200, FurnaceSlot.INPUT_SLOT_MATERIALS, FurnaceSlot.INPUT_SLOT_FUEL, FurnaceSlot.OUTPUT_SLOT),
+    SMOKER(Blocks.SMOKER, Items.SMOKER, 100, SmokerSlot.INPUT_SLOT_MATERIALS, SmokerSlot.INPUT_SLOT_FUEL, SmokerSlot.OUTPUT_SLOT),
+    BLAST_FURNACE(Blocks.BLAST_FURNACE, Items.BLAST_FURNACE, 100, BlastFurnaceSlot.INPUT_SLOT_MATERIALS, BlastFurnaceSlot.INPUT_SLOT_FUEL, BlastFurnaceSlot.OUTPUT_SLOT);
+
+    private static final Set<Item> BLAST_FURNACE_INPUTS = new HashSet<>(Arrays.asList(
+            Items.RAW_IRON, Items.RAW_GOLD, Items.IRON_ORE, Items.GOLD_ORE, Items.NETHER_GOLD_ORE, Items.ANCIENT_DEBRIS
+    ));
+
+    static {
+        //#if MC >= 11701
+        Collections.addAll(BLAST_FURNACE_INPUTS, Items.RAW_COPPER, Items.COPPER_ORE,
+                Items.DEEPSLATE_IRON_ORE, Items.DEEPSLATE_GOLD_ORE, Items.DEEPSLATE_COPPER_ORE);
+        //#endif
+    }
+
+    public final Block block;
+    public final Item item;
+    // Ticks to cook one item
+    public final int cookTicks;
+    public final Slot materialSlot;
+    public final Slot fuelSlot;
+    public final Slot outputSlot;
+
+    SmelterType(Block block, Item item, int cookTicks, Slot materialSlot, Slot fuelSlot, Slot outputSlot) {
+        this.block = block;
+        this.item = item;
+        this.cookTicks = cookTicks;
+        this.materialSlot = materialSlot;
+        this.fuelSlot = fuelSlot;
+        this.outputSlot = outputSlot;
+    }
+
+    public static SmelterType fromBlock(Block block) {
+        for (SmelterType type : values()) {
+            if (type.block == block) return type;
+        }
+        return null;
+    }
+
+    public boolean canSmelt(Item input) {
+        return switch (this) {
+            case FURNACE -> true;
+            case SMOKER -> ItemHelper.cookableFoodMap.containsKey(input) || input == Items.KELP;
+            case BLAST_FURNACE -> BLAST_FURNACE_INPUTS.contains(input);
+        };
+    }
+
+    public boolean canSmeltAny(Item... inputs) {
+        for (Item input : inputs) {
+            if (canSmelt(input)) return true;
+        }
+        return false;
+    }
+
+    public boolean isOpen() {
+        ScreenHandler handler = getOpenHandler();
+        return switch (this) {
+            case FURNACE -> handler instanceof FurnaceScreenHandler;
+            case SMOKER -> handler instanceof SmokerScreenHandler;
+            case BLAST_FURNACE -> handler instanceof BlastFurnaceScreenHandler;
+        };
+    }
+
+    /**
+     * How many more items the burning fuel of the open smelter will cook.
+     * <p>
+     * Smokers and blast furnaces burn fuel twice as fast, so any fuel cooks the same number of items
+     * in all three.
+     */
+    public double getBurningFuel() {
+        if (getOpenHandler() instanceof AbstractFurnaceScreenHandler handler) {
+            return (double) ((AbstractFurnaceScreenHandlerAccessor) handler).getPropertyDelegate().get(0) / cookTicks;
+        }
+        return 0;
+    }
+
+    private static ScreenHandler getOpenHandler() {
+        MinecraftClient client = MinecraftClient.getInstance();
+        return client.player != null ? client.player.currentScreenHandler : null;
+    }
+}
@@ -22,6 +22,7 @@ import net.minecraft.util.math.Vec3d;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -251,6 +252,11 @@ public class PickupDroppedItemTask extends AbstractDoToClosestObjectTask<ItemEnt
                 itemTargets);
     }
 
+    @Override
+    protected List<ItemEntity> getClosestCandidates(AltoClef mod, Vec3d pos, int count) {
+        return mod.getEntityTracker().getClosestItemDrops(pos, count, itemTargets);
+    }
+
     @Override
     protected Vec3d getOriginPos(AltoClef mod) {
         return mod.getPlayer().getPos();
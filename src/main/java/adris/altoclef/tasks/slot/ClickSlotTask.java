@@ -41,9 +41,7 @@ public class ClickSlotTask extends Task {
     protected Task onTick() {
         SlotHandler slotHandler = AltoClef.getInstance().getSlotHandler();
 
-        if (slotHandler.canDoSlotAction()) {
-            slotHandler.clickSlot(slot, mouseButton, type);
-            slotHandler.registerSlotAction();
+        if (slotHandler.canDoSlotAction() && slotHandler.clickSlot(slot, mouseButton, type)) {
             clicked = true;
         }
         return null;
@@ -2,6 +2,7 @@ package adris.altoclef.tasks.slot;
 
 import adris.altoclef.AltoClef;
 import adris.altoclef.Debug;
+import adris.altoclef.control.SlotClickPlanner;
 import adris.altoclef.tasksystem.Task;
 import adris.altoclef.util.ItemTarget;
 import adris.altoclef.util.helpers.StlHelper;
@@ -9,9 +10,7 @@ import adris.altoclef.util.helpers.StorageHelper;
 import adris.altoclef.util.slots.Slot;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
-import net.minecraft.screen.slot.SlotActionType;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
@@ -37,54 +36,27 @@ public class MoveItemToSlotTask extends Task {
     protected Task onTick() {
         AltoClef mod = AltoClef.getInstance();
 
-        if (mod.getSlotHandler().canDoSlotAction()) {
-            // Rough plan
-            // - If empty slot or wrong item
-            //      Find best matching item (smallest count over target, or largest count if none over)
-            //      Click on it (one turn)
-            // - If held slot has < items than target count
-            //      Left click on destination slot (one turn)
-            // - If held slot has > items than target count
-            //      Right click on destination slot (one turn)
-            ItemStack currentHeld = StorageHelper.getItemStackInCursorSlot();
-            ItemStack atTarget = StorageHelper.getItemStackInSlot(destination);
-
-            // Items that CAN be moved to that slot.
-            Item[] validItems = toMove.getMatches();//Arrays.stream(_toMove.getMatches()).filter(item -> mod.getItemStorage().getItemCount(item) >= _toMove.getTargetCount()).toArray(Item[]::new);
+        // Let the last plan go through before we look at slots again
+        if (mod.getSlotHandler().isBatchPending()) {
+            return null;
+        }
 
-            // We need to deal with our cursor stack OR put an item there (to move).
-            boolean wrongItemHeld = !Arrays.asList(validItems).contains(currentHeld.getItem());
-            if (currentHeld.isEmpty() || wrongItemHeld) {
-                Optional<Slot> toPlace;
-                if (currentHeld.isEmpty()) {
-                    // Just pick up
-                    toPlace = getBestSlotToPickUp(mod, validItems);
-                } else {
-                    // Try to fit the currently held item first.
-                    toPlace = mod.getItemStorage().getSlotThatCanFitInPlayerInventory(currentHeld, true);
-                    if (toPlace.isEmpty()) {
-                        // If all else fails, just swap it.
-                        toPlace = getBestSlotToPickUp(mod, validItems);
-                    }
-                }
-                if (toPlace.isEmpty()) {
-                    Debug.logWarning("Called MoveItemToSlotTask when item/not enough item is available! valid items: " + StlHelper.toString(validItems, Item::getTranslationKey));
-                    this.stop();
-                    return null;
-                }
-                mod.getSlotHandler().clickSlot(toPlace.get(), 0, SlotActionType.PICKUP);
+        if (mod.getSlotHandler().canDoSlotAction()) {
+            // Plan the whole move at once:
+            // - Clear out whatever's in the way (wrong item in the destination or held)
+            // - Pick up the best matching stack (smallest count over target, or largest if none over)
+            // - Place all of it, or one at a time if that'd be too many
+            // - Put what's left back
+            Optional<SlotClickPlanner> plan = SlotClickPlanner.ofCurrentScreen();
+            if (plan.isEmpty()) {
                 return null;
             }
-
-            int currentlyPlaced = Arrays.asList(validItems).contains(atTarget.getItem()) ? atTarget.getCount() : 0;
-            if (currentHeld.getCount() + currentlyPlaced <= toMove.getTargetCount()) {
-                // Just place all of 'em
-                mod.getSlotHandler().clickSlot(destination, 0, SlotActionType.PICKUP);
-            } else {
-                // Place one at a time.
-                mod.getSlotHandler().clickSlot(destination, 1, SlotActionType.PICKUP);
+            if (!plan.get().fill(destination, toMove, toMove.getTargetCount(), getMovableSlots.apply(mod))) {
+                Debug.logWarning("Called MoveItemToSlotTask when item/not enough item is available! valid items: " + StlHelper.toString(toMove.getMatches(), Item::getTranslationKey));
+                this.stop();
+                return null;
             }
-            return null;
+            mod.getSlotHandler().queueClicks(plan.get());
         }
         return null;
     }
@@ -112,29 +84,4 @@ public class MoveItemToSlotTask extends Task {
     protected String toDebugString() {
         return "Moving " + toMove + " to " + destination;
     }
-
-    private Optional<Slot> getBestSlotToPickUp(AltoClef mod, Item[] validItems) {
-        Slot bestMatch = null;
-        if (!getMovableSlots.apply(mod).isEmpty()) {
-            for (Slot slot : getMovableSlots.apply(mod)) {
-                if (Slot.isCursor(slot))
-                    continue;
-                if (!toMove.matches(StorageHelper.getItemStackInSlot(slot).getItem()))
-                    continue;
-                if (bestMatch == null) {
-                    bestMatch = slot;
-                    continue;
-                }
-                int countBest = StorageHelper.getItemStackInSlot(bestMatch).getCount();
-                int countCheck = StorageHelper.getItemStackInSlot(slot).getCount();
-                if ((countBest < toMove.getTargetCount() && countCheck > countBest)
-                        || (countBest >= toMove.getTargetCount() && countCheck >= toMove.getTargetCount() && countCheck > countBest)) {
-                    // If we don't have enough, go for largest
-                    // If we have too much, go for smallest over the limit.
-                    bestMatch = slot;
-                }
-            }
-        }
-        return Optional.ofNullable(bestMatch);
-    }
 }
@@ -453,17 +453,10 @@ public class BeatMinecraftTask extends Task {
         ));
     }
 
-    // FIXME again, this is stupid.. but without a rewrite I cant use CraftingRecipeTracker due to the fact some recipes arent catalogued :')
+    // The catalogued recipe, CraftingRecipeTracker only has the server's version of it
     private RecipeTarget getRecipeTarget(Item item) {
-        ResourceTask task = TaskCatalogue.getItemTask(item, 1);
-        if (task instanceof CraftInTableTask craftInTableTask) {
-            return craftInTableTask.getRecipeTargets()[0];
-        } else if (task instanceof CraftInInventoryTask craftInInventoryTask) {
-            return craftInInventoryTask.getRecipeTarget();
-        }
-
-        throw new IllegalStateException("Item isn't cataloged");
-        //  return mod.getCraftingRecipeTracker().getFirstRecipeTarget(item, 1);
+        return TaskCatalogue.getRecipeGraph().getRecipeTarget(item, 1)
+                .orElseThrow(() -> new IllegalStateException("Item isn't cataloged"));
     }
 
     private void addPickupImportantItemsTask(AltoClef mod) {
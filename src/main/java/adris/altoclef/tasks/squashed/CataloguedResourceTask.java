@@ -1,12 +1,14 @@
 package adris.altoclef.tasks.squashed;
 
 import adris.altoclef.AltoClef;
+import adris.altoclef.Debug;
 import adris.altoclef.TaskCatalogue;
 import adris.altoclef.tasks.ResourceTask;
 import adris.altoclef.tasks.container.CraftInTableTask;
 import adris.altoclef.tasks.container.UpgradeInSmithingTableTask;
 import adris.altoclef.tasksystem.Task;
 import adris.altoclef.util.ItemTarget;
+import adris.altoclef.util.RecipeGraph;
 import adris.altoclef.util.helpers.StorageHelper;
 import org.apache.commons.lang3.ArrayUtils;
 
@@ -14,6 +16,9 @@ import java.util.*;
 
 public class CataloguedResourceTask extends ResourceTask {
 
+    // Products before what they're made of: a product's task gathers its own ingredients, so
+    // making one target never eats up another we already got.
+    private static final Comparator<ResourceTask> PRODUCTS_FIRST = Comparator.comparingInt(CataloguedResourceTask::getDepth).reversed();
 
     private final TaskSquasher squasher;
     private final ItemTarget[] targets;
@@ -25,14 +30,19 @@ public class CataloguedResourceTask extends ResourceTask {
         this.targets = targets;
         tasksToComplete = new ArrayList<>(targets.length);
 
+        RecipeGraph graph = TaskCatalogue.getRecipeGraph();
         for (ItemTarget target : targets) {
-            if (target != null) {
-                tasksToComplete.add(TaskCatalogue.getItemTask(target));
+            if (target == null) continue;
+            if (graph.getDepth(target) != Integer.MAX_VALUE && !graph.isReachable(target)) {
+                Debug.logWarning("Don't know how to get everything " + target + " is made of, trying anyway.");
             }
+            tasksToComplete.add(TaskCatalogue.getItemTask(target));
         }
 
         if (squash) {
             squashTasks(tasksToComplete);
+        } else {
+            tasksToComplete.sort(PRODUCTS_FIRST);
         }
     }
 
@@ -91,6 +101,19 @@ public class CataloguedResourceTask extends ResourceTask {
         return "Get catalogued: " + ArrayUtils.toString(targets);
     }
 
+    // Deepest of the task's targets in the recipe graph, uncatalogued ones go last
+    private static int getDepth(ResourceTask task) {
+        RecipeGraph graph = TaskCatalogue.getRecipeGraph();
+        int result = -1;
+        for (ItemTarget target : task.getItemTargets()) {
+            int depth = graph.getDepth(target);
+            if (depth != Integer.MAX_VALUE) {
+                result = Math.max(result, depth);
+            }
+        }
+        return result;
+    }
+
     private void squashTasks(List<ResourceTask> tasks) {
         squasher.addTasks(tasks);
         tasks.clear();
@@ -133,6 +156,7 @@ public class CataloguedResourceTask extends ResourceTask {
                 result.addAll(_squashMap.get(type).getSquashed());
             }
             result.addAll(_unSquashableTasks);
+            result.sort(PRODUCTS_FIRST);
 
             return result;
         }
@@ -2,6 +2,7 @@ package adris.altoclef.tasksystem;
 
 import adris.altoclef.Debug;
 import adris.altoclef.tasks.movement.TimeoutWanderTask;
+import adris.altoclef.util.time.TickProfiler;
 
 import java.util.function.Predicate;
 
@@ -20,6 +21,8 @@ public abstract class Task {
 
     public void tick(TaskChain parentChain) {
         parentChain.addTaskToChain(this);
+        // Only this task's own work, the sub task records its own time below
+        long start = System.nanoTime();
         if (first) {
             Debug.logInternal("Task START: " + this);
             active = true;
@@ -27,9 +30,13 @@ public abstract class Task {
             first = false;
             stopped = false;
         }
-        if (stopped) return;
+        if (stopped) {
+            TickProfiler.taskSection(getClass()).record(start);
+            return;
+        }
 
         Task newSub = onTick();
+        TickProfiler.taskSection(getClass()).record(start);
         // Debug state print
         if (!oldDebugState.equals(debugState)) {
             Debug.logInternal(toString());
@@ -1,5 +1,7 @@
 package adris.altoclef.tasksystem;
 
+import adris.altoclef.util.time.TickProfiler;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,13 +9,22 @@ public abstract class TaskChain {
 
     private final List<Task> cachedTaskChain = new ArrayList<>();
 
+    // Made lazily, the name isn't available while constructing
+    private TickProfiler.Section tickSection = null;
+    private TickProfiler.Section prioritySection = null;
+
     public TaskChain(TaskRunner runner) {
         runner.addTaskChain(this);
     }
 
     public void tick() {
         cachedTaskChain.clear();
+        if (tickSection == null) {
+            tickSection = TickProfiler.section("chain/" + getName());
+        }
+        long start = System.nanoTime();
         onTick();
+        tickSection.record(start);
     }
 
     public void stop() {
@@ -33,6 +44,13 @@ public abstract class TaskChain {
 
     public abstract String getName();
 
+    TickProfiler.Section getPrioritySection() {
+        if (prioritySection == null) {
+            prioritySection = TickProfiler.section("priority/" + getName());
+        }
+        return prioritySection;
+    }
+
     public List<Task> getTasks() {
         return cachedTaskChain;
     }
@@ -2,12 +2,14 @@ package adris.altoclef.tasksystem;
 
 import adris.altoclef.AltoClef;
 import adris.altoclef.Debug;
+import adris.altoclef.util.time.TickProfiler;
 
 import java.util.ArrayList;
 
 public class TaskRunner {
 
     private final ArrayList<TaskChain> chains = new ArrayList<>();
+    private final TickProfiler.Section prioritySection = TickProfiler.section("chains/priority");
     private final AltoClef mod;
     private boolean active;
 
@@ -27,16 +29,20 @@ public class TaskRunner {
         }
 
         // Get highest priority chain and run
+        long start = System.nanoTime();
         TaskChain maxChain = null;
         float maxPriority = Float.NEGATIVE_INFINITY;
         for (TaskChain chain : chains) {
             if (!chain.isActive()) continue;
+            long chainStart = System.nanoTime();
             float priority = chain.getPriority();
+            chain.getPrioritySection().record(chainStart);
             if (priority > maxPriority) {
                 maxPriority = priority;
                 maxChain = chain;
             }
         }
+        prioritySection.record(start);
         if (cachedCurrentTaskChain != null && maxChain != cachedCurrentTaskChain) {
             cachedCurrentTaskChain.onInterrupt(maxChain);
         }
@@ -0,0 +1,169 @@
+package adris.altoclef.trackers;
+
+import adris.altoclef.AltoClef;
+import adris.altoclef.eventbus.EventBus;
+import adris.altoclef.eventbus.events.BlockChangedEvent;
+import adris.altoclef.eventbus.events.ChunkLoadEvent;
+import adris.altoclef.eventbus.events.ChunkUnloadEvent;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.EmptyChunk;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a block count per 16x16x16 chunk section around the player, so "what blocks are nearby"
+ * is a merge of a few cached histograms instead of a walk over the world.
+ * <p>
+ * Counting only ever happens on the client thread (in {@link #tick()}), a handful of sections per
+ * tick. Chunk loads and unloads drop a column's sections so they get counted again, block changes
+ * are applied to the counted sections directly.
+ * Queries like {@link #getBlockCountsAround} only read finished histograms and are safe from other
+ * threads, like the LLM executor.
+ */
+public class BlockHistogramTracker {
+
+    // Sections counted per tick, at most. One section is 4096 palette lookups.
+    private static final int SECTIONS_PER_TICK = 4;
+    // Sections within this many blocks of the player are kept counted.
+    private static final int TRACK_RADIUS = 16;
+
+    private static final Map<Block, String> blockNames = new ConcurrentHashMap<>();
+
+    private final AltoClef mod;
+
+    private final Map<Long, SectionHistogram> sections = new ConcurrentHashMap<>();
+
+    private record SectionHistogram(Map<Block, Integer> counts) {
+    }
+
+    public BlockHistogramTracker(AltoClef mod) {
+        this.mod = mod;
+
+        EventBus.subscribe(ChunkLoadEvent.class, evt -> onChunkChanged(evt.chunk.getPos()));
+        EventBus.subscribe(ChunkUnloadEvent.class, evt -> onChunkChanged(evt.chunkPos));
+        EventBus.subscribe(BlockChangedEvent.class, this::onBlocksChanged);
+    }
+
+    public void tick() {
+        if (!AltoClef.inGame()) return;
+
+        BlockPos center = mod.getPlayer().getBlockPos();
+        int budget = SECTIONS_PER_TICK;
+
+        int minY = Math.max(center.getY() - TRACK_RADIUS, mod.getWorld().getBottomY());
+        int maxY = Math.min(center.getY() + TRACK_RADIUS, mod.getWorld().getTopY() - 1);
+        for (int sx = ChunkSectionPos.getSectionCoord(center.getX() - TRACK_RADIUS); sx <= ChunkSectionPos.getSectionCoord(center.getX() + TRACK_RADIUS); ++sx) {
+            for (int sz = ChunkSectionPos.getSectionCoord(center.getZ() - TRACK_RADIUS); sz <= ChunkSectionPos.getSectionCoord(center.getZ() + TRACK_RADIUS); ++sz) {
+                for (int sy = ChunkSectionPos.getSectionCoord(minY); sy <= ChunkSectionPos.getSectionCoord(maxY); ++sy) {
+                    if (sections.containsKey(ChunkSectionPos.asLong(sx, sy, sz))) {
+                        continue;
+                    }
+                    if (countSection(sx, sy, sz)) {
+                        if (--budget <= 0) return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums up the cached histograms of all sections overlapping the cube around `center`.
+     * Sections that haven't been counted yet are skipped, air is never counted.
+     */
+    public Map<String, Integer> getBlockCountsAround(BlockPos center, int radius) {
+        Map<String, Integer> result = new HashMap<>();
+        int minY = center.getY() - radius;
+        int maxY = center.getY() + radius;
+        for (int sx = ChunkSectionPos.getSectionCoord(center.getX() - radius); sx <= ChunkSectionPos.getSectionCoord(center.getX() + radius); ++sx) {
+            for (int sz = ChunkSectionPos.getSectionCoord(center.getZ() - radius); sz <= ChunkSectionPos.getSectionCoord(center.getZ() + radius); ++sz) {
+                for (int sy = ChunkSectionPos.getSectionCoord(minY); sy <= ChunkSectionPos.getSectionCoord(maxY); ++sy) {
+                    SectionHistogram histogram = sections.get(ChunkSectionPos.asLong(sx, sy, sz));
+                    if (histogram == null) continue;
+                    for (Map.Entry<Block, Integer> entry : histogram.counts().entrySet()) {
+                        result.merge(getBlockName(entry.getKey()), entry.getValue(), Integer::sum);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public void reset() {
+        sections.clear();
+    }
+
+    private void onChunkChanged(ChunkPos pos) {
+        // Drop everything in the column, loaded chunks get recounted once they're in range.
+        sections.keySet().removeIf(key -> ChunkSectionPos.unpackX(key) == pos.x && ChunkSectionPos.unpackZ(key) == pos.z);
+    }
+
+    private void onBlocksChanged(BlockChangedEvent evt) {
+        // Gather the changes per counted section, then swap in one updated copy of each
+        Map<Long, Map<Block, Integer>> updated = new HashMap<>();
+        for (int i = 0; i < evt.size; ++i) {
+            long pos = evt.positions[i];
+            long key = ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(pos)),
+                    ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(pos)),
+                    ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(pos)));
+            SectionHistogram histogram = sections.get(key);
+            if (histogram == null) continue;
+            Map<Block, Integer> counts = updated.computeIfAbsent(key, k -> new HashMap<>(histogram.counts()));
+            BlockState oldState = evt.getOldState(i);
+            BlockState newState = evt.getNewState(i);
+            if (!oldState.isAir()) {
+                counts.computeIfPresent(oldState.getBlock(), (block, count) -> count > 1 ? count - 1 : null);
+            }
+            if (!newState.isAir()) {
+                getBlockName(newState.getBlock());
+                counts.merge(newState.getBlock(), 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<Long, Map<Block, Integer>> entry : updated.entrySet()) {
+            sections.put(entry.getKey(), new SectionHistogram(Collections.unmodifiableMap(entry.getValue())));
+        }
+    }
+
+    /**
+     * @return whether the section could be counted (its chunk is loaded)
+     */
+    private boolean countSection(int sx, int sy, int sz) {
+        Chunk chunk = mod.getWorld().getChunk(sx, sz);
+        if (chunk instanceof EmptyChunk) return false;
+        int index = chunk.getSectionIndex(ChunkSectionPos.getBlockCoord(sy));
+        ChunkSection[] sectionArray = chunk.getSectionArray();
+        if (index < 0 || index >= sectionArray.length) return false;
+
+        ChunkSection section = sectionArray[index];
+        Map<Block, Integer> counts = new HashMap<>();
+        if (section != null && !section.isEmpty()) {
+            for (int y = 0; y < 16; ++y) {
+                for (int z = 0; z < 16; ++z) {
+                    for (int x = 0; x < 16; ++x) {
+                        BlockState state = section.getBlockState(x, y, z);
+                        if (!state.isAir()) {
+                            counts.merge(state.getBlock(), 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+        }
+        for (Block block : counts.keySet()) {
+            getBlockName(block);
+        }
+        sections.put(ChunkSectionPos.asLong(sx, sy, sz), new SectionHistogram(Collections.unmodifiableMap(counts)));
+        return true;
+    }
+
+    private static String getBlockName(Block block) {
+        return blockNames.computeIfAbsent(block, b -> b.getTranslationKey().replace("block.minecraft.", ""));
+    }
+}
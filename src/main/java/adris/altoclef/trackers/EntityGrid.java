@@ -0,0 +1,176 @@
+package adris.altoclef.trackers;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Entities bucketed by the chunk column they're in.
+ * <p>
+ * Closest-entity queries walk the columns in rings around the query point and stop once no
+ * further ring can hold anything closer. Entities are re-bucketed by {@link #update} when they
+ * cross a column border. Not thread-safe, {@link EntityTracker} guards it.
+ */
+final class EntityGrid<T extends Entity> {
+
+    private final Map<Long, List<T>> columns = new HashMap<>();
+    private final Map<T, Long> columnOf = new HashMap<>();
+
+    void add(T entity) {
+        if (columnOf.containsKey(entity)) return;
+        long column = columnKey(entity);
+        columnOf.put(entity, column);
+        columns.computeIfAbsent(column, c -> new ArrayList<>()).add(entity);
+    }
+
+    void remove(T entity) {
+        Long column = columnOf.remove(entity);
+        if (column != null) {
+            removeFromColumn(column, entity);
+        }
+    }
+
+    /**
+     * Moves the entity to the column it's in now, if that changed.
+     */
+    void update(T entity) {
+        Long column = columnOf.get(entity);
+        if (column == null) return;
+        long current = columnKey(entity);
+        if (current != column) {
+            removeFromColumn(column, entity);
+            columnOf.put(entity, current);
+            columns.computeIfAbsent(current, c -> new ArrayList<>()).add(entity);
+        }
+    }
+
+    boolean contains(T entity) {
+        return columnOf.containsKey(entity);
+    }
+
+    boolean isEmpty() {
+        return columnOf.isEmpty();
+    }
+
+    void forEach(Consumer<T> action) {
+        for (List<T> entities : columns.values()) {
+            entities.forEach(action);
+        }
+    }
+
+    List<T> toList() {
+        return new ArrayList<>(columnOf.keySet());
+    }
+
+    /**
+     * The entity with the lowest `cost` that passes `accept`.
+     *
+     * @param lowerBound the lowest cost possible for an entity this far away horizontally
+     */
+    T closest(Vec3d from, ToDoubleFunction<T> cost, DoubleUnaryOperator lowerBound, Predicate<T> accept) {
+        if (columns.isEmpty()) return null;
+        int originX = ChunkSectionPos.getSectionCoord((int) Math.floor(from.x));
+        int originZ = ChunkSectionPos.getSectionCoord((int) Math.floor(from.z));
+        int maxRing = 0;
+        for (long column : columns.keySet()) {
+            maxRing = Math.max(maxRing, Math.max(Math.abs(ChunkPos.getPackedX(column) - originX), Math.abs(ChunkPos.getPackedZ(column) - originZ)));
+        }
+
+        T closest = null;
+        double minCost = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Everything in this ring is at least (ring - 1) columns away horizontally
+            if (ring > 1 && lowerBound.applyAsDouble((ring - 1) * 16) >= minCost) break;
+            for (int dx = -ring; dx <= ring; dx++) {
+                // Only the border of the ring
+                int step = (Math.abs(dx) == ring) ? 1 : ring * 2;
+                for (int dz = -ring; dz <= ring; dz += step) {
+                    List<T> entities = columns.get(ChunkPos.toLong(originX + dx, originZ + dz));
+                    if (entities == null) continue;
+                    for (T entity : entities) {
+                        double entityCost = cost.applyAsDouble(entity);
+                        if (entityCost < minCost && accept.test(entity)) {
+                            minCost = entityCost;
+                            closest = entity;
+                        }
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Up to `count` entities with the lowest `cost` that pass `accept`, lowest first.
+     *
+     * @param lowerBound the lowest cost possible for an entity this far away horizontally
+     */
+    List<T> nearest(Vec3d from, int count, ToDoubleFunction<T> cost, DoubleUnaryOperator lowerBound, Predicate<T> accept) {
+        if (columns.isEmpty() || count <= 0) return new ArrayList<>();
+        int originX = ChunkSectionPos.getSectionCoord((int) Math.floor(from.x));
+        int originZ = ChunkSectionPos.getSectionCoord((int) Math.floor(from.z));
+        int maxRing = 0;
+        for (long column : columns.keySet()) {
+            maxRing = Math.max(maxRing, Math.max(Math.abs(ChunkPos.getPackedX(column) - originX), Math.abs(ChunkPos.getPackedZ(column) - originZ)));
+        }
+
+        // Worst of the best so far on top
+        HashMap<T, Double> costs = new HashMap<>();
+        PriorityQueue<T> best = new PriorityQueue<>(Comparator.comparingDouble((T entity) -> costs.get(entity)).reversed());
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (ring > 1 && best.size() >= count && lowerBound.applyAsDouble((ring - 1) * 16) >= costs.get(best.peek())) break;
+            for (int dx = -ring; dx <= ring; dx++) {
+                int step = (Math.abs(dx) == ring) ? 1 : ring * 2;
+                for (int dz = -ring; dz <= ring; dz += step) {
+                    List<T> entities = columns.get(ChunkPos.toLong(originX + dx, originZ + dz));
+                    if (entities == null) continue;
+                    for (T entity : entities) {
+                        double entityCost = cost.applyAsDouble(entity);
+                        if (best.size() >= count && entityCost >= costs.get(best.peek())) continue;
+                        if (!accept.test(entity)) continue;
+                        costs.put(entity, entityCost);
+                        best.add(entity);
+                        if (best.size() > count) {
+                            costs.remove(best.poll());
+                        }
+                    }
+                }
+            }
+        }
+        List<T> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(costs::get));
+        return result;
+    }
+
+    void clear() {
+        columns.clear();
+        columnOf.clear();
+    }
+
+    private void removeFromColumn(long column, T entity) {
+        List<T> entities = columns.get(column);
+        if (entities == null) return;
+        entities.remove(entity);
+        if (entities.isEmpty()) {
+            columns.remove(column);
+        }
+    }
+
+    private static long columnKey(Entity entity) {
+        BlockPos pos = entity.getBlockPos();
+        return ChunkPos.toLong(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()));
+    }
+}
@@ -2,6 +2,8 @@ package adris.altoclef.trackers;
 
 import adris.altoclef.Debug;
 import adris.altoclef.eventbus.EventBus;
+import adris.altoclef.eventbus.events.EntityLoadEvent;
+import adris.altoclef.eventbus.events.EntityUnloadEvent;
 import adris.altoclef.eventbus.events.PlayerCollidedWithEntityEvent;
 import adris.altoclef.mixins.PersistentProjectileEntityAccessor;
 import adris.altoclef.trackers.blacklisting.EntityLocateBlacklist;
@@ -12,6 +14,8 @@ import adris.altoclef.util.helpers.EntityHelper;
 import adris.altoclef.util.helpers.ProjectileHelper;
 import adris.altoclef.util.helpers.WorldHelper;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ClientPlayerEntity;
+import net.minecraft.client.world.ClientWorld;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.ItemEntity;
 import net.minecraft.entity.LivingEntity;
@@ -30,12 +34,21 @@ import java.util.function.Predicate;
 
 /**
  * Keeps track of entities so we can search/grab them.
+ * <p>
+ * Entities are added and removed as the client world starts and stops tracking them, and kept in
+ * one {@link EntityGrid} per type (and per item for dropped items). Every tick the tracked entities
+ * are only re-bucketed if they changed chunk columns, nothing is rebuilt.
  */
 @SuppressWarnings("rawtypes")
 public class EntityTracker extends Tracker {
 
-    private final HashMap<Item, List<ItemEntity>> itemDropLocations = new HashMap<>();
-    private final HashMap<Class, List<Entity>> entityMap = new HashMap<>();
+    // All guarded by BaritoneHelper.MINECRAFT_LOCK
+    private final HashMap<Item, EntityGrid<ItemEntity>> itemDropLocations = new HashMap<>();
+    private final HashMap<Class, EntityGrid<Entity>> entityMap = new HashMap<>();
+    private final HashSet<Entity> trackedEntities = new HashSet<>();
+    // The item each drop is filed under. The stack only arrives after the entity spawns, so this can change.
+    private final HashMap<ItemEntity, Item> itemOfDrop = new HashMap<>();
+    private ClientWorld trackedWorld = null;
 
     private final List<Entity> closeEntities = new ArrayList<>();
     private final List<LivingEntity> hostiles = new ArrayList<>();
@@ -55,6 +68,19 @@ public class EntityTracker extends Tracker {
 
         // Listen for player collisions
         EventBus.subscribe(PlayerCollidedWithEntityEvent.class, evt -> registerPlayerCollision(evt.player, evt.other));
+        EventBus.subscribe(EntityLoadEvent.class, evt -> {
+            synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+                // Entities of a world we haven't switched to yet get picked up when we do
+                if (MinecraftClient.getInstance().world == trackedWorld) {
+                    track(evt.entity);
+                }
+            }
+        });
+        EventBus.subscribe(EntityUnloadEvent.class, evt -> {
+            synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+                untrack(evt.entity);
+            }
+        });
     }
 
     /**
@@ -124,13 +150,16 @@ public class EntityTracker extends Tracker {
 
         ItemEntity closestEntity = null;
         float minCost = Float.POSITIVE_INFINITY;
-        for (ItemTarget target : targets) {
-            for (Item item : target.getMatches()) {
-                if (!itemDropped(item)) continue;
-                for (ItemEntity entity : itemDropLocations.get(item)) {
-                    if (entityBlacklist.unreachable(entity)) continue;
-                    if (!entity.getStack().getItem().equals(item)) continue;
-                    if (!acceptPredicate.test(entity)) continue;
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            for (ItemTarget target : targets) {
+                for (Item item : target.getMatches()) {
+                    EntityGrid<ItemEntity> drops = itemDropLocations.get(item);
+                    if (drops == null) continue;
+                    ItemEntity entity = drops.closest(position,
+                            drop -> BaritoneHelper.calculateGenericHeuristic(position, drop.getPos()),
+                            distance -> BaritoneHelper.calculateGenericHeuristic(0, 0, 0, distance, 0, 0),
+                            drop -> isGrounded(drop) && !entityBlacklist.unreachable(drop) && drop.getStack().getItem().equals(item) && acceptPredicate.test(drop));
+                    if (entity == null) continue;
 
                     float cost = (float) BaritoneHelper.calculateGenericHeuristic(position, entity.getPos());
                     if (cost < minCost) {
@@ -143,6 +172,36 @@ public class EntityTracker extends Tracker {
         return Optional.ofNullable(closestEntity);
     }
 
+    /**
+     * Up to `count` grounded, reachable drops of the given items, closest first.
+     */
+    public List<ItemEntity> getClosestItemDrops(Vec3d position, int count, ItemTarget... targets) {
+        ensureUpdated();
+        List<ItemEntity> result = new ArrayList<>();
+        if (!itemDropped(targets)) {
+            return result;
+        }
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            for (ItemTarget target : targets) {
+                for (Item item : target.getMatches()) {
+                    EntityGrid<ItemEntity> drops = itemDropLocations.get(item);
+                    if (drops == null) continue;
+                    result.addAll(drops.nearest(position, count,
+                            drop -> BaritoneHelper.calculateGenericHeuristic(position, drop.getPos()),
+                            distance -> BaritoneHelper.calculateGenericHeuristic(0, 0, 0, distance, 0, 0),
+                            drop -> isGrounded(drop) && !entityBlacklist.unreachable(drop) && drop.getStack().getItem().equals(item)));
+                }
+            }
+        }
+        if (result.size() > 1) {
+            result.sort(Comparator.comparingDouble(drop -> BaritoneHelper.calculateGenericHeuristic(position, drop.getPos())));
+            if (result.size() > count) {
+                result = new ArrayList<>(result.subList(0, count));
+            }
+        }
+        return result;
+    }
+
     private Class[] parsePossiblyNullEntityTypes(Class... entityTypes) {
         if (entityTypes == null) {
             return entityMap.keySet().toArray(Class[]::new);
@@ -163,24 +222,22 @@ public class EntityTracker extends Tracker {
     }
 
     public Optional<Entity> getClosestEntity(Vec3d position, Predicate<Entity> acceptPredicate, Class... entityTypes) {
-        entityTypes = parsePossiblyNullEntityTypes(entityTypes);
-
+        ensureUpdated();
         Entity closestEntity = null;
         double minCost = Float.POSITIVE_INFINITY;
-        for (Class toFind : entityTypes) {
-            synchronized (BaritoneHelper.MINECRAFT_LOCK) {
-                if (entityMap.containsKey(toFind)) {
-                    for (Entity entity : entityMap.get(toFind)) {
-                        // Don't accept entities that no longer exist
-                        if (entityBlacklist.unreachable(entity)) continue;
-                        if (!entity.isAlive()) continue;
-                        if (!acceptPredicate.test(entity)) continue;
-                        double cost = entity.squaredDistanceTo(position);
-                        if (cost < minCost) {
-                            minCost = cost;
-                            closestEntity = entity;
-                        }
-                    }
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            entityTypes = parsePossiblyNullEntityTypes(entityTypes);
+            for (Class toFind : entityTypes) {
+                EntityGrid<Entity> entities = entityMap.get(toFind);
+                if (entities == null) continue;
+                // Don't accept entities that no longer exist
+                Entity entity = entities.closest(position, e -> e.squaredDistanceTo(position), distance -> distance * distance,
+                        e -> !entityBlacklist.unreachable(e) && e.isAlive() && acceptPredicate.test(e));
+                if (entity == null) continue;
+                double cost = entity.squaredDistanceTo(position);
+                if (cost < minCost) {
+                    minCost = cost;
+                    closestEntity = entity;
                 }
             }
         }
@@ -189,11 +246,13 @@ public class EntityTracker extends Tracker {
 
     public boolean itemDropped(Item... items) {
         ensureUpdated();
-        for (Item item : items) {
-            if (itemDropLocations.containsKey(item)) {
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            for (Item item : items) {
+                EntityGrid<ItemEntity> drops = itemDropLocations.get(item);
+                if (drops == null) continue;
                 // Find a non-blacklisted item
-                for (ItemEntity entity : itemDropLocations.get(item)) {
-                    if (!entityBlacklist.unreachable(entity)) return true;
+                for (ItemEntity entity : drops.toList()) {
+                    if (isGrounded(entity) && !entityBlacklist.unreachable(entity)) return true;
                 }
             }
         }
@@ -210,10 +269,15 @@ public class EntityTracker extends Tracker {
 
     public List<ItemEntity> getDroppedItems() {
         ensureUpdated();
-        return itemDropLocations.values().stream().reduce(new ArrayList<>(), (result, drops) -> {
-            result.addAll(drops);
-            return result;
-        });
+        List<ItemEntity> result = new ArrayList<>();
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            for (EntityGrid<ItemEntity> drops : itemDropLocations.values()) {
+                drops.forEach(drop -> {
+                    if (isGrounded(drop)) result.add(drop);
+                });
+            }
+        }
+        return result;
     }
 
     public boolean entityFound(Predicate<Entity> shouldAccept, Class... types) {
@@ -221,7 +285,9 @@ public class EntityTracker extends Tracker {
         types = parsePossiblyNullEntityTypes(types);
         for (Class type : types) {
             synchronized (BaritoneHelper.MINECRAFT_LOCK) {
-                for (Entity entity : entityMap.getOrDefault(type, Collections.emptyList())) {
+                EntityGrid<Entity> entities = entityMap.get(type);
+                if (entities == null) continue;
+                for (Entity entity : entities.toList()) {
                     if (shouldAccept.test(entity))
                         return true;
                 }
@@ -241,7 +307,7 @@ public class EntityTracker extends Tracker {
         }
         synchronized (BaritoneHelper.MINECRAFT_LOCK) {
             //noinspection unchecked
-            return (List<T>) entityMap.get(type);
+            return (List<T>) entityMap.get(type).toList();
         }
     }
 
@@ -333,13 +399,22 @@ public class EntityTracker extends Tracker {
     @Override
     protected synchronized void updateState() {
         synchronized (BaritoneHelper.MINECRAFT_LOCK) {
-            itemDropLocations.clear();
-            entityMap.clear();
             closeEntities.clear();
             projectiles.clear();
             hostiles.clear();
-            playerMap.clear();
-            if (MinecraftClient.getInstance().world == null) return;
+
+            ClientWorld world = MinecraftClient.getInstance().world;
+            if (world != trackedWorld) {
+                // New world or dimension: the old one's entities never got untracked, start over.
+                clearTracked();
+                trackedWorld = world;
+                if (world != null) {
+                    for (Entity entity : world.getEntities()) {
+                        track(entity);
+                    }
+                }
+            }
+            if (world == null) return;
 
             // Store/Register All accumulated player collisions for this frame.
             entitiesCollidingWithPlayer.clear();
@@ -349,23 +424,16 @@ public class EntityTracker extends Tracker {
             }
             entitiesCollidingWithPlayerAccumulator.clear();
 
-            // Loop through all entities and track 'em
-            for (Entity entity : MinecraftClient.getInstance().world.getEntities()) {
-
-                // Catalogue based on type. Some types may get "squashed" or combined into one.
-                Class type = entity.getClass();
-                type = squashType(type);
-
-                //noinspection ConstantConditions
-                if (entity == null || !entity.isAlive()) continue;
-
-                // Don't catalogue our own player.
-                if (type == PlayerEntity.class && entity.equals(mod.getPlayer())) continue;
-
-                if (!entityMap.containsKey(type)) {
-                    entityMap.put(type, new ArrayList<>());
+            // Loop through the tracked entities, re-bucket the ones that moved
+            for (Iterator<Entity> it = trackedEntities.iterator(); it.hasNext(); ) {
+                Entity entity = it.next();
+                if (!entity.isAlive()) {
+                    it.remove();
+                    forget(entity);
+                    continue;
                 }
-                entityMap.get(type).add(entity);
+
+                entityMap.get(squashType(entity.getClass())).update(entity);
 
                 if (mod.getControllerExtras().inRange(entity)) {
                     closeEntities.add(entity);
@@ -373,13 +441,12 @@ public class EntityTracker extends Tracker {
 
                 if (entity instanceof ItemEntity ientity) {
                     Item droppedItem = ientity.getStack().getItem();
-
-                    // Only cared about GROUNDED item entities
-                    if (ientity.isOnGround() || ientity.isTouchingWater() || WorldHelper.isSolidBlock(ientity.getBlockPos().down(2)) || WorldHelper.isSolidBlock(ientity.getBlockPos().down(3))) {
-                        if (!itemDropLocations.containsKey(droppedItem)) {
-                            itemDropLocations.put(droppedItem, new ArrayList<>());
-                        }
-                        itemDropLocations.get(droppedItem).add(ientity);
+                    Item filedUnder = itemOfDrop.get(ientity);
+                    if (filedUnder != droppedItem) {
+                        removeDrop(ientity);
+                        addDrop(ientity);
+                    } else {
+                        itemDropLocations.get(droppedItem).update(ientity);
                     }
                 }
                 if (entity instanceof MobEntity) {
@@ -416,17 +483,87 @@ public class EntityTracker extends Tracker {
                         }
                     }
                 } else if (entity instanceof PlayerEntity player) {
-                    String name = player.getName().getString();
-                    playerMap.put(name, player);
-                    playerLastCoordinates.put(name, player.getPos());
+                    playerLastCoordinates.put(player.getName().getString(), player.getPos());
                 }
             }
         }
     }
 
+    // These expect the MINECRAFT_LOCK to be held
+
+    private void track(Entity entity) {
+        //noinspection ConstantConditions
+        if (entity == null || !entity.isAlive()) return;
+        // Don't catalogue our own player.
+        if (entity instanceof ClientPlayerEntity) return;
+        if (!trackedEntities.add(entity)) return;
+
+        // Catalogue based on type. Some types may get "squashed" or combined into one.
+        entityMap.computeIfAbsent(squashType(entity.getClass()), type -> new EntityGrid<>()).add(entity);
+        if (entity instanceof ItemEntity ientity) {
+            addDrop(ientity);
+        } else if (entity instanceof PlayerEntity player) {
+            String name = player.getName().getString();
+            playerMap.put(name, player);
+            playerLastCoordinates.put(name, player.getPos());
+        }
+    }
+
+    private void untrack(Entity entity) {
+        if (trackedEntities.remove(entity)) {
+            forget(entity);
+        }
+    }
+
+    private void forget(Entity entity) {
+        Class type = squashType(entity.getClass());
+        EntityGrid<Entity> entities = entityMap.get(type);
+        if (entities != null) {
+            entities.remove(entity);
+            if (entities.isEmpty()) entityMap.remove(type);
+        }
+        if (entity instanceof ItemEntity ientity) {
+            removeDrop(ientity);
+        } else if (entity instanceof PlayerEntity player) {
+            playerMap.remove(player.getName().getString(), player);
+        }
+    }
+
+    private void addDrop(ItemEntity drop) {
+        Item item = drop.getStack().getItem();
+        itemOfDrop.put(drop, item);
+        itemDropLocations.computeIfAbsent(item, i -> new EntityGrid<>()).add(drop);
+    }
+
+    private void removeDrop(ItemEntity drop) {
+        Item item = itemOfDrop.remove(drop);
+        if (item == null) return;
+        EntityGrid<ItemEntity> drops = itemDropLocations.get(item);
+        if (drops != null) {
+            drops.remove(drop);
+            if (drops.isEmpty()) itemDropLocations.remove(item);
+        }
+    }
+
+    private void clearTracked() {
+        trackedEntities.clear();
+        entityMap.clear();
+        itemDropLocations.clear();
+        itemOfDrop.clear();
+        playerMap.clear();
+    }
+
+    // Only cared about GROUNDED item entities
+    private static boolean isGrounded(ItemEntity ientity) {
+        return ientity.isOnGround() || ientity.isTouchingWater() || WorldHelper.isSolidBlock(ientity.getBlockPos().down(2)) || WorldHelper.isSolidBlock(ientity.getBlockPos().down(3));
+    }
+
     @Override
     protected void reset() {
-        // Dirty clears everything else.
         entityBlacklist.clear();
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            clearTracked();
+            trackedWorld = null;
+        }
     }
 }
@@ -1,12 +1,14 @@
 package adris.altoclef.trackers;
 
 import adris.altoclef.AltoClef;
+import adris.altoclef.util.time.TickProfiler;
 
 public abstract class Tracker {
 
     protected AltoClef mod;
     // Needs to update
     private boolean dirty = true;
+    private final TickProfiler.Section profileSection = TickProfiler.section("tracker/" + getClass().getSimpleName());
 
     public Tracker(TrackerManager manager) {
         manager.addTracker(this);
@@ -23,7 +25,9 @@ public abstract class Tracker {
 
     protected void ensureUpdated() {
         if (isDirty()) {
+            long start = System.nanoTime();
             updateState();
+            profileSection.record(start);
             dirty = false;
         }
     }
@@ -2,24 +2,44 @@ package adris.altoclef.trackers;
 
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import com.google.common.collect.Streams;
 
 import adris.altoclef.AltoClef;
+import adris.altoclef.eventbus.EventBus;
+import adris.altoclef.eventbus.events.BlockChangedEvent;
+import adris.altoclef.eventbus.events.ChunkLoadEvent;
+import adris.altoclef.eventbus.events.ClientTickEvent;
 import adris.altoclef.util.helpers.BaritoneHelper;
 import adris.altoclef.util.helpers.ItemHelper;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.util.math.BlockPos;
-
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+
+/**
+ * Keeps the bot from breaking the user's blocks (cobblestone, logs) near the user's beds.
+ * <p>
+ * The protected blocks are kept as a set of packed positions. A bed's region is only scanned when
+ * the bed shows up, a bed going away only drops what no other bed still protects, a chunk loading
+ * only rescans the part of the regions inside it, and single block changes inside a region are
+ * applied from events. Queries come from
+ * Baritone's path thread and are a set lookup; all updating happens on the client thread.
+ */
 public class UserBlockRangeTracker extends Tracker {
 
     // TODO: Config
 
     final int AVOID_BREAKING_RANGE = 16;
 
+    // Far away beds are found by the block scanner, so look for new/removed ones every so often (and right after a bed changes)
+    private static final long BED_CHECK_INTERVAL_MS = 1000;
+
     final Block[] USER_INDICATOR_BLOCKS = Streams.concat(
         Arrays.stream(ItemHelper.itemsToBlocks(ItemHelper.BED))
         // maybe add these in later, no need
@@ -31,54 +51,160 @@ public class UserBlockRangeTracker extends Tracker {
         Arrays.stream(ItemHelper.itemsToBlocks(ItemHelper.LOG))
     ).toArray(Block[]::new);
 
-    private final Set<BlockPos> _dontBreakBlocks = new HashSet<>();
+    private final Set<Block> _userIndicatorBlocks = new HashSet<>(Arrays.asList(USER_INDICATOR_BLOCKS));
+    private final Set<Block> _userBlocksToAvoidMining = new HashSet<>(Arrays.asList(USER_BLOCKS_TO_AVOID_BREAKING));
+
+    // All guarded by BaritoneHelper.MINECRAFT_LOCK
+    private final LongOpenHashSet _userBlocks = new LongOpenHashSet();
+    private final LongOpenHashSet _dontBreakBlocks = new LongOpenHashSet();
+    // Chunks that loaded inside a region, their part of it still has to be scanned
+    private final LongOpenHashSet _pendingChunks = new LongOpenHashSet();
+    private long _lastBedCheck = 0;
 
     public UserBlockRangeTracker(TrackerManager manager) {
         super(manager);
+
+        EventBus.subscribe(BlockChangedEvent.class, this::onBlocksChanged);
+        EventBus.subscribe(ChunkLoadEvent.class, evt -> onChunkLoaded(evt.chunk.getPos()));
+        // Update on the client thread, the block scanner's near cache can't be read from Baritone's path thread
+        EventBus.subscribe(ClientTickEvent.class, evt -> {
+            if (AltoClef.inGame()) ensureUpdated();
+        });
     }
 
     public boolean isNearUserTrackedBlock(BlockPos pos) {
-        ensureUpdated();
         synchronized (BaritoneHelper.MINECRAFT_LOCK) {
-            return _dontBreakBlocks.contains(pos);
+            return _dontBreakBlocks.contains(pos.asLong());
         }
     }
 
     @Override
     protected void updateState() {
-        _dontBreakBlocks.clear();
-        List<BlockPos> userBlocks = AltoClef.getInstance().getBlockScanner().getKnownLocationsIncludeUnreachable(USER_INDICATOR_BLOCKS);
-
-        Set<Block> userIndicatorBlocks = new HashSet<>(Arrays.asList(USER_INDICATOR_BLOCKS));
-        Set<Block> userBlocksToAvoidMining = new HashSet<>(Arrays.asList(USER_BLOCKS_TO_AVOID_BREAKING));
+        long now = System.currentTimeMillis();
+        boolean chunksPending;
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            chunksPending = !_pendingChunks.isEmpty();
+        }
+        if (now - _lastBedCheck < BED_CHECK_INTERVAL_MS && !chunksPending) {
+            return;
+        }
+        _lastBedCheck = now;
+        World world = AltoClef.getInstance().getWorld();
+        if (world == null) return;
 
-        // filter out user blocks
+        LongOpenHashSet userBlocks = new LongOpenHashSet();
         // TODO: for some reason we haven't been validating in the world for block tracking... so we do it manually.
         //      would "fixing" it cause problems?
-        userBlocks.removeIf(bpos -> {
-            Block b = AltoClef.getInstance().getWorld().getBlockState(bpos).getBlock();
-            return !userIndicatorBlocks.contains(b);
-        });
+        for (BlockPos bpos : AltoClef.getInstance().getBlockScanner().getKnownLocationsIncludeUnreachable(USER_INDICATOR_BLOCKS)) {
+            if (_userIndicatorBlocks.contains(world.getBlockState(bpos).getBlock())) {
+                userBlocks.add(bpos.asLong());
+            }
+        }
+
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            if (!_userBlocks.containsAll(userBlocks) || !userBlocks.containsAll(_userBlocks)) {
+                boolean removed = !userBlocks.containsAll(_userBlocks);
+                LongOpenHashSet added = new LongOpenHashSet(userBlocks);
+                added.removeAll(_userBlocks);
+                _userBlocks.clear();
+                _userBlocks.addAll(userBlocks);
+                if (removed) {
+                    // Only what no remaining bed covers goes, there's nothing to scan for that
+                    _dontBreakBlocks.removeIf((long pos) -> !isNearUserBlock(BlockPos.unpackLongX(pos), BlockPos.unpackLongY(pos), BlockPos.unpackLongZ(pos)));
+                }
+                for (LongIterator it = added.iterator(); it.hasNext(); ) {
+                    BlockPos userBlock = BlockPos.fromLong(it.nextLong());
+                    scanBox(world, userBlock.add(-AVOID_BREAKING_RANGE, -AVOID_BREAKING_RANGE, -AVOID_BREAKING_RANGE),
+                            userBlock.add(AVOID_BREAKING_RANGE, AVOID_BREAKING_RANGE, AVOID_BREAKING_RANGE));
+                }
+            }
 
+            for (LongIterator chunks = _pendingChunks.iterator(); chunks.hasNext(); ) {
+                ChunkPos chunk = new ChunkPos(chunks.nextLong());
+                for (LongIterator it = _userBlocks.iterator(); it.hasNext(); ) {
+                    BlockPos userBlock = BlockPos.fromLong(it.nextLong());
+                    // The region clipped to the chunk column, empty if they don't overlap
+                    BlockPos min = new BlockPos(Math.max(chunk.getStartX(), userBlock.getX() - AVOID_BREAKING_RANGE),
+                            userBlock.getY() - AVOID_BREAKING_RANGE,
+                            Math.max(chunk.getStartZ(), userBlock.getZ() - AVOID_BREAKING_RANGE));
+                    BlockPos max = new BlockPos(Math.min(chunk.getEndX(), userBlock.getX() + AVOID_BREAKING_RANGE),
+                            userBlock.getY() + AVOID_BREAKING_RANGE,
+                            Math.min(chunk.getEndZ(), userBlock.getZ() + AVOID_BREAKING_RANGE));
+                    if (min.getX() <= max.getX() && min.getZ() <= max.getZ()) {
+                        scanBox(world, min, max);
+                    }
+                }
+            }
+            _pendingChunks.clear();
+        }
+    }
 
-        for (BlockPos userBlockPos : userBlocks) {
+    private void scanBox(World world, BlockPos min, BlockPos max) {
+        for (BlockPos possible : adris.altoclef.util.helpers.WorldHelper.scanRegion(min, max)) {
+            Block b = world.getBlockState(possible).getBlock();
+            if (_userBlocksToAvoidMining.contains(b)) {
+                _dontBreakBlocks.add(possible.asLong());
+            }
+        }
+    }
 
-            BlockPos min = userBlockPos.add(-AVOID_BREAKING_RANGE, -AVOID_BREAKING_RANGE, -AVOID_BREAKING_RANGE);
-            BlockPos max = userBlockPos.add(AVOID_BREAKING_RANGE, AVOID_BREAKING_RANGE, AVOID_BREAKING_RANGE);
+    private void onBlocksChanged(BlockChangedEvent evt) {
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            for (int i = 0; i < evt.size; ++i) {
+                long pos = evt.positions[i];
+                BlockState state = evt.getNewState(i);
+                if (_userIndicatorBlocks.contains(state.getBlock()) || _userIndicatorBlocks.contains(evt.getOldState(i).getBlock())) {
+                    // A bed came or went, look again on the next update
+                    _lastBedCheck = 0;
+                }
+                if (_userBlocks.isEmpty()) continue;
+                if (!_userBlocksToAvoidMining.contains(state.getBlock())) {
+                    _dontBreakBlocks.remove(pos);
+                } else if (isNearUserBlock(BlockPos.unpackLongX(pos), BlockPos.unpackLongY(pos), BlockPos.unpackLongZ(pos))) {
+                    _dontBreakBlocks.add(pos);
+                }
+            }
+        }
+    }
 
-            // Range
-            for (BlockPos possible : adris.altoclef.util.helpers.WorldHelper.scanRegion(min, max)) {
-                Block b = AltoClef.getInstance().getWorld().getBlockState(possible).getBlock();
-                if (userBlocksToAvoidMining.contains(b)) {
-                    _dontBreakBlocks.add(possible);
+    private void onChunkLoaded(ChunkPos pos) {
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            // Closest point of the chunk column to each user block, y doesn't matter
+            for (LongIterator it = _userBlocks.iterator(); it.hasNext(); ) {
+                long userBlock = it.nextLong();
+                int x = Math.max(pos.getStartX(), Math.min(BlockPos.unpackLongX(userBlock), pos.getEndX()));
+                int z = Math.max(pos.getStartZ(), Math.min(BlockPos.unpackLongZ(userBlock), pos.getEndZ()));
+                if (isInRegion(userBlock, x, BlockPos.unpackLongY(userBlock), z)) {
+                    _pendingChunks.add(pos.toLong());
+                    return;
                 }
             }
         }
     }
 
+    private boolean isNearUserBlock(int x, int y, int z) {
+        for (LongIterator it = _userBlocks.iterator(); it.hasNext(); ) {
+            if (isInRegion(it.nextLong(), x, y, z)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isInRegion(long userBlock, int x, int y, int z) {
+        return Math.abs(BlockPos.unpackLongX(userBlock) - x) <= AVOID_BREAKING_RANGE
+                && Math.abs(BlockPos.unpackLongY(userBlock) - y) <= AVOID_BREAKING_RANGE
+                && Math.abs(BlockPos.unpackLongZ(userBlock) - z) <= AVOID_BREAKING_RANGE;
+    }
+
     @Override
     protected void reset() {
-        _dontBreakBlocks.clear();
+        synchronized (BaritoneHelper.MINECRAFT_LOCK) {
+            _userBlocks.clear();
+            _dontBreakBlocks.clear();
+            _pendingChunks.clear();
+            _lastBedCheck = 0;
+        }
     }
-    
+
 }
@@ -1,5 +1,6 @@
 package adris.altoclef.trackers.storage;
 
+import adris.altoclef.Debug;
 import adris.altoclef.util.Dimension;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -7,7 +8,9 @@ import net.minecraft.screen.FurnaceScreenHandler;
 import net.minecraft.screen.ScreenHandler;
 import net.minecraft.util.math.BlockPos;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public class ContainerCache {
@@ -18,6 +21,11 @@ public class ContainerCache {
 
     private final HashMap<Item, Integer> itemCounts = new HashMap<>();
     private int _emptySlots;
+    // Bumped whenever the contents we see change
+    private int revision = 0;
+    private long lastUpdated = 0;
+    private boolean fromDisk = false;
+    private ContainerItemIndex index = null;
 
     public ContainerCache(Dimension dimension, BlockPos blockPos, ContainerType containerType) {
         this.dimension = dimension;
@@ -25,7 +33,12 @@ public class ContainerCache {
         this.containerType = containerType;
     }
 
-    public void update(ScreenHandler screenHandler, Consumer<ItemStack> onStack) {
+    /**
+     * @return whether the contents are different from what we had
+     */
+    public boolean update(ScreenHandler screenHandler, Consumer<ItemStack> onStack) {
+        HashMap<Item, Integer> oldCounts = new HashMap<>(itemCounts);
+        int oldEmptySlots = _emptySlots;
         itemCounts.clear();
         _emptySlots = 0;
         int start = 0;
@@ -49,6 +62,40 @@ public class ContainerCache {
                 onStack.accept(stack);
             }
         }
+
+        boolean changed = revision == 0 || oldEmptySlots != _emptySlots || !oldCounts.equals(itemCounts);
+        if (changed) {
+            if (fromDisk) {
+                Debug.logInternal("Stored contents of container at " + blockPos.toShortString() + " were stale (revision " + revision + ")");
+            }
+            revision++;
+            if (index != null) {
+                index.onContentsChanged(this, oldCounts);
+            }
+        }
+        lastUpdated = System.currentTimeMillis();
+        fromDisk = false;
+        return changed;
+    }
+
+    /**
+     * Fills in contents read back from disk.
+     */
+    void restore(Map<Item, Integer> counts, int emptySlots, int revision, long lastUpdated) {
+        itemCounts.clear();
+        itemCounts.putAll(counts);
+        _emptySlots = emptySlots;
+        this.revision = revision;
+        this.lastUpdated = lastUpdated;
+        fromDisk = true;
+    }
+
+    void setIndex(ContainerItemIndex index) {
+        this.index = index;
+    }
+
+    public Map<Item, Integer> getItemCounts() {
+        return Collections.unmodifiableMap(itemCounts);
     }
 
     public int getItemCount(Item... items) {
@@ -86,4 +133,25 @@ public class ContainerCache {
     public Dimension getDimension() {
         return dimension;
     }
+
+    /**
+     * How many times we've seen the contents change.
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * When we last looked inside, in epoch millis.
+     */
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    /**
+     * True if the contents came from a previous session and haven't been looked at since, so they may be outdated.
+     */
+    public boolean isFromDisk() {
+        return fromDisk;
+    }
 }
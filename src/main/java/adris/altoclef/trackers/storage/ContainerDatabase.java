@@ -0,0 +1,344 @@
+package adris.altoclef.trackers.storage;
+
+import adris.altoclef.util.Dimension;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ServerInfo;
+import net.minecraft.item.Item;
+import net.minecraft.registry.Registries;
+import net.minecraft.server.integrated.IntegratedServer;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Saves container caches to disk so they survive relogging.
+ * <p>
+ * Caches are stored per server/world and dimension, in one small binary file per 512x512 block
+ * region. A region is read the first time something needs it (a chunk in it loads, or a query
+ * asks about it or the area around the player). Changed regions are collected and written every
+ * few seconds, a whole region file at a time.
+ * <p>
+ * All file access happens on one background thread, in the order it was asked for. Loaded caches
+ * are handed back on the client thread, so queries answer from what has arrived so far and never
+ * wait on the disk. A region isn't written before it has been read, that would drop what it held.
+ * If the world closes first, what we saw there is merged into the file once the read is done.
+ * <p>
+ * Every entry carries the revision and time it was last seen, see {@link ContainerCache#isFromDisk()}.
+ * <p>
+ * Client thread only, except for the file access itself.
+ */
+final class ContainerDatabase {
+
+    private static final int MAGIC = 0x41434442; // "ACDB"
+    private static final short FORMAT_VERSION = 1;
+    // 512 blocks per region
+    private static final int REGION_SHIFT = 9;
+    private static final long FLUSH_INTERVAL_MS = 5000;
+    // Regions around the player read for queries that aren't about one place (3x3, 1536 blocks across)
+    private static final int NEARBY_REGIONS = 1;
+    private static final Path ROOT = Paths.get("altoclef", "containers");
+
+    private static final ExecutorService ioThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "altoclef-container-io");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Asked to be read / actually read and handed over
+    private final EnumMap<Dimension, LongOpenHashSet> requestedRegions = new EnumMap<>(Dimension.class);
+    private final EnumMap<Dimension, LongOpenHashSet> loadedRegions = new EnumMap<>(Dimension.class);
+    private final EnumMap<Dimension, LongOpenHashSet> dirtyRegions = new EnumMap<>(Dimension.class);
+    // Containers that turned out to be gone this session, so stored copies don't come back
+    private final EnumMap<Dimension, LongOpenHashSet> removedPositions = new EnumMap<>(Dimension.class);
+    private Path worldFolder = null;
+    // Bumped when the world closes, so reads that finish afterwards are dropped
+    private int generation = 0;
+    private long lastFlush = 0;
+
+    ContainerDatabase() {
+        for (Dimension dimension : Dimension.values()) {
+            requestedRegions.put(dimension, new LongOpenHashSet());
+            loadedRegions.put(dimension, new LongOpenHashSet());
+            dirtyRegions.put(dimension, new LongOpenHashSet());
+            removedPositions.put(dimension, new LongOpenHashSet());
+        }
+    }
+
+    /**
+     * Reads the region holding `pos` in the background if it hasn't been read yet. Every stored
+     * cache is passed to `onLoad` on the client thread.
+     */
+    void loadRegion(Dimension dimension, BlockPos pos, Consumer<ContainerCache> onLoad) {
+        loadRegion(dimension, regionKey(pos), onLoad);
+    }
+
+    /**
+     * Reads the regions around `center` in the background, see {@link #loadRegion}.
+     */
+    void loadAround(Dimension dimension, BlockPos center, Consumer<ContainerCache> onLoad) {
+        long centerRegion = regionKey(center);
+        int regionX = ChunkPos.getPackedX(centerRegion);
+        int regionZ = ChunkPos.getPackedZ(centerRegion);
+        for (int dx = -NEARBY_REGIONS; dx <= NEARBY_REGIONS; ++dx) {
+            for (int dz = -NEARBY_REGIONS; dz <= NEARBY_REGIONS; ++dz) {
+                loadRegion(dimension, ChunkPos.toLong(regionX + dx, regionZ + dz), onLoad);
+            }
+        }
+    }
+
+    private void loadRegion(Dimension dimension, long region, Consumer<ContainerCache> onLoad) {
+        if (requestedRegions.get(dimension).contains(region) || !open()) return;
+        requestedRegions.get(dimension).add(region);
+        Path file = regionFile(dimension, region);
+        int gen = generation;
+        ioThread.execute(() -> {
+            List<ContainerCache> caches = read(dimension, file);
+            MinecraftClient.getInstance().execute(() -> {
+                if (gen != generation) return;
+                LongOpenHashSet removed = removedPositions.get(dimension);
+                for (ContainerCache cache : caches) {
+                    if (!removed.contains(cache.getBlockPos().asLong())) {
+                        onLoad.accept(cache);
+                    }
+                }
+                loadedRegions.get(dimension).add(region);
+            });
+        });
+    }
+
+    /**
+     * The region holding `pos` changed and should be written again.
+     */
+    void markDirty(Dimension dimension, BlockPos pos) {
+        dirtyRegions.get(dimension).add(regionKey(pos));
+    }
+
+    /**
+     * The container at `pos` is gone, don't load or keep a stored copy of it.
+     */
+    void markRemoved(Dimension dimension, BlockPos pos) {
+        removedPositions.get(dimension).add(pos.asLong());
+        markDirty(dimension, pos);
+    }
+
+    /**
+     * Writes out changed regions every so often.
+     */
+    void tick(Map<Dimension, HashMap<BlockPos, ContainerCache>> caches) {
+        long now = System.currentTimeMillis();
+        if (now - lastFlush < FLUSH_INTERVAL_MS) return;
+        lastFlush = now;
+        flush(caches);
+    }
+
+    void flush(Map<Dimension, HashMap<BlockPos, ContainerCache>> caches) {
+        if (worldFolder == null) return;
+        for (Dimension dimension : Dimension.values()) {
+            LongOpenHashSet dirty = dirtyRegions.get(dimension);
+            if (dirty.isEmpty()) continue;
+            HashMap<BlockPos, ContainerCache> dimCache = caches.get(dimension);
+            LongOpenHashSet loaded = loadedRegions.get(dimension);
+            for (LongIterator it = dirty.iterator(); it.hasNext(); ) {
+                long region = it.nextLong();
+                // Still being read, write it once we know everything it holds
+                if (!loaded.contains(region)) continue;
+                // Serialize here, only the file write happens in the background
+                byte[] data = serialize(getCachesIn(dimCache, region));
+                Path file = regionFile(dimension, region);
+                ioThread.execute(() -> write(file, data));
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes everything that's left and forgets the current world.
+     */
+    void close(Map<Dimension, HashMap<BlockPos, ContainerCache>> caches) {
+        flush(caches);
+        if (worldFolder != null) {
+            // Whatever's left is still being read. Queued after the read, so merge with what the file holds then.
+            for (Dimension dimension : Dimension.values()) {
+                for (LongIterator it = dirtyRegions.get(dimension).iterator(); it.hasNext(); ) {
+                    long region = it.nextLong();
+                    List<ContainerCache> seen = new ArrayList<>();
+                    for (ContainerCache cache : getCachesIn(caches.get(dimension), region)) {
+                        // Copies, the tracker lets go of its caches once we're closed
+                        ContainerCache copy = new ContainerCache(dimension, cache.getBlockPos(), cache.getContainerType());
+                        copy.restore(cache.getItemCounts(), cache.getEmptySlotCount(), cache.getRevision(), cache.getLastUpdated());
+                        seen.add(copy);
+                    }
+                    LongOpenHashSet removed = new LongOpenHashSet(removedPositions.get(dimension));
+                    Path file = regionFile(dimension, region);
+                    ioThread.execute(() -> {
+                        LinkedHashMap<BlockPos, ContainerCache> merged = new LinkedHashMap<>();
+                        for (ContainerCache stored : read(dimension, file)) {
+                            if (!removed.contains(stored.getBlockPos().asLong())) {
+                                merged.put(stored.getBlockPos(), stored);
+                            }
+                        }
+                        for (ContainerCache cache : seen) {
+                            merged.put(cache.getBlockPos(), cache);
+                        }
+                        write(file, serialize(merged.values()));
+                    });
+                }
+            }
+        }
+        worldFolder = null;
+        ++generation;
+        for (Dimension dimension : Dimension.values()) {
+            requestedRegions.get(dimension).clear();
+            loadedRegions.get(dimension).clear();
+            dirtyRegions.get(dimension).clear();
+            removedPositions.get(dimension).clear();
+        }
+    }
+
+    private boolean open() {
+        if (worldFolder == null) {
+            String world = getWorldName();
+            if (world == null) return false;
+            worldFolder = ROOT.resolve(world.replaceAll("[^A-Za-z0-9._-]", "_"));
+        }
+        return true;
+    }
+
+    private static String getWorldName() {
+        MinecraftClient client = MinecraftClient.getInstance();
+        IntegratedServer server = client.getServer();
+        if (server != null) {
+            Path save = server.getSavePath(WorldSavePath.ROOT).normalize().getFileName();
+            return "singleplayer_" + (save != null ? save.toString() : server.getSaveProperties().getLevelName());
+        }
+        ServerInfo serverInfo = client.getCurrentServerEntry();
+        if (serverInfo != null) {
+            return "server_" + serverInfo.address;
+        }
+        return null;
+    }
+
+    private Path regionFile(Dimension dimension, long region) {
+        return worldFolder.resolve(dimension.name().toLowerCase())
+                .resolve("r." + ChunkPos.getPackedX(region) + "." + ChunkPos.getPackedZ(region) + ".bin");
+    }
+
+    private static long regionKey(BlockPos pos) {
+        return ChunkPos.toLong(pos.getX() >> REGION_SHIFT, pos.getZ() >> REGION_SHIFT);
+    }
+
+    private static List<ContainerCache> getCachesIn(HashMap<BlockPos, ContainerCache> dimCache, long region) {
+        List<ContainerCache> result = new ArrayList<>();
+        for (ContainerCache cache : dimCache.values()) {
+            if (regionKey(cache.getBlockPos()) == region) {
+                result.add(cache);
+            }
+        }
+        return result;
+    }
+
+    private static byte[] serialize(Collection<ContainerCache> caches) {
+        if (caches.isEmpty()) {
+            // Empty region, the file gets deleted
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeInt(caches.size());
+            for (ContainerCache cache : caches) {
+                out.writeLong(cache.getBlockPos().asLong());
+                out.writeByte(cache.getContainerType().ordinal());
+                out.writeShort(cache.getEmptySlotCount());
+                out.writeInt(cache.getRevision());
+                out.writeLong(cache.getLastUpdated());
+                Map<Item, Integer> itemCounts = cache.getItemCounts();
+                out.writeShort(itemCounts.size());
+                for (Map.Entry<Item, Integer> entry : itemCounts.entrySet()) {
+                    out.writeUTF(Registries.ITEM.getId(entry.getKey()).toString());
+                    out.writeInt(entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            // Can't happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<ContainerCache> read(Dimension dimension, Path file) {
+        List<ContainerCache> result = new ArrayList<>();
+        if (!Files.exists(file)) return result;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != FORMAT_VERSION) {
+                System.err.println("[ContainerDatabase]: Ignoring stored containers in an unknown format: " + file);
+                return result;
+            }
+            ContainerType[] types = ContainerType.values();
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                BlockPos pos = BlockPos.fromLong(in.readLong());
+                ContainerType type = types[in.readByte()];
+                int emptySlots = in.readShort();
+                int revision = in.readInt();
+                long lastUpdated = in.readLong();
+                HashMap<Item, Integer> itemCounts = new HashMap<>();
+                int itemTypes = in.readShort();
+                for (int j = 0; j < itemTypes; ++j) {
+                    // Registry ids, ex. "minecraft:iron_ingot"
+                    Identifier identifier = Identifier.of(in.readUTF());
+                    int itemCount = in.readInt();
+                    if (Registries.ITEM.containsId(identifier)) {
+                        itemCounts.put(Registries.ITEM.get(identifier), itemCount);
+                    }
+                }
+                ContainerCache cache = new ContainerCache(dimension, pos, type);
+                cache.restore(itemCounts, emptySlots, revision, lastUpdated);
+                result.add(cache);
+            }
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("[ContainerDatabase]: Failed to read stored containers from " + file + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    private static void write(Path file, byte[] data) {
+        try {
+            if (data == null) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            Files.createDirectories(file.getParent());
+            // Write next to it and swap, so a crash never leaves half a file
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[ContainerDatabase]: Failed to write " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package adris.altoclef.trackers.storage;
+
+import adris.altoclef.util.Dimension;
+import net.minecraft.item.Item;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which containers hold each item, per dimension.
+ * <p>
+ * Caches report their own content changes (see {@link ContainerCache#update}), so item queries
+ * only ever look at the containers that actually hold the item. The counts themselves stay in
+ * the caches.
+ */
+final class ContainerItemIndex {
+
+    private final EnumMap<Dimension, HashMap<Item, Set<ContainerCache>>> holders = new EnumMap<>(Dimension.class);
+
+    ContainerItemIndex() {
+        for (Dimension dimension : Dimension.values()) {
+            holders.put(dimension, new HashMap<>());
+        }
+    }
+
+    void add(ContainerCache cache) {
+        cache.setIndex(this);
+        for (Item item : cache.getItemCounts().keySet()) {
+            addHolder(cache, item);
+        }
+    }
+
+    void remove(ContainerCache cache) {
+        for (Item item : cache.getItemCounts().keySet()) {
+            removeHolder(cache, item);
+        }
+        cache.setIndex(null);
+    }
+
+    /**
+     * `cache` used to hold `oldCounts` and now holds whatever it says.
+     */
+    void onContentsChanged(ContainerCache cache, Map<Item, Integer> oldCounts) {
+        Map<Item, Integer> newCounts = cache.getItemCounts();
+        for (Item item : oldCounts.keySet()) {
+            if (!newCounts.containsKey(item)) {
+                removeHolder(cache, item);
+            }
+        }
+        for (Item item : newCounts.keySet()) {
+            if (!oldCounts.containsKey(item)) {
+                addHolder(cache, item);
+            }
+        }
+    }
+
+    /**
+     * Containers in `dimension` holding any of `items`, each once.
+     */
+    Set<ContainerCache> getHolders(Dimension dimension, Item... items) {
+        HashMap<Item, Set<ContainerCache>> dimHolders = holders.get(dimension);
+        if (items.length == 1) {
+            Set<ContainerCache> found = dimHolders.get(items[0]);
+            return found != null ? Collections.unmodifiableSet(found) : Collections.emptySet();
+        }
+        Set<ContainerCache> result = new LinkedHashSet<>();
+        for (Item item : items) {
+            Set<ContainerCache> found = dimHolders.get(item);
+            if (found != null) {
+                result.addAll(found);
+            }
+        }
+        return result;
+    }
+
+    void clear() {
+        for (HashMap<Item, Set<ContainerCache>> dimHolders : holders.values()) {
+            for (Set<ContainerCache> caches : dimHolders.values()) {
+                for (ContainerCache cache : caches) {
+                    cache.setIndex(null);
+                }
+            }
+            dimHolders.clear();
+        }
+    }
+
+    private void addHolder(ContainerCache cache, Item item) {
+        holders.get(cache.getDimension()).computeIfAbsent(item, i -> new HashSet<>()).add(cache);
+    }
+
+    private void removeHolder(ContainerCache cache, Item item) {
+        HashMap<Item, Set<ContainerCache>> dimHolders = holders.get(cache.getDimension());
+        Set<ContainerCache> caches = dimHolders.get(item);
+        if (caches == null) return;
+        caches.remove(cache);
+        if (caches.isEmpty()) {
+            dimHolders.remove(item);
+        }
+    }
+}
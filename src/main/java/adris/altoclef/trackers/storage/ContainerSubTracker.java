@@ -3,6 +3,7 @@ package adris.altoclef.trackers.storage;
 import adris.altoclef.Debug;
 import adris.altoclef.eventbus.EventBus;
 import adris.altoclef.eventbus.events.BlockInteractEvent;
+import adris.altoclef.eventbus.events.ChunkLoadEvent;
 import adris.altoclef.eventbus.events.ScreenOpenEvent;
 import adris.altoclef.multiversion.blockpos.BlockPosVer;
 import adris.altoclef.trackers.Tracker;
@@ -24,7 +25,9 @@ import java.util.*;
 import java.util.function.Predicate;
 
 /**
- * Keeps track of items in containers
+ * Keeps track of items in containers. What we know is saved per world, see {@link ContainerDatabase}.
+ * <p>
+ * Stored containers are read in the background. Queries answer from what has been read so far.
  */
 public class ContainerSubTracker extends Tracker {
 
@@ -34,6 +37,10 @@ public class ContainerSubTracker extends Tracker {
     private Block lastBlockInteraction;
     private ContainerCache enderChestCache;
     private boolean hasSentError;
+    private final ContainerDatabase database = new ContainerDatabase();
+    private final ContainerItemIndex itemIndex = new ContainerItemIndex();
+    // Whether the open container has been saved since it was opened
+    private boolean savedOpenContainer;
 
     public ContainerSubTracker(TrackerManager manager) {
         super(manager);
@@ -47,6 +54,8 @@ public class ContainerSubTracker extends Tracker {
             BlockState bs = mod.getWorld().getBlockState(blockPos);
             onBlockInteract(blockPos, bs.getBlock());
         });
+        // Pull in what we stored about containers around here
+        EventBus.subscribe(ChunkLoadEvent.class, evt -> loadRegion(WorldHelper.getCurrentDimension(), evt.chunk.getPos().getStartPos()));
         EventBus.subscribe(ScreenOpenEvent.class, evt -> {
             if (evt.preOpen) {
                 onScreenOpenFirstTick(evt.screen);
@@ -84,11 +93,42 @@ public class ContainerSubTracker extends Tracker {
         lastBlockPosInteraction = null;
         lastBlockInteraction = null;
         hasSentError = false;
+        savedOpenContainer = false;
+    }
+
+    private void loadRegion(Dimension dimension, BlockPos pos) {
+        database.loadRegion(dimension, pos, this::onCacheLoaded);
+    }
+
+    // Queries that aren't about one place read what's stored around the player
+    private void loadAroundPlayer() {
+        if (mod.getPlayer() != null) {
+            database.loadAround(WorldHelper.getCurrentDimension(), mod.getPlayer().getBlockPos(), this::onCacheLoaded);
+        }
+    }
+
+    private void onCacheLoaded(ContainerCache cache) {
+        // Anything we've seen this session is newer
+        if (containerCaches.get(cache.getDimension()).putIfAbsent(cache.getBlockPos(), cache) == null) {
+            itemIndex.add(cache);
+            if (cache.getContainerType() == ContainerType.ENDER_CHEST && enderChestCache == null) {
+                enderChestCache = cache;
+            }
+        }
+    }
+
+    private void removeCache(Dimension dimension, BlockPos pos) {
+        ContainerCache removed = containerCaches.get(dimension).remove(pos);
+        if (removed != null) {
+            itemIndex.remove(removed);
+            database.markRemoved(dimension, pos);
+        }
     }
 
     public void onServerTick() {
         if (MinecraftClient.getInstance().player == null)
             return;
+        database.tick(containerCaches);
         // If we haven't registered interacting with a block, try the currently "looking at" block
         if (containerOpen && lastBlockPosInteraction == null && lastBlockInteraction == null) {
             if (MinecraftClient.getInstance().crosshairTarget instanceof BlockHitResult bhit) {
@@ -103,7 +143,9 @@ public class ContainerSubTracker extends Tracker {
             if (handler == null)
                 return;
 
-            HashMap<BlockPos, ContainerCache> dimCache = containerCaches.get(WorldHelper.getCurrentDimension());
+            Dimension dimension = WorldHelper.getCurrentDimension();
+            loadRegion(dimension, containerPos);
+            HashMap<BlockPos, ContainerCache> dimCache = containerCaches.get(dimension);
 
             // Container Type Mismatch, reset.
             if (dimCache.containsKey(containerPos)) {
@@ -113,7 +155,7 @@ public class ContainerSubTracker extends Tracker {
                         Debug.logMessage("Mismatched container screen at " + containerPos.toShortString() + ", will overwrite container data: " + handler.getType() + " ?=> " + currentType);
                         hasSentError = true;
                     }
-                    dimCache.remove(containerPos);
+                    removeCache(dimension, containerPos);
                 }
             }
 
@@ -121,8 +163,9 @@ public class ContainerSubTracker extends Tracker {
             if (!dimCache.containsKey(containerPos)) {
                 Block containerBlock = lastBlockInteraction;
                 ContainerType interactType = ContainerType.getFromBlock(containerBlock);
-                ContainerCache newCache = new ContainerCache(WorldHelper.getCurrentDimension(), containerPos, interactType);
+                ContainerCache newCache = new ContainerCache(dimension, containerPos, interactType);
                 dimCache.put(containerPos, newCache);
+                itemIndex.add(newCache);
                 // Special ender chest cache
                 if (interactType == ContainerType.ENDER_CHEST) {
                     enderChestCache = newCache;
@@ -130,9 +173,14 @@ public class ContainerSubTracker extends Tracker {
             }
 
             ContainerCache toUpdate = dimCache.get(containerPos);
-            toUpdate.update(handler, stack -> {
+            boolean changed = toUpdate.update(handler, stack -> {
 
             });
+            // Save when the contents change, and once per opening so the "last seen" time is kept
+            if (changed || !savedOpenContainer) {
+                database.markDirty(dimension, containerPos);
+                savedOpenContainer = true;
+            }
         }
     }
 
@@ -150,9 +198,10 @@ public class ContainerSubTracker extends Tracker {
     }
 
     public Optional<ContainerCache> getContainerAtPosition(Dimension dimension, BlockPos pos) {
+        loadRegion(dimension, pos);
         Optional<ContainerCache> cache = Optional.ofNullable(containerCaches.get(dimension).getOrDefault(pos, null));
         if (cache.isPresent() && !isContainerCacheValid(dimension, cache.get())) {
-            containerCaches.get(dimension).remove(pos);
+            removeCache(dimension, pos);
             return Optional.empty();
         }
         return cache;
@@ -167,6 +216,7 @@ public class ContainerSubTracker extends Tracker {
     }
 
     public List<ContainerCache> getCachedContainers(Predicate<ContainerCache> accept) {
+        loadAroundPlayer();
         List<ContainerCache> result = new ArrayList<>();
         List<Pair<Dimension, BlockPos>> toRemove = new ArrayList<>();
         for (Dimension dim : containerCaches.keySet()) {
@@ -181,7 +231,7 @@ public class ContainerSubTracker extends Tracker {
             }
         }
         for (Pair<Dimension, BlockPos> remove : toRemove) {
-            containerCaches.get(remove.getLeft()).remove(remove.getRight());
+            removeCache(remove.getLeft(), remove.getRight());
         }
         return result;
     }
@@ -213,7 +263,7 @@ public class ContainerSubTracker extends Tracker {
         }
         // Clear anything invalid
         for (BlockPos remove : toRemove) {
-            containerCaches.get(dim).remove(remove);
+            removeCache(dim, remove);
         }
         return Optional.ofNullable(bestCache);
     }
@@ -223,18 +273,55 @@ public class ContainerSubTracker extends Tracker {
         return getClosestTo(pos, cache -> typeSet.contains(cache.getContainerType()));
     }
 
+    // The item queries below only look at containers the index says hold the item. Queries that
+    // aren't about one place read the stored regions around the player, their answers fill in as
+    // those arrive. Containers stored further away show up once something loads their region.
+
     public List<ContainerCache> getContainersWithItem(Item... items) {
-        return getCachedContainers(cache -> cache.hasItem(items));
+        loadAroundPlayer();
+        List<ContainerCache> result = new ArrayList<>();
+        List<ContainerCache> toRemove = new ArrayList<>();
+        for (Dimension dim : Dimension.values()) {
+            for (ContainerCache cache : itemIndex.getHolders(dim, items)) {
+                if (!isContainerCacheValid(dim, cache)) {
+                    toRemove.add(cache);
+                    continue;
+                }
+                result.add(cache);
+            }
+        }
+        for (ContainerCache remove : toRemove) {
+            removeCache(remove.getDimension(), remove.getBlockPos());
+        }
+        return result;
     }
 
     public Optional<ContainerCache> getClosestWithItem(Vec3d pos, Item... items) {
-        return getClosestTo(pos, cache -> cache.hasItem(items));
+        Dimension dim = WorldHelper.getCurrentDimension();
+        double bestDist = Double.POSITIVE_INFINITY;
+        ContainerCache bestCache = null;
+        List<ContainerCache> toRemove = new ArrayList<>();
+        for (ContainerCache cache : itemIndex.getHolders(dim, items)) {
+            double dist = BlockPosVer.getSquaredDistance(cache.getBlockPos(), pos);
+            if (dist >= bestDist) continue;
+            if (!isContainerCacheValid(dim, cache)) {
+                toRemove.add(cache);
+                continue;
+            }
+            bestDist = dist;
+            bestCache = cache;
+        }
+        for (ContainerCache remove : toRemove) {
+            removeCache(dim, remove.getBlockPos());
+        }
+        return Optional.ofNullable(bestCache);
     }
 
     public boolean hasItem(Predicate<ContainerCache> accept, Item... items) {
-        for (HashMap<BlockPos, ContainerCache> map : containerCaches.values()) {
-            for (ContainerCache cache : map.values()) {
-                if (cache.hasItem(items) && accept.test(cache))
+        loadAroundPlayer();
+        for (Dimension dim : Dimension.values()) {
+            for (ContainerCache cache : itemIndex.getHolders(dim, items)) {
+                if (accept.test(cache))
                     return true;
             }
         }
@@ -256,9 +343,12 @@ public class ContainerSubTracker extends Tracker {
 
     @Override
     protected void reset() {
+        database.close(containerCaches);
+        itemIndex.clear();
         for (Dimension key : containerCaches.keySet()) {
             containerCaches.get(key).clear();
         }
+        enderChestCache = null;
     }
 
 }
@@ -1,5 +1,8 @@
 package adris.altoclef.trackers.storage;
 
+import adris.altoclef.eventbus.EventBus;
+import adris.altoclef.eventbus.events.InventorySyncEvent;
+import adris.altoclef.eventbus.events.SlotClickChangedEvent;
 import adris.altoclef.trackers.Tracker;
 import adris.altoclef.trackers.TrackerManager;
 import adris.altoclef.util.helpers.ItemHelper;
@@ -17,24 +20,42 @@ import net.minecraft.item.Items;
 import net.minecraft.screen.ScreenHandler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 
 /**
  * Keeps track of the player's inventory items
+ * <p>
+ * Counts are kept in arrays indexed by raw item id and only the slots that changed get re-counted,
+ * so queries don't allocate. Slot clicks and inventory packets from the server mark us dirty right
+ * away. The once-per-tick update still runs, because some changes (like placing a block) are
+ * predicted on the client without either; it compares each slot to what it held before and is
+ * cheap when nothing changed.
  */
 public class InventorySubTracker extends Tracker {
 
-    private final HashMap<Item, List<Slot>> itemToSlotPlayer = new HashMap<>();
-    private final HashMap<Item, List<Slot>> itemToSlotContainer = new HashMap<>();
-    private final HashMap<Item, Integer> itemCountsPlayer = new HashMap<>();
-    private final HashMap<Item, Integer> itemCountsContainer = new HashMap<>();
+    private static final int AIR = Item.getRawId(Items.AIR);
+
+    // Indexed by raw item id
+    private int[] itemCountsPlayer = new int[0];
+    private int[] itemCountsContainer = new int[0];
+    // How many slots hold each item, empty slots count as air
+    private int[] slotCountsPlayer = new int[0];
+    private int[] slotCountsContainer = new int[0];
+
+    // The slots we track on the current screen and what they held last update
+    private Slot[] slots = new Slot[0];
+    private boolean[] slotInPlayerInventory = new boolean[0];
+    private int[] slotItems = new int[0];
+    private int[] slotStackCounts = new int[0];
 
     private ScreenHandler _prevScreenHandler;
 
     public InventorySubTracker(TrackerManager manager) {
         super(manager);
+        EventBus.subscribe(SlotClickChangedEvent.class, evt -> setDirty());
+        EventBus.subscribe(InventorySyncEvent.class, evt -> setDirty());
     }
 
     private static boolean shouldIgnoreSlotForContainer(Slot slot) {
@@ -56,17 +77,22 @@ public class InventorySubTracker extends Tracker {
         return false;
     }
 
+    private static int get(int[] array, int rawId) {
+        return rawId < array.length ? array[rawId] : 0;
+    }
+
     public int getItemCount(boolean playerInventory, boolean containerInventory, Item... items) {
         ensureUpdated();
         int result = 0;
         ItemStack cursorStack = StorageHelper.getItemStackInCursorSlot();
         for (Item item : items) {
+            int id = Item.getRawId(item);
             if (playerInventory && cursorStack.getItem().equals(item))
                 result += cursorStack.getCount();
             if (playerInventory)
-                result += itemCountsPlayer.getOrDefault(item, 0);
+                result += get(itemCountsPlayer, id);
             if (containerInventory)
-                result += itemCountsContainer.getOrDefault(item, 0);
+                result += get(itemCountsContainer, id);
         }
         return result;
     }
@@ -75,11 +101,12 @@ public class InventorySubTracker extends Tracker {
         ensureUpdated();
         ItemStack cursorStack = StorageHelper.getItemStackInCursorSlot();
         for (Item item : items) {
+            int id = Item.getRawId(item);
             if (cursorStack.getItem().equals(item))
                 return true;
-            if (itemCountsPlayer.containsKey(item))
+            if (get(slotCountsPlayer, id) > 0)
                 return true;
-            if (!playerInventoryOnly && itemCountsContainer.containsKey(item))
+            if (!playerInventoryOnly && get(slotCountsContainer, id) > 0)
                 return true;
         }
         return false;
@@ -90,16 +117,25 @@ public class InventorySubTracker extends Tracker {
         List<Slot> result = new ArrayList<>();
         ItemStack cursorStack = StorageHelper.getItemStackInCursorSlot();
         for (Item item : items) {
+            int id = Item.getRawId(item);
             if (playerInventory && cursorStack.getItem().equals(item))
                 result.add(CursorSlot.SLOT);
-            if (playerInventory)
-                result.addAll(itemToSlotPlayer.getOrDefault(item, Collections.emptyList()));
-            if (containerInventory)
-                result.addAll(itemToSlotContainer.getOrDefault(item, Collections.emptyList()));
+            if (playerInventory && get(slotCountsPlayer, id) > 0)
+                addSlotsWithItem(result, true, id);
+            if (containerInventory && get(slotCountsContainer, id) > 0)
+                addSlotsWithItem(result, false, id);
         }
         return result;
     }
 
+    private void addSlotsWithItem(List<Slot> result, boolean playerInventory, int rawId) {
+        for (int i = 0; i < slots.length; ++i) {
+            if (slotItems[i] == rawId && slotInPlayerInventory[i] == playerInventory) {
+                result.add(slots[i]);
+            }
+        }
+    }
+
     public List<ItemStack> getInventoryStacks(boolean includeCursor) {
         ClientPlayerEntity player = MinecraftClient.getInstance().player;
         if (player == null || player.getInventory() == null)
@@ -116,33 +152,32 @@ public class InventorySubTracker extends Tracker {
         return result;
     }
 
-    private List<Slot> getSlotsThatCanFit(HashMap<Item, List<Slot>> list, ItemStack item, boolean acceptPartial) {
+    private List<Slot> getSlotsThatCanFit(boolean playerInventory, ItemStack item, boolean acceptPartial) {
         List<Slot> result = new ArrayList<>();
+        int id = Item.getRawId(item.getItem());
         // First add fillable slots
-        for (Slot toCheckStackable : list.getOrDefault(item.getItem(), Collections.emptyList())) {
-            // Ignore cursor slot.
-            if (Slot.isCursor(toCheckStackable))
+        for (int i = 0; i < slots.length; ++i) {
+            if (slotItems[i] != id || slotInPlayerInventory[i] != playerInventory)
                 continue;
-            ItemStack stackToAddTo = StorageHelper.getItemStackInSlot(toCheckStackable);
+            ItemStack stackToAddTo = StorageHelper.getItemStackInSlot(slots[i]);
             // We must have SOME room left, then we decide whether we care about having ENOUGH
             if (!stackToAddTo.isEmpty() && ItemHelper.canStackTogether(item, stackToAddTo)) {
                 int roomLeft = stackToAddTo.getMaxCount() - stackToAddTo.getCount();
                 if (acceptPartial || roomLeft > item.getCount()) {
-                    result.add(toCheckStackable);
+                    result.add(slots[i]);
                 }
             }
         }
         // Then add air slots that can insert our item
         if (MinecraftClient.getInstance().player != null) {
             ScreenHandler handler = MinecraftClient.getInstance().player.currentScreenHandler;
-            for (Slot airSlot : list.getOrDefault(Items.AIR, Collections.emptyList())) {
-                // Ignore cursor slot
-                if (airSlot.equals(CursorSlot.SLOT))
+            for (int i = 0; i < slots.length; ++i) {
+                if (slotItems[i] != AIR || slotInPlayerInventory[i] != playerInventory)
                     continue;
-                int windowCheck = airSlot.getWindowSlot();
+                int windowCheck = slots[i].getWindowSlot();
                 // Special case: Armor/shield, we wish to ignore these if our inventory is not open.
                 if (windowCheck < handler.slots.size() && handler.getSlot(windowCheck).canInsert(item)) {
-                    result.add(airSlot);
+                    result.add(slots[i]);
                 }
             }
         }
@@ -153,9 +188,9 @@ public class InventorySubTracker extends Tracker {
         ensureUpdated();
         final List<Slot> result = new ArrayList<>();
         if (includePlayer)
-            result.addAll(getSlotsThatCanFit(itemToSlotPlayer, item, acceptPartial));
+            result.addAll(getSlotsThatCanFit(true, item, acceptPartial));
         if (includeContainer)
-            result.addAll(getSlotsThatCanFit(itemToSlotContainer, item, acceptPartial));
+            result.addAll(getSlotsThatCanFit(false, item, acceptPartial));
         return result;
     }
 
@@ -163,61 +198,96 @@ public class InventorySubTracker extends Tracker {
         return hasItem(playerInventoryOnly, Items.AIR);
     }
 
-    private void registerItem(ItemStack stack, Slot slot, boolean isSlotPlayerInventory) {
-        Item item = stack.getItem();
-        int count = stack.getCount();
-        if (stack.isEmpty()) {
-            // If our cursor slot is empty, IGNORE IT as we don't want to treat it as a valid slot.
-            item = Items.AIR;
-            count = 0;
-        }
-
-        if (isSlotPlayerInventory) {
-            itemCountsPlayer.put(item, itemCountsPlayer.getOrDefault(item, 0) + count);
-        } else {
-            itemCountsContainer.put(item, itemCountsContainer.getOrDefault(item, 0) + count);
-        }
-
-        if (slot != null) {
-            HashMap<Item, List<Slot>> toAdd = isSlotPlayerInventory ? itemToSlotPlayer : itemToSlotContainer;
-            if (!toAdd.containsKey(item))
-                toAdd.put(item, new ArrayList<>());
-            toAdd.get(item).add(slot);
-        }
-    }
-
     @Override
     protected void updateState() {
-        _prevScreenHandler = MinecraftClient.getInstance().player != null ? MinecraftClient.getInstance().player.currentScreenHandler : null;
-
-        itemToSlotPlayer.clear();
-        itemToSlotContainer.clear();
-        itemCountsPlayer.clear();
-        itemCountsContainer.clear();
-        if (MinecraftClient.getInstance().player == null)
-            return;
-        ScreenHandler handler = MinecraftClient.getInstance().player.currentScreenHandler;
+        ClientPlayerEntity player = MinecraftClient.getInstance().player;
+        ScreenHandler handler = player != null ? player.currentScreenHandler : null;
+        if (handler != _prevScreenHandler) {
+            _prevScreenHandler = handler;
+            collectSlots(handler);
+        }
         if (handler == null)
             return;
-        for (Slot slot : Slot.getCurrentScreenSlots()) {
-            // Ignore cursor slot, that's handled separately.
-            if (slot.equals(CursorSlot.SLOT))
-                continue;
-            ItemStack stack = StorageHelper.getItemStackInSlot(slot);
-            // Add separately if we're in a container vs player inventory.
+        // Only re-count slots that changed
+        for (int i = 0; i < slots.length; ++i) {
+            ItemStack stack = StorageHelper.getItemStackInSlot(slots[i]);
+            // If a slot is empty, we still register it as air (an empty slot)
+            int item = stack.isEmpty() ? AIR : Item.getRawId(stack.getItem());
+            int count = stack.isEmpty() ? 0 : stack.getCount();
+            if (item != slotItems[i] || count != slotStackCounts[i]) {
+                if (slotItems[i] != -1) {
+                    registerSlot(i, -1);
+                }
+                slotItems[i] = item;
+                slotStackCounts[i] = count;
+                registerSlot(i, 1);
+            }
+        }
+    }
 
-            if (!shouldIgnoreSlotForContainer(slot)) {
-                registerItem(stack, slot, slot.isSlotInPlayerInventory());
+    /**
+     * Starts tracking the slots of a new screen, their contents get counted on the next pass.
+     */
+    private void collectSlots(ScreenHandler handler) {
+        clearCounts();
+        List<Slot> tracked = new ArrayList<>();
+        if (handler != null) {
+            for (Slot slot : Slot.getCurrentScreenSlots()) {
+                // Ignore cursor slot, that's handled separately.
+                if (slot.equals(CursorSlot.SLOT))
+                    continue;
+                if (!shouldIgnoreSlotForContainer(slot)) {
+                    tracked.add(slot);
+                }
             }
         }
+        slots = tracked.toArray(new Slot[0]);
+        slotInPlayerInventory = new boolean[slots.length];
+        for (int i = 0; i < slots.length; ++i) {
+            // Add separately if we're in a container vs player inventory.
+            slotInPlayerInventory[i] = slots[i].isSlotInPlayerInventory();
+        }
+        slotItems = new int[slots.length];
+        Arrays.fill(slotItems, -1);
+        slotStackCounts = new int[slots.length];
+    }
+
+    /**
+     * Adds (`sign` 1) or removes (`sign` -1) slot `i`'s stored contents from the counts.
+     */
+    private void registerSlot(int i, int sign) {
+        int item = slotItems[i];
+        if (item >= itemCountsPlayer.length) {
+            int size = Math.max(item + 1, itemCountsPlayer.length * 2);
+            itemCountsPlayer = Arrays.copyOf(itemCountsPlayer, size);
+            itemCountsContainer = Arrays.copyOf(itemCountsContainer, size);
+            slotCountsPlayer = Arrays.copyOf(slotCountsPlayer, size);
+            slotCountsContainer = Arrays.copyOf(slotCountsContainer, size);
+        }
+        if (slotInPlayerInventory[i]) {
+            itemCountsPlayer[item] += sign * slotStackCounts[i];
+            slotCountsPlayer[item] += sign;
+        } else {
+            itemCountsContainer[item] += sign * slotStackCounts[i];
+            slotCountsContainer[item] += sign;
+        }
+    }
+
+    private void clearCounts() {
+        Arrays.fill(itemCountsPlayer, 0);
+        Arrays.fill(itemCountsContainer, 0);
+        Arrays.fill(slotCountsPlayer, 0);
+        Arrays.fill(slotCountsContainer, 0);
     }
 
     @Override
     protected void reset() {
-        itemToSlotPlayer.clear();
-        itemToSlotContainer.clear();
-        itemCountsPlayer.clear();
-        itemCountsContainer.clear();
+        clearCounts();
+        slots = new Slot[0];
+        slotInPlayerInventory = new boolean[0];
+        slotItems = new int[0];
+        slotStackCounts = new int[0];
+        _prevScreenHandler = null;
     }
 
     @Override
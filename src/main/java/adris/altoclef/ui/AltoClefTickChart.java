@@ -3,55 +3,39 @@ package adris.altoclef.ui;
 import adris.altoclef.AltoClef;
 import adris.altoclef.multiversion.InGameHudVer;
 import adris.altoclef.multiversion.DrawContextWrapper;
+import adris.altoclef.util.time.TickProfiler;
 import net.minecraft.client.font.TextRenderer;
 import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.util.math.ColorHelper;
 import net.minecraft.util.math.MathHelper;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * displays a chart indicating how much of the tick time is taken up by altoclef
- * (very similar to Minecrafts `TickChart`)
+ * (very similar to Minecrafts `TickChart`), along with the slowest sections from the {@link TickProfiler}
  */
 public class AltoClefTickChart {
 
+    private static final int SHOWN_SECTIONS = 3;
 
     protected final TextRenderer textRenderer;
-    protected final List<Long> list = new ArrayList<>();
 
     public AltoClefTickChart(TextRenderer textRenderer) {
         this.textRenderer = textRenderer;
     }
 
-
-    public void pushTickNanos(long nanoTime) {
-        list.add(nanoTime);
-    }
-
     public void render(AltoClef mod, DrawContextWrapper context, int x, int width) {
         if (InGameHudVer.shouldShowDebugHud() || !mod.getTaskRunner().isActive()) return;
 
         int height = context.getScaledWindowHeight();
         context.fill(x, height - 37, x + width, height, 0x90505050);
 
-        long m = Integer.MAX_VALUE;
-        long n = Integer.MIN_VALUE;
-
-
-        while (list.size() >= width-1) {
-            list.remove(0);
-        }
-
-        for (int i = 0; i < list.size(); ++i) {
+        // Newest tick on the right
+        int count = Math.min(TickProfiler.getHistorySize(), width - 2);
+        for (int i = 0; i < count; ++i) {
             int p = x + i + 1;
-
-            long r = this.get(i);
-            m = Math.min(m, r);
-            n = Math.max(n, r);
-
-            this.drawTotalBar(context, p, height, i);
+            this.drawTotalBar(context, p, height, count - 1 - i);
         }
 
         context.drawHorizontalLine(x, x + width - 1, height - 37, 0xFFDDDDDD);
@@ -61,18 +45,27 @@ public class AltoClefTickChart {
 
 
         this.drawBorderedText(context, "50 ms", x + 1, height - 37 + 1);
+
+        List<TickProfiler.Section> slowest = TickProfiler.getSlowestSections();
+        for (int i = 0; i < Math.min(SHOWN_SECTIONS, slowest.size()); ++i) {
+            TickProfiler.Section section = slowest.get(i);
+            String text = section.getName() + ": " + TickProfiler.formatMs(section.getRecentMeanNanos()) + " ms";
+            // Text is drawn at half scale
+            int textX = x + width - 2 - (this.textRenderer.getWidth(text) + 2) / 2;
+            this.drawBorderedText(context, text, textX, height - 37 + 1 + i * 6);
+        }
     }
 
 
-    protected void drawTotalBar(DrawContextWrapper context, int x, int y, int index) {
-        long l = list.get(index);
+    protected void drawTotalBar(DrawContextWrapper context, int x, int y, int ticksAgo) {
+        long l = this.get(ticksAgo);
         int i = this.getHeight(l);
         int j = this.getColor(l);
         context.fill(x, y - i, x + 1, y, j);
     }
 
-    protected long get(int index) {
-        return list.get(index);
+    protected long get(int ticksAgo) {
+        return TickProfiler.getTotal().getNanos(ticksAgo);
     }
 
 
@@ -0,0 +1,246 @@
+package adris.altoclef.util;
+
+import adris.altoclef.Debug;
+import adris.altoclef.TaskCatalogue;
+import net.minecraft.item.Item;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+
+/**
+ * Everything {@link TaskCatalogue} knows how to make, as one graph of which resources each one is
+ * made from. Built once, the catalogue never changes.
+ * <p>
+ * Answers "how much raw stuff do N of X take" without building the task tree for it, plans
+ * several targets at once so shared ingredients get made in one go, and knows what can't be made
+ * at all (an input that isn't catalogued or doesn't exist in this version).
+ * <p>
+ * Nodes are catalogue names. Anything without a recipe is raw: mined, looted, farmed...
+ */
+public class RecipeGraph {
+
+    // Plans are small, but don't let a long session pile them up forever
+    private static final int MAX_CACHED_PLANS = 512;
+
+    private final HashMap<String, Node> nodes = new HashMap<>();
+    // Inputs always come before what they make
+    private final List<Node> order = new ArrayList<>();
+    private final HashMap<Item, String> itemNames = new HashMap<>();
+    // Least recently used goes first
+    private final LinkedHashMap<Query, List<Step>> planCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Query, List<Step>> eldest) {
+            return size() > MAX_CACHED_PLANS;
+        }
+    };
+
+    public RecipeGraph() {
+        for (String name : TaskCatalogue.resourceNames()) {
+            visit(name, new HashSet<>());
+            Item[] matches = TaskCatalogue.getItemMatches(name);
+            if (matches.length == 1) {
+                itemNames.putIfAbsent(matches[0], name);
+            }
+        }
+    }
+
+    /**
+     * The catalogue name of `item`, if it's catalogued on its own.
+     */
+    public Optional<String> getName(Item item) {
+        return Optional.ofNullable(itemNames.get(item));
+    }
+
+    /**
+     * Whether we know how to get `name` at all: it's catalogued, exists in this version, and so
+     * does everything it's made of.
+     */
+    public boolean isReachable(String name) {
+        Node node = nodes.get(name);
+        return node != null && node.reachable;
+    }
+
+    public boolean isReachable(ItemTarget target) {
+        String name = nameOf(target);
+        return name != null && isReachable(name);
+    }
+
+    /**
+     * Position in the graph, lower comes first when making things. Unknown names go last.
+     */
+    public int getDepth(String name) {
+        Node node = nodes.get(name);
+        return node != null ? node.index : Integer.MAX_VALUE;
+    }
+
+    public int getDepth(ItemTarget target) {
+        String name = nameOf(target);
+        return name != null ? getDepth(name) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * The crafting recipe the catalogue uses for `item`, if it's crafted.
+     */
+    public Optional<RecipeTarget> getRecipeTarget(Item item, int count) {
+        return getName(item)
+                .map(nodes::get)
+                .filter(node -> node.recipe != null)
+                .map(node -> new RecipeTarget(item, count, node.recipe));
+    }
+
+    /**
+     * Total raw materials it takes to make `count` of `name` from scratch, by catalogue name.
+     * Batches are rounded up on the way down (5 sticks take 4 planks, not 2.5).
+     */
+    public Map<String, Integer> getRawMaterials(String name, int count) {
+        return getRawMaterials(Collections.singletonList(new ItemTarget(name, count)), n -> 0);
+    }
+
+    /**
+     * Raw materials still to be gathered for all of `targets`, see {@link #plan(Collection, ToIntFunction)}.
+     */
+    public Map<String, Integer> getRawMaterials(Collection<ItemTarget> targets, ToIntFunction<String> have) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (Step step : plan(targets, have)) {
+            if (step.raw()) {
+                result.put(step.name(), step.count());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Everything that has to be gathered or made to get all of `targets`, in the order it has to
+     * happen (raw materials first).
+     * <p>
+     * Ingredients shared between targets are added up before being split into batches, so they get
+     * made together. Targets that aren't catalogued are left out.
+     * <p>
+     * Only what the targets are made of gets looked at, and plans are remembered for as long as
+     * none of those counts change.
+     *
+     * @param have How many of a resource we already have, those don't need making.
+     */
+    public synchronized List<Step> plan(Collection<ItemTarget> targets, ToIntFunction<String> have) {
+        HashMap<String, Integer> demand = new HashMap<>();
+        TreeSet<Integer> needed = new TreeSet<>();
+        for (ItemTarget target : targets) {
+            String name = nameOf(target);
+            if (name == null || !nodes.containsKey(name)) continue;
+            demand.merge(name, target.getTargetCount(), Integer::sum);
+            for (int index : nodes.get(name).closure) {
+                needed.add(index);
+            }
+        }
+        int[] closure = needed.stream().mapToInt(Integer::intValue).toArray();
+        List<Integer> haveCounts = new ArrayList<>(closure.length);
+        for (int index : closure) {
+            haveCounts.add(have.applyAsInt(order.get(index).name));
+        }
+        Query query = new Query(new HashMap<>(demand), haveCounts);
+        List<Step> cached = planCache.get(query);
+        if (cached != null) return cached;
+
+        // Products before ingredients, so every demand is complete before it's split up.
+        for (int i = closure.length - 1; i >= 0; --i) {
+            Node node = order.get(closure[i]);
+            Integer wanted = demand.get(node.name);
+            if (wanted == null) continue;
+            int missing = Math.max(0, wanted - haveCounts.get(i));
+            demand.put(node.name, missing);
+            if (missing == 0 || node.isRaw()) continue;
+            int batches = (missing + node.outputCount - 1) / node.outputCount;
+            for (Map.Entry<String, Integer> input : node.inputs.entrySet()) {
+                demand.merge(input.getKey(), input.getValue() * batches, Integer::sum);
+            }
+        }
+
+        List<Step> result = new ArrayList<>();
+        for (int index : closure) {
+            Node node = order.get(index);
+            Integer count = demand.get(node.name);
+            if (count != null && count > 0) {
+                result.add(new Step(node.name, count, node.isRaw(), node.reachable));
+            }
+        }
+        result = Collections.unmodifiableList(result);
+        planCache.put(query, result);
+        return result;
+    }
+
+    private String nameOf(ItemTarget target) {
+        if (target.isCatalogueItem()) return target.getCatalogueName();
+        Item[] matches = target.getMatches();
+        return matches.length == 1 ? itemNames.get(matches[0]) : null;
+    }
+
+    // Depth first, so a node only lands in `order` after all of its inputs.
+    private Node visit(String name, HashSet<String> visiting) {
+        Node node = nodes.get(name);
+        if (node != null) return node;
+
+        TaskCatalogue.CataloguedRecipe recipe = TaskCatalogue.getRecipe(name);
+        boolean catalogued = TaskCatalogue.taskExists(name) && TaskCatalogue.getItemMatches(name).length != 0;
+        LinkedHashMap<String, Integer> inputs = new LinkedHashMap<>();
+        // Everything it's made of, all the way down
+        TreeSet<Integer> closure = new TreeSet<>();
+        boolean reachable = catalogued;
+        if (recipe != null) {
+            visiting.add(name);
+            for (String input : recipe.inputs()) {
+                if (visiting.contains(input)) {
+                    // Should never happen, but a loop would have us planning forever.
+                    Debug.logWarning("Recipe loop in the catalogue: " + name + " <-> " + input + ", ignoring that ingredient.");
+                    continue;
+                }
+                inputs.merge(input, 1, Integer::sum);
+                Node inputNode = visit(input, visiting);
+                reachable &= inputNode.reachable;
+                for (int index : inputNode.closure) {
+                    closure.add(index);
+                }
+            }
+            visiting.remove(name);
+        }
+
+        closure.add(order.size());
+        node = new Node(name, recipe != null ? recipe.outputCount() : 1, recipe != null ? inputs : null,
+                recipe != null ? recipe.craftingRecipe() : null, reachable, order.size(),
+                closure.stream().mapToInt(Integer::intValue).toArray());
+        nodes.put(name, node);
+        order.add(node);
+        return node;
+    }
+
+    /**
+     * Something to gather (`raw`) or make, and how many.
+     *
+     * @param reachable Whether we know how to get it at all, see {@link #isReachable(String)}
+     */
+    public record Step(String name, int count, boolean raw, boolean reachable) {
+    }
+
+    // What a plan got asked for: the targets and how many of everything they're made of we had
+    private record Query(Map<String, Integer> demand, List<Integer> have) {
+    }
+
+    /**
+     * @param closure Indices in `order` of this and everything it's made of, lowest first
+     */
+    private record Node(String name, int outputCount, Map<String, Integer> inputs, CraftingRecipe recipe,
+                        boolean reachable, int index, int[] closure) {
+
+        boolean isRaw() {
+            return inputs == null;
+        }
+    }
+}
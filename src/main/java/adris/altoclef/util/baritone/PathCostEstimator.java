@@ -0,0 +1,314 @@
+package adris.altoclef.util.baritone;
+
+import adris.altoclef.AltoClef;
+import adris.altoclef.eventbus.EventBus;
+import adris.altoclef.eventbus.events.BlockBrokenEvent;
+import adris.altoclef.eventbus.events.BlockChangedEvent;
+import adris.altoclef.eventbus.events.BlockInteractEvent;
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.BetterBlockPos;
+import baritone.api.utils.PathCalculationResult;
+import baritone.pathing.calc.AStarPathFinder;
+import baritone.pathing.movement.CalculationContext;
+import baritone.utils.pathing.Favoring;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Finds out how expensive it really is to walk to a few candidate targets, so "closest" can mean
+ * closest to get to instead of closest in a straight line.
+ * <p>
+ * Each candidate gets a short, time-boxed A* search on a background thread, using the same world
+ * snapshot Baritone plans ahead with. Results are cached per target and reused while the player
+ * stays near where the search started from. They're thrown out when a block changes along the path
+ * that was found (or anywhere between start and target if none was), except for the blocks we
+ * break or place ourselves on the way.
+ * <p>
+ * Client thread only, except for the searches themselves.
+ */
+public class PathCostEstimator {
+
+    private static final long PRIMARY_TIMEOUT_MS = 150;
+    private static final long FAILURE_TIMEOUT_MS = 400;
+    private static final long CACHE_LIFETIME_MS = 30_000;
+    // Searches nobody asked about for this long get cancelled
+    private static final long ABANDON_MS = 1000;
+    // How far around a path (or between start and target) a block change counts as touching it
+    private static final int MARGIN = 2;
+    // How far we may have moved from where a search started before it's searched again
+    private static final int START_TOLERANCE = 8;
+    private static final int MAX_ESTIMATES = 512;
+    // Our own breaks/placements show up as block changes a little later
+    private static final long OWN_EDIT_MS = 1000;
+
+    private static final ExecutorService probeThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "altoclef-path-probe");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AltoClef mod;
+    // By target, oldest first
+    private final LinkedHashMap<Long, Estimate> estimates = new LinkedHashMap<>();
+    // Chunk column -> targets whose estimate bounds touch it
+    private final HashMap<Long, Set<Long>> estimatesByChunk = new HashMap<>();
+    private final HashMap<Long, Probe> probes = new HashMap<>();
+    private final ConcurrentLinkedQueue<Probe> finished = new ConcurrentLinkedQueue<>();
+    // Position -> when we broke or placed something there
+    private final HashMap<Long, Long> ownEdits = new HashMap<>();
+    private World world = null;
+
+    public PathCostEstimator(AltoClef mod) {
+        this.mod = mod;
+        EventBus.subscribe(BlockChangedEvent.class, this::onBlocksChanged);
+        EventBus.subscribe(BlockBrokenEvent.class, evt -> {
+            if (evt.player == mod.getPlayer()) {
+                ownEdits.put(evt.blockPos.asLong(), System.currentTimeMillis());
+            }
+        });
+        EventBus.subscribe(BlockInteractEvent.class, evt -> {
+            // Whatever we place lands next to the block we clicked
+            long now = System.currentTimeMillis();
+            ownEdits.put(evt.hitResult.getBlockPos().asLong(), now);
+            ownEdits.put(evt.hitResult.getBlockPos().offset(evt.hitResult.getSide()).asLong(), now);
+        });
+    }
+
+    /**
+     * Of `candidates`, the one that's cheapest to path to from the player, out of those that have
+     * a known cost.
+     * <p>
+     * Candidates without a known cost get searched in the background. Returns empty while none of
+     * them has a cost yet, or if no path was found to any of them.
+     *
+     * @param getGoal   Where we'd path to for a candidate
+     * @param getTarget The position a candidate's cost is cached under
+     */
+    public <T> Optional<T> getCheapest(List<T> candidates, Function<T, Goal> getGoal, Function<T, BlockPos> getTarget) {
+        if (candidates.isEmpty()) return Optional.empty();
+        if (mod.getWorld() != world) {
+            reset();
+            world = mod.getWorld();
+        }
+        collectFinished();
+
+        long now = System.currentTimeMillis();
+        BetterBlockPos start = mod.getClientBaritone().getPlayerContext().playerFeet();
+        CalculationContext context = null;
+        T cheapest = null;
+        double cheapestCost = Double.POSITIVE_INFINITY;
+        for (T candidate : candidates) {
+            BlockPos target = getTarget.apply(candidate);
+            long key = target.asLong();
+            Estimate estimate = estimates.get(key);
+            if (estimate != null && now - estimate.time > CACHE_LIFETIME_MS) {
+                removeEstimate(key);
+                estimate = null;
+            }
+            boolean fresh = estimate != null && isNear(estimate.start, start);
+            if (!fresh) {
+                Probe probe = probes.get(key);
+                if (probe == null) {
+                    // Snapshot the world once for the whole batch, this has to happen on the client thread
+                    if (context == null) {
+                        context = new CalculationContext(mod.getClientBaritone(), true);
+                    }
+                    probe = new Probe(key, start, target, getGoal.apply(candidate), context);
+                    probes.put(key, probe);
+                    probeThread.execute(probe::run);
+                }
+                probe.lastWanted = now;
+            }
+            // An estimate from a bit further back still beats a straight line until the new one is in
+            if (estimate != null && estimate.cost < cheapestCost) {
+                cheapestCost = estimate.cost;
+                cheapest = candidate;
+            }
+        }
+
+        // Searches for targets nobody cares about anymore
+        for (Iterator<Probe> it = probes.values().iterator(); it.hasNext(); ) {
+            Probe probe = it.next();
+            if (now - probe.lastWanted > ABANDON_MS) {
+                probe.cancel();
+                it.remove();
+            }
+        }
+
+        return Optional.ofNullable(cheapest);
+    }
+
+    public void reset() {
+        for (Probe probe : probes.values()) {
+            probe.cancel();
+        }
+        probes.clear();
+        estimates.clear();
+        estimatesByChunk.clear();
+        finished.clear();
+        ownEdits.clear();
+    }
+
+    private static boolean isNear(BetterBlockPos a, BetterBlockPos b) {
+        return Math.abs(a.x - b.x) <= START_TOLERANCE && Math.abs(a.y - b.y) <= START_TOLERANCE && Math.abs(a.z - b.z) <= START_TOLERANCE;
+    }
+
+    private void collectFinished() {
+        Probe probe;
+        while ((probe = finished.poll()) != null) {
+            if (probes.get(probe.key) != probe) continue;
+            probes.remove(probe.key);
+            if (probe.result != null) {
+                putEstimate(probe.key, probe.result);
+            }
+        }
+    }
+
+    private void putEstimate(long key, Estimate estimate) {
+        removeEstimate(key);
+        while (estimates.size() >= MAX_ESTIMATES) {
+            removeEstimate(estimates.keySet().iterator().next());
+        }
+        estimates.put(key, estimate);
+        estimate.bounds.forEachChunk(chunk -> estimatesByChunk.computeIfAbsent(chunk, c -> new HashSet<>()).add(key));
+    }
+
+    private void removeEstimate(long key) {
+        Estimate removed = estimates.remove(key);
+        if (removed == null) return;
+        removed.bounds.forEachChunk(chunk -> {
+            Set<Long> keys = estimatesByChunk.get(chunk);
+            if (keys == null) return;
+            keys.remove(key);
+            if (keys.isEmpty()) estimatesByChunk.remove(chunk);
+        });
+    }
+
+    private void onBlocksChanged(BlockChangedEvent evt) {
+        long now = System.currentTimeMillis();
+        ownEdits.values().removeIf(time -> now - time > OWN_EDIT_MS);
+        if (estimates.isEmpty() && probes.isEmpty()) return;
+        for (int i = 0; i < evt.size; ++i) {
+            if (ownEdits.remove(evt.positions[i]) != null) continue;
+            BlockPos pos = evt.getPos(i);
+            Set<Long> touched = estimatesByChunk.get(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4));
+            if (touched != null) {
+                List<Long> stale = new ArrayList<>();
+                for (long key : touched) {
+                    if (estimates.get(key).bounds.contains(pos)) stale.add(key);
+                }
+                stale.forEach(this::removeEstimate);
+            }
+            for (Iterator<Probe> it = probes.values().iterator(); it.hasNext(); ) {
+                Probe probe = it.next();
+                if (probe.bounds.contains(pos)) {
+                    // Searched a world that's gone now, search again next time
+                    probe.cancel();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private record Estimate(double cost, BetterBlockPos start, Bounds bounds, long time) {
+    }
+
+    private record Bounds(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+
+        static Bounds around(BlockPos a, BlockPos b, int margin) {
+            return new Bounds(Math.min(a.getX(), b.getX()) - margin, Math.min(a.getY(), b.getY()) - margin, Math.min(a.getZ(), b.getZ()) - margin,
+                    Math.max(a.getX(), b.getX()) + margin, Math.max(a.getY(), b.getY()) + margin, Math.max(a.getZ(), b.getZ()) + margin);
+        }
+
+        static Bounds around(List<BetterBlockPos> path, int margin) {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            for (BetterBlockPos pos : path) {
+                minX = Math.min(minX, pos.x);
+                minY = Math.min(minY, pos.y);
+                minZ = Math.min(minZ, pos.z);
+                maxX = Math.max(maxX, pos.x);
+                maxY = Math.max(maxY, pos.y);
+                maxZ = Math.max(maxZ, pos.z);
+            }
+            return new Bounds(minX - margin, minY - margin, minZ - margin, maxX + margin, maxY + margin, maxZ + margin);
+        }
+
+        void forEachChunk(LongConsumer action) {
+            for (int x = minX >> 4; x <= maxX >> 4; ++x) {
+                for (int z = minZ >> 4; z <= maxZ >> 4; ++z) {
+                    action.accept(ChunkPos.toLong(x, z));
+                }
+            }
+        }
+
+        boolean contains(BlockPos pos) {
+            return pos.getX() >= minX && pos.getX() <= maxX
+                    && pos.getY() >= minY && pos.getY() <= maxY
+                    && pos.getZ() >= minZ && pos.getZ() <= maxZ;
+        }
+    }
+
+    private class Probe {
+
+        private final long key;
+        private final BetterBlockPos start;
+        private final Bounds bounds;
+        private final AStarPathFinder finder;
+        private final Goal goal;
+        private volatile boolean cancelled = false;
+        // Written by the probe thread before it lands in `finished`
+        private Estimate result = null;
+        // Client thread only
+        private long lastWanted;
+
+        Probe(long key, BetterBlockPos start, BlockPos target, Goal goal, CalculationContext context) {
+            this.key = key;
+            this.start = start;
+            this.goal = goal;
+            bounds = Bounds.around(start, target, MARGIN);
+            finder = new AStarPathFinder(start, start.x, start.y, start.z, goal, new Favoring(mod.getClientBaritone().getPlayerContext(), null, context), context);
+        }
+
+        void cancel() {
+            cancelled = true;
+            finder.cancel();
+        }
+
+        void run() {
+            if (cancelled) return;
+            PathCalculationResult calculated = finder.calculate(PRIMARY_TIMEOUT_MS, FAILURE_TIMEOUT_MS);
+            if (cancelled) return;
+            Optional<IPath> path = calculated.getPath();
+            long now = System.currentTimeMillis();
+            switch (calculated.getType()) {
+                case SUCCESS_TO_GOAL -> result = new Estimate(path.get().ticksRemainingFrom(0), start,
+                        Bounds.around(path.get().positions(), MARGIN), now);
+                // Ran out of time, guess the rest of the way
+                case SUCCESS_SEGMENT -> result = new Estimate(path.get().ticksRemainingFrom(0) + goal.heuristic(path.get().getDest()), start,
+                        Bounds.around(path.get().positions(), MARGIN), now);
+                // No way there from here
+                case FAILURE -> result = new Estimate(Double.POSITIVE_INFINITY, start, bounds, now);
+                // Cancelled or broke, try again later
+                default -> result = null;
+            }
+            finished.add(this);
+        }
+    }
+}
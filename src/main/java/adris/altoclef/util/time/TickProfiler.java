@@ -0,0 +1,247 @@
+package adris.altoclef.util.time;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Breaks each client tick down into named sections (chains, trackers, tasks...) so lag spikes can
+ * be traced back to whatever caused them.
+ * <p>
+ * Every section keeps the time it took over the last {@link #HISTORY} ticks in a ring buffer, plus
+ * a histogram over all ticks since the last reset. Sections can nest (a task's tick may update a
+ * tracker), so they don't add up to the total.
+ * <p>
+ * Only time spent on the thread that runs the tick is counted, anything else calling into a
+ * profiled section (like Baritone's path thread) is ignored.
+ */
+public final class TickProfiler {
+
+    public static final int HISTORY = 512;
+    public static final String TOTAL = "total";
+
+    // Upper bounds of the histogram buckets in milliseconds, the last bucket is everything above
+    private static final double[] BUCKET_MS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 50};
+
+    private static final HashMap<String, Section> sectionsByName = new HashMap<>();
+    private static final ArrayList<Section> sections = new ArrayList<>();
+    private static final ClassValue<Section> sectionsByClass = new ClassValue<>() {
+        @Override
+        protected Section computeValue(Class<?> type) {
+            return section("task/" + type.getSimpleName());
+        }
+    };
+    private static final Section total = section(TOTAL);
+
+    private static Thread tickThread = null;
+    private static long tickStart;
+    // Ticks recorded since the last reset
+    private static int ticks = 0;
+
+    public static void beginTick() {
+        tickThread = Thread.currentThread();
+        tickStart = System.nanoTime();
+    }
+
+    public static void endTick() {
+        if (tickThread == null) return;
+        total.record(tickStart);
+        int slot = ticks % HISTORY;
+        synchronized (sections) {
+            for (Section section : sections) {
+                section.push(slot);
+            }
+        }
+        ticks++;
+        tickThread = null;
+    }
+
+    /**
+     * Gets or creates the section called `name`. Hold on to it, looking it up every tick is wasteful.
+     */
+    public static Section section(String name) {
+        synchronized (sections) {
+            Section section = sectionsByName.get(name);
+            if (section == null) {
+                section = new Section(name);
+                sectionsByName.put(name, section);
+                sections.add(section);
+            }
+            return section;
+        }
+    }
+
+    /**
+     * The section for a task class, named after the class.
+     */
+    public static Section taskSection(Class<?> type) {
+        return sectionsByClass.get(type);
+    }
+
+    public static Section getTotal() {
+        return total;
+    }
+
+    /**
+     * Number of ticks in each section's history, at most {@link #HISTORY}.
+     */
+    public static int getHistorySize() {
+        return Math.min(ticks, HISTORY);
+    }
+
+    /**
+     * Sections sorted by their mean time over the history, slowest first. The total is left out.
+     */
+    public static List<Section> getSlowestSections() {
+        List<Section> result;
+        synchronized (sections) {
+            result = new ArrayList<>(sections);
+        }
+        result.remove(total);
+        result.sort(Comparator.comparingLong((Section section) -> section.historySum).reversed());
+        return result;
+    }
+
+    public static void reset() {
+        synchronized (sections) {
+            for (Section section : sections) {
+                section.clear();
+            }
+        }
+        ticks = 0;
+    }
+
+    /**
+     * Writes one row per section: summary stats followed by the histogram bucket counts.
+     */
+    public static void exportCsv(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            //noinspection ResultOfMethodCallIgnored
+            parent.mkdirs();
+        }
+        List<Section> rows = new ArrayList<>();
+        rows.add(total);
+        rows.addAll(getSlowestSections());
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            StringBuilder header = new StringBuilder("section,ticks,calls,mean_ms,recent_mean_ms,recent_max_ms,max_ms");
+            for (double bound : BUCKET_MS) {
+                header.append(",le_").append(bound).append("ms");
+            }
+            header.append(",gt_").append(BUCKET_MS[BUCKET_MS.length - 1]).append("ms");
+            out.println(header);
+            for (Section section : rows) {
+                StringBuilder row = new StringBuilder(section.name);
+                row.append(',').append(section.ticksRan)
+                        .append(',').append(section.calls)
+                        .append(',').append(formatMs(section.getMeanNanos()))
+                        .append(',').append(formatMs(section.getRecentMeanNanos()))
+                        .append(',').append(formatMs(section.getRecentMaxNanos()))
+                        .append(',').append(formatMs(section.max));
+                for (long count : section.histogram) {
+                    row.append(',').append(count);
+                }
+                out.println(row);
+            }
+        }
+    }
+
+    public static String formatMs(double nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    public static final class Section {
+
+        private final String name;
+        private final long[] history = new long[HISTORY];
+        private final long[] histogram = new long[BUCKET_MS.length + 1];
+        private long historySum = 0;
+        private long current = 0;
+        private long max = 0;
+        private long sum = 0;
+        private long ticksRan = 0;
+        private long calls = 0;
+
+        private Section(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds the time since `startNanos` (from {@link System#nanoTime()}) to this tick.
+         */
+        public void record(long startNanos) {
+            if (Thread.currentThread() != tickThread) return;
+            current += System.nanoTime() - startNanos;
+            calls++;
+        }
+
+        private void push(int slot) {
+            historySum += current - history[slot];
+            history[slot] = current;
+            if (current != 0) {
+                ticksRan++;
+                sum += current;
+                max = Math.max(max, current);
+                histogram[bucket(current)]++;
+            }
+            current = 0;
+        }
+
+        private void clear() {
+            Arrays.fill(history, 0);
+            Arrays.fill(histogram, 0);
+            historySum = current = max = sum = ticksRan = calls = 0;
+        }
+
+        private static int bucket(long nanos) {
+            double ms = nanos / 1_000_000.0;
+            for (int i = 0; i < BUCKET_MS.length; i++) {
+                if (ms <= BUCKET_MS[i]) return i;
+            }
+            return BUCKET_MS.length;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Time spent `ticksAgo` ticks ago, 0 being the last finished tick.
+         */
+        public long getNanos(int ticksAgo) {
+            if (ticksAgo < 0 || ticksAgo >= getHistorySize()) return 0;
+            return history[Math.floorMod(ticks - 1 - ticksAgo, HISTORY)];
+        }
+
+        public double getRecentMeanNanos() {
+            int size = getHistorySize();
+            return size == 0 ? 0 : (double) historySum / size;
+        }
+
+        public long getRecentMaxNanos() {
+            long result = 0;
+            for (long nanos : history) {
+                result = Math.max(result, nanos);
+            }
+            return result;
+        }
+
+        /**
+         * Mean over the ticks this section actually ran in.
+         */
+        public double getMeanNanos() {
+            return ticksRan == 0 ? 0 : (double) sum / ticksRan;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+    }
+}